@@ -0,0 +1,71 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.benchmark.db;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the database benchmarks with 1, 4 and 16 threads and the allocation profiler.
+ *
+ * Usage: java -cp target/benchmarks.jar elius.webapp.framework.benchmark.db.DBBenchmarkRunner [threads...]
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBBenchmarkRunner {
+
+	// Default thread counts
+	private static final int[] DEFAULT_THREADS = {1, 4, 16};
+
+
+	/**
+	 * Run benchmarks
+	 * @param args Thread counts, default 1 4 16
+	 * @throws RunnerException
+	 */
+	public static void main(String[] args) throws RunnerException {
+		// Thread counts
+		int[] threads = DEFAULT_THREADS;
+		if(0 < args.length) {
+			threads = new int[args.length];
+			for(int i = 0; i < args.length; i++) {
+				threads[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		// One run for every thread count
+		for(int t : threads) {
+			Options options = new OptionsBuilder()
+					.include(DBManagerBenchmark.class.getSimpleName())
+					.threads(t)
+					.addProfiler(GCProfiler.class)
+					.result("db-benchmark-" + t + "t.json")
+					.resultFormat(ResultFormatType.JSON)
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+}
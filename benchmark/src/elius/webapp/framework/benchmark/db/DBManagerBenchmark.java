@@ -0,0 +1,313 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.benchmark.db;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.db.DBBulkWriter;
+import elius.webapp.framework.db.DBConnectionPool;
+import elius.webapp.framework.db.DBDialect;
+import elius.webapp.framework.db.DBJdbcDataSource;
+import elius.webapp.framework.db.DBManager;
+import elius.webapp.framework.security.secret.SecretCredentials;
+
+/**
+ * DBManager against an in memory H2 database: lookups by key, wide rows, large scans,
+ * single row updates and bulk writes, with a direct connection or a pool.
+ *
+ * Throughput and latency percentiles are measured by every run, allocation per call
+ * with -prof gc, thread counts with -t or DBBenchmarkRunner.
+ *
+ * @author Elia Milioni
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DBManagerBenchmark {
+
+	// Rows of the narrow table
+	private static final int ROWS = 10000;
+
+	// Rows of the wide table
+	private static final int WIDE_ROWS = 1000;
+
+	// Columns of the wide table
+	private static final int WIDE_COLUMNS = 40;
+
+	// Rows of a bulk write
+	private static final int BATCH_ROWS = 500;
+
+
+	/**
+	 * Database shared by all threads
+	 */
+	@State(Scope.Benchmark)
+	public static class Database {
+
+		// Connection type
+		@Param({"Direct", "Pool"})
+		public String connectionType;
+
+		// Connection URL, a new database for every trial
+		String url;
+
+		// Credentials
+		SecretCredentials credentials;
+
+		// Pool, only for the pool connection type
+		DBConnectionPool pool;
+
+
+		/**
+		 * Create and fill the tables
+		 * @throws IOException
+		 */
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			// Empty application properties, limiter and retries disabled
+			if(null == System.getProperty(ApplicationAttributes.APP_PATH)) {
+				Path appPath = Files.createTempDirectory("ewa-benchmark");
+				Files.createFile(appPath.resolve(ApplicationAttributes.APP_PROPERTIES_FILE));
+				System.setProperty(ApplicationAttributes.APP_PATH, appPath.toString());
+			}
+
+			// In memory database kept until the end of the trial
+			url = "jdbc:h2:mem:bench" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+			credentials = new SecretCredentials();
+			credentials.setUserId("sa");
+			credentials.setPassword("");
+
+			// Pool sized for the highest thread count
+			if("Pool".equals(connectionType)) {
+				pool = new DBConnectionPool(new DBJdbcDataSource("bench", url, "org.h2.Driver", "64", "10000", "sa", ""));
+			}
+
+			// Tables
+			DBManager dbManager = newManager();
+			check(dbManager.execute("CREATE TABLE narrow (id INT PRIMARY KEY, name VARCHAR(50), amount DECIMAL(12,2), created TIMESTAMP)"), "CREATE TABLE narrow");
+			StringBuilder wide = new StringBuilder("CREATE TABLE wide (id INT PRIMARY KEY");
+			for(int c = 0; c < WIDE_COLUMNS; c++) {
+				wide.append((0 == c % 2) ? ", s" + c + " VARCHAR(40)" : ", n" + c + " BIGINT");
+			}
+			check(dbManager.execute(wide.append(')').toString()), "CREATE TABLE wide");
+			check(dbManager.execute("CREATE TABLE batch (id INT PRIMARY KEY, name VARCHAR(50), amount DECIMAL(12,2))"), "CREATE TABLE batch");
+
+			// Narrow rows
+			DBBulkWriter narrowWriter = new DBBulkWriter(dbManager, DBDialect.H2, "narrow", "id", "name", "amount", "created");
+			for(int i = 0; i < ROWS; i++) {
+				check(narrowWriter.add(i, "name" + i, new BigDecimal(i).movePointLeft(2), new Timestamp(System.currentTimeMillis())), "Fill narrow");
+			}
+			check(narrowWriter.flush(), "Fill narrow");
+
+			// Wide rows
+			String[] columns = new String[WIDE_COLUMNS + 1];
+			columns[0] = "id";
+			for(int c = 0; c < WIDE_COLUMNS; c++) {
+				columns[c + 1] = ((0 == c % 2) ? "s" : "n") + c;
+			}
+			DBBulkWriter wideWriter = new DBBulkWriter(dbManager, DBDialect.H2, "wide", columns);
+			for(int i = 0; i < WIDE_ROWS; i++) {
+				Object[] row = new Object[WIDE_COLUMNS + 1];
+				row[0] = i;
+				for(int c = 0; c < WIDE_COLUMNS; c++) {
+					row[c + 1] = (0 == c % 2) ? (Object) ("value " + i + "-" + c) : (Object) ((long) i * c);
+				}
+				check(wideWriter.add(row), "Fill wide");
+			}
+			check(wideWriter.flush(), "Fill wide");
+		}
+
+
+		/**
+		 * Drop the database
+		 */
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			// Close the in memory database
+			newManager().execute("SHUTDOWN");
+
+			// Close pool
+			if(null != pool) {
+				pool.close();
+			}
+		}
+
+
+		/**
+		 * Create a database manager
+		 * @return Database manager
+		 */
+		DBManager newManager() {
+			return (null != pool) ? new DBManager(pool) : new DBManager(url, "org.h2.Driver", credentials);
+		}
+	}
+
+
+	/**
+	 * Database manager of a thread, DBManager is not thread safe
+	 */
+	@State(Scope.Thread)
+	public static class Client {
+
+		// Database manager
+		DBManager dbManager;
+
+		// Bulk writer
+		DBBulkWriter bulkWriter;
+
+		// Rows of a bulk write
+		List<Object[]> batch;
+
+
+		/**
+		 * Create the database manager of the thread
+		 * @param database Database
+		 */
+		@Setup(Level.Trial)
+		public void setup(Database database) {
+			dbManager = database.newManager();
+			bulkWriter = new DBBulkWriter(dbManager, DBDialect.H2, "batch", "id", "name", "amount");
+			bulkWriter.setKeyColumns("id");
+			batch = new ArrayList<>(BATCH_ROWS);
+		}
+	}
+
+
+	/**
+	 * Read one row by primary key
+	 * @param client Client
+	 * @return Rows
+	 */
+	@Benchmark
+	public List<Map<String, Object>> lookup(Client client) {
+		return check(client.dbManager.executeQuery("SELECT id, name, amount, created FROM narrow WHERE id = ?", ThreadLocalRandom.current().nextInt(ROWS)), "Lookup");
+	}
+
+
+	/**
+	 * Read one row of 40 columns by primary key
+	 * @param client Client
+	 * @return Rows
+	 */
+	@Benchmark
+	public List<Map<String, Object>> wideRow(Client client) {
+		return check(client.dbManager.executeQuery("SELECT * FROM wide WHERE id = ?", ThreadLocalRandom.current().nextInt(WIDE_ROWS)), "Wide row");
+	}
+
+
+	/**
+	 * Read all rows of the narrow table
+	 * @param client Client
+	 * @return Rows
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public List<Map<String, Object>> scan(Client client) {
+		return check(client.dbManager.executeQuery("SELECT id, name, amount, created FROM narrow"), "Scan");
+	}
+
+
+	/**
+	 * Update one row by primary key
+	 * @param client Client
+	 * @return Return code
+	 */
+	@Benchmark
+	public int update(Client client) {
+		int id = ThreadLocalRandom.current().nextInt(ROWS);
+		return check(client.dbManager.update("UPDATE narrow SET name = ? WHERE id = ?", "updated" + id, id), "Update");
+	}
+
+
+	/**
+	 * Upsert rows with multi-row statements in one transaction
+	 * @param client Client
+	 * @return Return code
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public int batch(Client client) {
+		// Random rows, keys stay below ROWS + BATCH_ROWS so the table size is bounded
+		client.batch.clear();
+		int first = ThreadLocalRandom.current().nextInt(ROWS);
+		for(int i = 0; i < BATCH_ROWS; i++) {
+			client.batch.add(new Object[] {first + i, "batch" + i, BigDecimal.ONE});
+		}
+
+		// Write rows
+		return check(client.bulkWriter.write(client.batch), "Batch");
+	}
+
+
+	/**
+	 * Fail the run on errors, a failed call would be measured as a fast one
+	 * @param rc Return code
+	 * @param operation Operation
+	 * @return Return code
+	 */
+	private static int check(int rc, String operation) {
+		if(0 != rc) {
+			throw new IllegalStateException(operation + " failed");
+		}
+		return rc;
+	}
+
+
+	/**
+	 * Fail the run on errors, a failed call would be measured as a fast one
+	 * @param rows Rows, null in case of error
+	 * @param operation Operation
+	 * @return Rows
+	 */
+	private static List<Map<String, Object>> check(List<Map<String, Object>> rows, String operation) {
+		if(null == rows) {
+			throw new IllegalStateException(operation + " failed");
+		}
+		return rows;
+	}
+
+}
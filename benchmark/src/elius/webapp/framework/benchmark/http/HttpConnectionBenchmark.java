@@ -0,0 +1,192 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.benchmark.http;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.http.HttpClientFactory;
+import elius.webapp.framework.http.HttpConnection;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * HttpConnection against an in process stub server: GET of a payload and POST of a body
+ * of the same size, over plain and TLS connections, with and without server latency.
+ *
+ * Throughput and latency percentiles are measured by every run, allocation per call
+ * with -prof gc, thread counts with -t or HttpBenchmarkRunner. With latency the
+ * results show the overhead of the client on top of the server time.
+ *
+ * @author Elia Milioni
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpConnectionBenchmark {
+
+	// Threads of the stub server, above the highest client thread count
+	private static final int SERVER_THREADS = 64;
+
+
+	/**
+	 * Stub server shared by all threads
+	 */
+	@State(Scope.Benchmark)
+	public static class Server {
+
+		// Protocol
+		@Param({"http", "https"})
+		public String protocol;
+
+		// Latency of the server in milliseconds
+		@Param({"0", "10"})
+		public long latencyMillis;
+
+		// Size of the GET responses and of the POST bodies in bytes
+		@Param({"1024", "65536"})
+		public int payloadSize;
+
+		// Stub server
+		HttpStubServer stub;
+
+		// URI called
+		String uri;
+
+		// Body of the POST calls
+		String body;
+
+
+		/**
+		 * Start the stub server
+		 * @throws IOException
+		 */
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			// Empty application properties, cache, policy, rate limit and hedging disabled
+			if(null == System.getProperty(ApplicationAttributes.APP_PATH)) {
+				Path appPath = Files.createTempDirectory("ewa-benchmark");
+				Files.createFile(appPath.resolve(ApplicationAttributes.APP_PROPERTIES_FILE));
+				System.setProperty(ApplicationAttributes.APP_PATH, appPath.toString());
+			}
+
+			// Start server
+			stub = new HttpStubServer("https".equals(protocol), latencyMillis, payloadSize, SERVER_THREADS);
+			uri = stub.getBaseUri() + "/payload";
+			body = "x".repeat(payloadSize);
+		}
+
+
+		/**
+		 * Stop the stub server and close the pooled connections
+		 */
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			stub.stop();
+			HttpClientFactory.close();
+		}
+
+
+		/**
+		 * Check if the calls trust all certificates
+		 * @return True for TLS, the certificate is self signed
+		 */
+		boolean isTrustAll() {
+			return "https".equals(protocol);
+		}
+	}
+
+
+	/**
+	 * Connection of a thread, HttpConnection keeps the last response
+	 */
+	@State(Scope.Thread)
+	public static class Client {
+
+		// Connection
+		HttpConnection connection;
+
+
+		/**
+		 * Create the connection of the thread
+		 */
+		@Setup(Level.Trial)
+		public void setup() {
+			connection = new HttpConnection();
+		}
+	}
+
+
+	/**
+	 * GET of the payload
+	 * @param server Server
+	 * @param client Client
+	 * @return Response content
+	 */
+	@Benchmark
+	public String get(Server server, Client client) {
+		// Execute call
+		if(0 != client.connection.get(server.uri, null, server.isTrustAll())) {
+			throw new IllegalStateException("GET failed");
+		}
+
+		// Return content
+		return client.connection.getResponseContent();
+	}
+
+
+	/**
+	 * POST of a body of the payload size
+	 * @param server Server
+	 * @param client Client
+	 * @return Response content
+	 */
+	@Benchmark
+	public String post(Server server, Client client) {
+		// Execute call
+		if(0 != client.connection.post(server.uri, null, server.isTrustAll(), Entity.text(server.body), MediaType.TEXT_PLAIN_TYPE, MediaType.TEXT_PLAIN_TYPE)) {
+			throw new IllegalStateException("POST failed");
+		}
+
+		// Return content
+		return client.connection.getResponseContent();
+	}
+
+}
@@ -0,0 +1,206 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.benchmark.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * In process HTTP server answering every call after a fixed latency.
+ *
+ * GET returns a body of the configured size, POST reads the body and returns a short one.
+ * With TLS a self signed certificate for localhost and 127.0.0.1 is created with keytool,
+ * the clients must trust all certificates.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpStubServer {
+
+	// No Nagle delay on the server sockets, headers and body are written separately
+	static {
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	// Password of the generated key store
+	private static final String KEY_STORE_PASSWORD = "benchmark";
+
+	// Body of the POST responses
+	private static final byte[] POST_RESPONSE = "{\"status\":\"ok\"}".getBytes();
+
+	// Server
+	private final HttpServer server;
+
+	// Threads of the server
+	private final ExecutorService executor;
+
+	// Latency of every call in milliseconds
+	private final long latencyMillis;
+
+	// Body of the GET responses
+	private final byte[] payload;
+
+
+	/**
+	 * Constructor, the server is started on a free port of 127.0.0.1
+	 * @param tls True for HTTPS
+	 * @param latencyMillis Latency of every call in milliseconds
+	 * @param payloadSize Size of the GET responses in bytes
+	 * @param threads Number of server threads
+	 * @throws IOException Error starting the server or creating the certificate
+	 */
+	public HttpStubServer(boolean tls, long latencyMillis, int payloadSize, int threads) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.payload = new byte[payloadSize];
+		Arrays.fill(payload, (byte) 'x');
+
+		// Server
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", 0);
+		if(tls) {
+			HttpsServer httpsServer = HttpsServer.create(address, 1024);
+			httpsServer.setHttpsConfigurator(new HttpsConfigurator(createSslContext()));
+			server = httpsServer;
+		} else {
+			server = HttpServer.create(address, 1024);
+		}
+
+		// Handler of all calls
+		server.createContext("/", this::handle);
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+
+	/**
+	 * Answer a call
+	 * @param exchange Exchange
+	 * @throws IOException Error writing the response
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			// Read request body
+			try (InputStream in = exchange.getRequestBody()) {
+				in.transferTo(OutputStream.nullOutputStream());
+			}
+
+			// Latency
+			if(0 < latencyMillis) {
+				try {
+					Thread.sleep(latencyMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			// Response
+			byte[] body = "POST".equals(exchange.getRequestMethod()) ? POST_RESPONSE : payload;
+			exchange.getResponseHeaders().set("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+
+	/**
+	 * Get the base URI
+	 * @return Base URI, i.e. http://127.0.0.1:port
+	 */
+	public String getBaseUri() {
+		return ((server instanceof HttpsServer) ? "https" : "http") + "://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+
+	/**
+	 * Stop the server
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+
+	/**
+	 * Create the SSL context of a new self signed certificate
+	 * @return SSL context
+	 * @throws IOException Error running keytool or loading the key store
+	 */
+	private static SSLContext createSslContext() throws IOException {
+		// Generate key store
+		Path directory = Files.createTempDirectory("ewa-benchmark-tls");
+		Path keyStore = directory.resolve("stub.p12");
+		Process keytool = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+				"-genkeypair", "-alias", "stub", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+				"-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+				"-storetype", "PKCS12", "-keystore", keyStore.toString(),
+				"-storepass", KEY_STORE_PASSWORD, "-keypass", KEY_STORE_PASSWORD)
+				.redirectErrorStream(true)
+				.start();
+		try {
+			keytool.getInputStream().transferTo(OutputStream.nullOutputStream());
+			if(!keytool.waitFor(60, TimeUnit.SECONDS) || (0 != keytool.exitValue())) {
+				throw new IOException("keytool failed to create " + keyStore);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("keytool interrupted", e);
+		}
+
+		// Load key store
+		try (InputStream in = Files.newInputStream(keyStore)) {
+			KeyStore store = KeyStore.getInstance("PKCS12");
+			store.load(in, KEY_STORE_PASSWORD.toCharArray());
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(store, KEY_STORE_PASSWORD.toCharArray());
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+			return sslContext;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Invalid key store " + keyStore, e);
+		} finally {
+			Files.deleteIfExists(keyStore);
+			Files.deleteIfExists(directory);
+		}
+	}
+
+}
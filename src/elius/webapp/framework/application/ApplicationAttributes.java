@@ -55,6 +55,162 @@ public class ApplicationAttributes {
 
 	// Default - LDAP port
 	public static final int DEFAULT_LDAP_PORT = 636;
+	
+	// Default - TLS protocol of the HTTP SSL contexts, TLSv1.3 and TLSv1.2 enabled as in the JVM default context
+	public static final String DEFAULT_SECURITY_TLS_PROTOCOL = "TLS";
+	
+	// Default - TLS protocol of the LDAP SSL contexts
+	public static final String DEFAULT_LDAP_TLS_PROTOCOL = "TLSv1.2";
+	
+	// Default - TLS trust store type
+	public static final String DEFAULT_SECURITY_TLS_TRUSTSTORE_TYPE = "PKCS12";
+	
+	// Default - TLS maximum number of sessions kept for resumption by a context
+	public static final int DEFAULT_SECURITY_TLS_SESSION_CACHE_SIZE = 1000;
+	
+	// Default - TLS time in seconds a session can be resumed
+	public static final int DEFAULT_SECURITY_TLS_SESSION_TIMEOUT = 86400;
+	
+	// Default - Tenant request header
+	public static final String DEFAULT_DB_TENANTS_HEADER = "X-Tenant-Id";
+	
+	// Default - Maximum number of connections of all tenant pools
+	public static final int DEFAULT_DB_TENANTS_MAX_CONNECTIONS = 200;
+	
+	// Default - Idle time in milliseconds after which a tenant pool is closed
+	public static final long DEFAULT_DB_TENANTS_IDLE_TIMEOUT = 600000;
+	
+	// Default - Concurrency limiter initial limit
+	public static final int DEFAULT_DB_LIMITER_INITIAL_LIMIT = 10;
+	
+	// Default - Concurrency limiter minimum limit
+	public static final int DEFAULT_DB_LIMITER_MIN_LIMIT = 2;
+	
+	// Default - Concurrency limiter maximum limit
+	public static final int DEFAULT_DB_LIMITER_MAX_LIMIT = 100;
+	
+	// Default - Concurrency limiter maximum number of waiting calls
+	public static final int DEFAULT_DB_LIMITER_MAX_QUEUE = 10;
+	
+	// Default - Concurrency limiter maximum wait in milliseconds
+	public static final long DEFAULT_DB_LIMITER_MAX_WAIT = 1000;
+	
+	// Default - Retry maximum number of attempts, first included
+	public static final int DEFAULT_DB_RETRY_MAX_ATTEMPTS = 3;
+	
+	// Default - Retry delay of the first retry in milliseconds
+	public static final long DEFAULT_DB_RETRY_BASE_DELAY = 50;
+	
+	// Default - Retry maximum delay in milliseconds
+	public static final long DEFAULT_DB_RETRY_MAX_DELAY = 1000;
+	
+	// Default - Retry maximum time from the first attempt in milliseconds
+	public static final long DEFAULT_DB_RETRY_BUDGET = 5000;
+	
+	// Default - HTTP maximum number of pooled connections of a client
+	public static final int DEFAULT_HTTP_POOL_MAX_TOTAL = 200;
+	
+	// Default - HTTP maximum number of pooled connections to the same host
+	public static final int DEFAULT_HTTP_POOL_MAX_PER_ROUTE = 20;
+	
+	// Default - HTTP idle time in milliseconds after which a pooled connection is closed
+	public static final long DEFAULT_HTTP_POOL_IDLE_TIMEOUT = 30000;
+	
+	// Default - HTTP keep alive in milliseconds when the server does not send one
+	public static final long DEFAULT_HTTP_POOL_KEEP_ALIVE = 30000;
+	
+	// Default - HTTP threads completing the asynchronous calls of a client
+	public static final int DEFAULT_HTTP_ASYNC_THREADS = 50;
+	
+	// Default - HTTP cache maximum number of entries
+	public static final int DEFAULT_HTTP_CACHE_MAX_ENTRIES = 1000;
+	
+	// Default - HTTP cache maximum size of the bodies in characters
+	public static final long DEFAULT_HTTP_CACHE_MAX_SIZE = 10485760;
+	
+	// Default - HTTP connect timeout in milliseconds
+	public static final int DEFAULT_HTTP_POLICY_CONNECT_TIMEOUT = 10000;
+	
+	// Default - HTTP read timeout in milliseconds
+	public static final int DEFAULT_HTTP_POLICY_READ_TIMEOUT = 30000;
+	
+	// Default - HTTP maximum number of attempts, first included
+	public static final int DEFAULT_HTTP_POLICY_MAX_ATTEMPTS = 3;
+	
+	// Default - HTTP delay of the first retry in milliseconds
+	public static final long DEFAULT_HTTP_POLICY_BASE_DELAY = 100;
+	
+	// Default - HTTP maximum delay of a retry in milliseconds
+	public static final long DEFAULT_HTTP_POLICY_MAX_DELAY = 2000;
+	
+	// Default - HTTP consecutive failures opening the circuit of a host
+	public static final int DEFAULT_HTTP_POLICY_FAILURE_THRESHOLD = 5;
+	
+	// Default - HTTP time in milliseconds the circuit of a host stays open
+	public static final long DEFAULT_HTTP_POLICY_OPEN_TIME = 30000;
+	
+	// Default - HTTP maximum number of calls in flight to a host
+	public static final int DEFAULT_HTTP_POLICY_MAX_CONCURRENT = 20;
+	
+	// Default - HTTP maximum number of endpoints with their own metrics
+	public static final int DEFAULT_HTTP_METRICS_MAX_ENDPOINTS = 1000;
+	
+	// Default - HTTP minimum size in bytes of the compressed request bodies
+	public static final int DEFAULT_HTTP_COMPRESSION_THRESHOLD = 1024;
+	
+	// Default - HTTP calls per second to a host
+	public static final double DEFAULT_HTTP_RATE_LIMIT_RATE = 10;
+	
+	// Default - HTTP calls to a host started at once after an idle time
+	public static final int DEFAULT_HTTP_RATE_LIMIT_BURST = 10;
+	
+	// Default - HTTP maximum wait in milliseconds for the rate limit, 0 to reject immediately
+	public static final long DEFAULT_HTTP_RATE_LIMIT_MAX_WAIT = 1000;
+	
+	// Default - HTTP percentile of the latencies after which a GET is hedged
+	public static final double DEFAULT_HTTP_HEDGE_PERCENTILE = 95;
+	
+	// Default - HTTP hedge delay in milliseconds until enough latencies are known
+	public static final long DEFAULT_HTTP_HEDGE_DELAY = 100;
+	
+	// Default - HTTP minimum number of latencies to compute the hedge delay
+	public static final long DEFAULT_HTTP_HEDGE_MIN_SAMPLES = 20;
+	
+	// Default - HTTP number of latencies of a window of the hedge delay
+	public static final long DEFAULT_HTTP_HEDGE_WINDOW = 1000;
+	
+	// Default - HTTP hedged requests in percent of the calls
+	public static final int DEFAULT_HTTP_HEDGE_BUDGET = 5;
+	
+	// Default - HTTP maximum number of threads of the synchronous hedged calls
+	public static final int DEFAULT_HTTP_HEDGE_THREADS = 50;
+	
+	// Default - HTTP outbound queue journal directory, relative to the application path
+	public static final String DEFAULT_HTTP_OUTBOUND_PATH = "outbound";
+	
+	// Default - HTTP outbound queue journal segment size in bytes
+	public static final int DEFAULT_HTTP_OUTBOUND_SEGMENT_SIZE = 16777216;
+	
+	// Default - HTTP outbound queue number of workers
+	public static final int DEFAULT_HTTP_OUTBOUND_THREADS = 4;
+	
+	// Default - HTTP outbound queue maximum number of messages acknowledged together
+	public static final int DEFAULT_HTTP_OUTBOUND_BATCH_SIZE = 100;
+	
+	// Default - HTTP outbound queue maximum number of attempts of a message, first included
+	public static final int DEFAULT_HTTP_OUTBOUND_MAX_ATTEMPTS = 10;
+	
+	// Default - HTTP outbound queue delay of the first retry in milliseconds
+	public static final long DEFAULT_HTTP_OUTBOUND_BASE_DELAY = 1000;
+	
+	// Default - HTTP outbound queue maximum delay of a retry in milliseconds
+	public static final long DEFAULT_HTTP_OUTBOUND_MAX_DELAY = 60000;
+	
+	// Default - HTTP outbound queue maximum number of messages waiting
+	public static final int DEFAULT_HTTP_OUTBOUND_MAX_PENDING = 100000;
+	
+	// Default - HTTP outbound queue time to wait the messages being sent at shutdown in milliseconds
+	public static final long DEFAULT_HTTP_OUTBOUND_CLOSE_TIMEOUT = 5000;
 		
 
 	// Properties - Enable authentication
@@ -80,6 +236,9 @@ public class ApplicationAttributes {
 	
 	// Properties - LDAP trust all certificates (y/n), default is n
 	public static final String PROP_LDAP_TRUST_ALL_CERTIFICATES = "ldap.trustAllCertificates";
+	
+	// Properties - LDAP TLS protocol of the SSL contexts
+	public static final String PROP_LDAP_TLS_PROTOCOL = "ldap.tls.protocol";
 
 	// Properties - LDAP base distinguished name
 	public static final String PROP_LDAP_BASEDN = "ldap.baseDn";
@@ -105,4 +264,214 @@ public class ApplicationAttributes {
 	// Properties - LDAP complete name attribute
 	public static final String PROP_LDAP_USER_CN = "ldap.user.cn";
 	
+	// Properties - TLS protocol of the HTTP SSL contexts
+	public static final String PROP_SECURITY_TLS_PROTOCOL = "security.tls.protocol";
+	
+	// Properties - TLS trust store of the default trust mode, blank for the JVM trust store
+	public static final String PROP_SECURITY_TLS_TRUSTSTORE = "security.tls.trustStore";
+	
+	// Properties - TLS trust store type
+	public static final String PROP_SECURITY_TLS_TRUSTSTORE_TYPE = "security.tls.trustStoreType";
+	
+	// Properties - TLS trust store password
+	public static final String PROP_SECURITY_TLS_TRUSTSTORE_PASSWORD = "security.tls.trustStorePassword";
+	
+	// Properties - TLS maximum number of sessions kept for resumption by a context
+	public static final String PROP_SECURITY_TLS_SESSION_CACHE_SIZE = "security.tls.sessionCacheSize";
+	
+	// Properties - TLS time in seconds a session can be resumed
+	public static final String PROP_SECURITY_TLS_SESSION_TIMEOUT = "security.tls.sessionTimeout";
+	
+	// Properties - Tenant request header
+	public static final String PROP_DB_TENANTS_HEADER = "db.tenants.header";
+	
+	// Properties - Maximum number of connections of all tenant pools
+	public static final String PROP_DB_TENANTS_MAX_CONNECTIONS = "db.tenants.maxConnections";
+	
+	// Properties - Idle time in milliseconds after which a tenant pool is closed
+	public static final String PROP_DB_TENANTS_IDLE_TIMEOUT = "db.tenants.idleTimeout";
+	
+	// Properties - Tenant database prefix, followed by <tenant>.url, .driver, .username, .password, .maxTotal, .maxWaitMillis
+	public static final String PROP_DB_TENANT_PREFIX = "db.tenant.";
+	
+	// Properties - Enable the concurrency limiter of every database (y/n), default is n
+	public static final String PROP_DB_LIMITER_ENABLE = "db.limiter.enable";
+	
+	// Properties - Concurrency limiter initial limit
+	public static final String PROP_DB_LIMITER_INITIAL_LIMIT = "db.limiter.initialLimit";
+	
+	// Properties - Concurrency limiter minimum limit
+	public static final String PROP_DB_LIMITER_MIN_LIMIT = "db.limiter.minLimit";
+	
+	// Properties - Concurrency limiter maximum limit
+	public static final String PROP_DB_LIMITER_MAX_LIMIT = "db.limiter.maxLimit";
+	
+	// Properties - Concurrency limiter maximum number of waiting calls
+	public static final String PROP_DB_LIMITER_MAX_QUEUE = "db.limiter.maxQueue";
+	
+	// Properties - Concurrency limiter maximum wait in milliseconds
+	public static final String PROP_DB_LIMITER_MAX_WAIT = "db.limiter.maxWaitMillis";
+	
+	// Properties - Enable the retry of transient database errors (y/n), default is n
+	public static final String PROP_DB_RETRY_ENABLE = "db.retry.enable";
+	
+	// Properties - Retry maximum number of attempts, first included
+	public static final String PROP_DB_RETRY_MAX_ATTEMPTS = "db.retry.maxAttempts";
+	
+	// Properties - Retry delay of the first retry in milliseconds
+	public static final String PROP_DB_RETRY_BASE_DELAY = "db.retry.baseDelayMillis";
+	
+	// Properties - Retry maximum delay in milliseconds
+	public static final String PROP_DB_RETRY_MAX_DELAY = "db.retry.maxDelayMillis";
+	
+	// Properties - Retry maximum time from the first attempt in milliseconds
+	public static final String PROP_DB_RETRY_BUDGET = "db.retry.budgetMillis";
+	
+	// Properties - HTTP maximum number of pooled connections of a client
+	public static final String PROP_HTTP_POOL_MAX_TOTAL = "http.pool.maxTotal";
+	
+	// Properties - HTTP maximum number of pooled connections to the same host
+	public static final String PROP_HTTP_POOL_MAX_PER_ROUTE = "http.pool.maxPerRoute";
+	
+	// Properties - HTTP idle time in milliseconds after which a pooled connection is closed
+	public static final String PROP_HTTP_POOL_IDLE_TIMEOUT = "http.pool.idleTimeout";
+	
+	// Properties - HTTP keep alive in milliseconds when the server does not send one
+	public static final String PROP_HTTP_POOL_KEEP_ALIVE = "http.pool.keepAlive";
+	
+	// Properties - HTTP threads completing the asynchronous calls of a client
+	public static final String PROP_HTTP_ASYNC_THREADS = "http.async.threads";
+	
+	// Properties - Enable the cache of GET responses (y/n), default is n
+	public static final String PROP_HTTP_CACHE_ENABLE = "http.cache.enable";
+	
+	// Properties - HTTP cache maximum number of entries
+	public static final String PROP_HTTP_CACHE_MAX_ENTRIES = "http.cache.maxEntries";
+	
+	// Properties - HTTP cache maximum size of the bodies in characters
+	public static final String PROP_HTTP_CACHE_MAX_SIZE = "http.cache.maxSize";
+	
+	// Properties - Enable the policies of the HTTP hosts (y/n), default is n
+	public static final String PROP_HTTP_POLICY_ENABLE = "http.policy.enable";
+	
+	// Properties - HTTP policy prefix, the settings of a host override the general ones
+	public static final String PROP_HTTP_POLICY_PREFIX = "http.policy.";
+	
+	// Properties - HTTP host prefix, followed by <host>.connectTimeout, .readTimeout, .maxAttempts, .baseDelayMillis, .maxDelayMillis, .failureThreshold, .openMillis, .maxConcurrent, .rate, .burst, .maxWaitMillis
+	public static final String PROP_HTTP_HOST_PREFIX = "http.host.";
+	
+	// Properties - HTTP connect timeout in milliseconds
+	public static final String PROP_HTTP_POLICY_CONNECT_TIMEOUT = "http.policy.connectTimeout";
+	
+	// Properties - HTTP read timeout in milliseconds
+	public static final String PROP_HTTP_POLICY_READ_TIMEOUT = "http.policy.readTimeout";
+	
+	// Properties - HTTP maximum number of attempts, first included
+	public static final String PROP_HTTP_POLICY_MAX_ATTEMPTS = "http.policy.maxAttempts";
+	
+	// Properties - HTTP delay of the first retry in milliseconds
+	public static final String PROP_HTTP_POLICY_BASE_DELAY = "http.policy.baseDelayMillis";
+	
+	// Properties - HTTP maximum delay of a retry in milliseconds
+	public static final String PROP_HTTP_POLICY_MAX_DELAY = "http.policy.maxDelayMillis";
+	
+	// Properties - HTTP consecutive failures opening the circuit of a host
+	public static final String PROP_HTTP_POLICY_FAILURE_THRESHOLD = "http.policy.failureThreshold";
+	
+	// Properties - HTTP time in milliseconds the circuit of a host stays open
+	public static final String PROP_HTTP_POLICY_OPEN_TIME = "http.policy.openMillis";
+	
+	// Properties - HTTP maximum number of calls in flight to a host
+	public static final String PROP_HTTP_POLICY_MAX_CONCURRENT = "http.policy.maxConcurrent";
+	
+	// Properties - Enable the metrics of the HTTP calls (y/n), default is n
+	public static final String PROP_HTTP_METRICS_ENABLE = "http.metrics.enable";
+	
+	// Properties - HTTP maximum number of endpoints with their own metrics
+	public static final String PROP_HTTP_METRICS_MAX_ENDPOINTS = "http.metrics.maxEndpoints";
+	
+	// Properties - Enable the compression of the HTTP bodies (y/n), default is n
+	public static final String PROP_HTTP_COMPRESSION_ENABLE = "http.compression.enable";
+	
+	// Properties - HTTP minimum size in bytes of the compressed request bodies
+	public static final String PROP_HTTP_COMPRESSION_THRESHOLD = "http.compression.threshold";
+	
+	// Properties - Enable the rate limit of the HTTP hosts (y/n), default is n
+	public static final String PROP_HTTP_RATE_LIMIT_ENABLE = "http.rateLimit.enable";
+	
+	// Properties - HTTP rate limit prefix, the settings of a host override the general ones
+	public static final String PROP_HTTP_RATE_LIMIT_PREFIX = "http.rateLimit.";
+	
+	// Properties - HTTP calls per second to a host, decimals allowed
+	public static final String PROP_HTTP_RATE_LIMIT_RATE = "http.rateLimit.rate";
+	
+	// Properties - HTTP calls to a host started at once after an idle time
+	public static final String PROP_HTTP_RATE_LIMIT_BURST = "http.rateLimit.burst";
+	
+	// Properties - HTTP maximum wait in milliseconds for the rate limit, 0 to reject immediately
+	public static final String PROP_HTTP_RATE_LIMIT_MAX_WAIT = "http.rateLimit.maxWaitMillis";
+	
+	// Properties - HTTP client engine (apache/http2), default is apache
+	public static final String PROP_HTTP_ENGINE = "http.engine";
+	
+	// Properties - Enable the hedging of the HTTP GET calls (y/n), default is n, not applied to the cached calls
+	public static final String PROP_HTTP_HEDGE_ENABLE = "http.hedge.enable";
+	
+	// Properties - HTTP hedge prefix, the settings of a host override the general ones
+	public static final String PROP_HTTP_HEDGE_PREFIX = "http.hedge.";
+	
+	// Properties - HTTP percentile of the latencies after which a GET is hedged
+	public static final String PROP_HTTP_HEDGE_PERCENTILE = "http.hedge.percentile";
+	
+	// Properties - HTTP hedge delay in milliseconds until enough latencies are known
+	public static final String PROP_HTTP_HEDGE_DELAY = "http.hedge.delayMillis";
+	
+	// Properties - HTTP minimum number of latencies to compute the hedge delay
+	public static final String PROP_HTTP_HEDGE_MIN_SAMPLES = "http.hedge.minSamples";
+	
+	// Properties - HTTP number of latencies of a window of the hedge delay
+	public static final String PROP_HTTP_HEDGE_WINDOW = "http.hedge.window";
+	
+	// Properties - HTTP alternate base URI of the hedged requests, i.e. https://replica:8443
+	public static final String PROP_HTTP_HEDGE_ALTERNATE = "http.hedge.alternate";
+	
+	// Properties - HTTP hedged requests in percent of the calls, shared by all hosts
+	public static final String PROP_HTTP_HEDGE_BUDGET = "http.hedge.budgetPercent";
+	
+	// Properties - HTTP maximum number of threads of the synchronous hedged calls, shared by all hosts
+	public static final String PROP_HTTP_HEDGE_THREADS = "http.hedge.threads";
+	
+	// Properties - Enable the HTTP outbound queue (y/n), default is n
+	public static final String PROP_HTTP_OUTBOUND_ENABLE = "http.outbound.enable";
+	
+	// Properties - HTTP outbound queue journal directory
+	public static final String PROP_HTTP_OUTBOUND_PATH = "http.outbound.path";
+	
+	// Properties - HTTP outbound queue journal segment size in bytes
+	public static final String PROP_HTTP_OUTBOUND_SEGMENT_SIZE = "http.outbound.segmentSize";
+	
+	// Properties - Force every HTTP outbound message to the device (y/n), default is n
+	public static final String PROP_HTTP_OUTBOUND_SYNC = "http.outbound.sync";
+	
+	// Properties - HTTP outbound queue number of workers
+	public static final String PROP_HTTP_OUTBOUND_THREADS = "http.outbound.threads";
+	
+	// Properties - HTTP outbound queue maximum number of messages acknowledged together
+	public static final String PROP_HTTP_OUTBOUND_BATCH_SIZE = "http.outbound.batchSize";
+	
+	// Properties - HTTP outbound queue maximum number of attempts of a message, first included
+	public static final String PROP_HTTP_OUTBOUND_MAX_ATTEMPTS = "http.outbound.maxAttempts";
+	
+	// Properties - HTTP outbound queue delay of the first retry in milliseconds
+	public static final String PROP_HTTP_OUTBOUND_BASE_DELAY = "http.outbound.baseDelayMillis";
+	
+	// Properties - HTTP outbound queue maximum delay of a retry in milliseconds
+	public static final String PROP_HTTP_OUTBOUND_MAX_DELAY = "http.outbound.maxDelayMillis";
+	
+	// Properties - HTTP outbound queue maximum number of messages waiting
+	public static final String PROP_HTTP_OUTBOUND_MAX_PENDING = "http.outbound.maxPending";
+	
+	// Properties - HTTP outbound queue time to wait the messages being sent at shutdown in milliseconds
+	public static final String PROP_HTTP_OUTBOUND_CLOSE_TIMEOUT = "http.outbound.closeTimeoutMillis";
+	
 }
@@ -0,0 +1,537 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Write many rows with multi-row statements, INSERT INTO t (a, b) VALUES (?, ?), (?, ?)...
+ *
+ * With key columns the rows are upserted with the statement of the dialect
+ * (ON DUPLICATE KEY UPDATE, ON CONFLICT DO UPDATE, MERGE INTO KEY).
+ * The rows of a statement are limited by the parameters allowed by the dialect,
+ * the SQL is generated once for every number of rows and all statements of a write
+ * run on one connection in one transaction.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBBulkWriter {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBBulkWriter.class);
+
+	// Default maximum number of rows of a statement
+	private static final int DEFAULT_MAX_ROWS = 1000;
+
+	// Default number of buffered rows written automatically
+	private static final int DEFAULT_BUFFER_ROWS = 10000;
+
+	// Valid table and column names, they are part of the SQL
+	private static final String IDENTIFIER = "[A-Za-z_][A-Za-z0-9_$]*(\\.[A-Za-z_][A-Za-z0-9_$]*)*";
+
+	// Database manager
+	private final DBManager dbManager;
+
+	// SQL dialect
+	private final DBDialect dialect;
+
+	// Table
+	private final String table;
+
+	// Columns
+	private final String[] columns;
+
+	// Key columns, upsert if not empty
+	private String[] keyColumns = new String[0];
+
+	// Maximum number of rows of a statement
+	private int maxRows = DEFAULT_MAX_ROWS;
+
+	// Number of buffered rows written automatically
+	private int bufferRows = DEFAULT_BUFFER_ROWS;
+
+	// SQL by number of rows
+	private final Map<Integer, String> sqlCache = new ConcurrentHashMap<>();
+
+	// Buffered rows
+	private final List<Object[]> buffer = new ArrayList<>();
+
+	// Rows written
+	private long rowsWritten;
+
+	// Statements executed
+	private long statements;
+
+
+	/**
+	 * Constructor
+	 * @param dbManager Database manager
+	 * @param dialect SQL dialect
+	 * @param table Table
+	 * @param columns Columns, the order of the row values
+	 */
+	public DBBulkWriter(DBManager dbManager, DBDialect dialect, String table, String... columns) {
+		this.dbManager = dbManager;
+		this.dialect = dialect;
+		this.table = table;
+		this.columns = columns;
+	}
+
+
+	/**
+	 * Add a row to the buffer, the buffer is written when full
+	 * @param values Row values in column order
+	 * @return 0 Successful, 1 Error
+	 */
+	public int add(Object... values) {
+		// Wrong number of values
+		if(values.length != columns.length) {
+			logger.error("Row has " + values.length + " value(s), expected " + columns.length);
+			return 1;
+		}
+
+		// Buffer row
+		buffer.add(values);
+
+		// Write full buffer
+		if(buffer.size() >= bufferRows) {
+			return flush();
+		}
+
+		// Buffered
+		return 0;
+	}
+
+
+	/**
+	 * Write the buffered rows
+	 * @return 0 Successful, 1 Error, the buffer is cleared anyway
+	 */
+	public int flush() {
+		// Nothing to write
+		if(buffer.isEmpty()) {
+			return 0;
+		}
+
+		try {
+			// Write rows
+			return write(buffer);
+		} finally {
+			// Clear buffer
+			buffer.clear();
+		}
+	}
+
+
+	/**
+	 * Write rows in one transaction
+	 * @param rows Rows, values in column order
+	 * @return 0 Successful, 1 Error
+	 */
+	public int write(List<Object[]> rows) {
+		// Nothing to write
+		if(rows.isEmpty()) {
+			return 0;
+		}
+
+		// Check names, they are part of the SQL
+		if(0 != validate()) {
+			return 1;
+		}
+
+		// A statement cannot upsert the same key twice (ON CONFLICT DO UPDATE), keep the last row
+		List<Object[]> unique = (0 < keyColumns.length) ? deduplicate(rows) : rows;
+
+		// Rows of a statement within the parameters limit
+		int rowsPerStatement = Math.max(1, Math.min(maxRows, dialect.getMaxParameters() / columns.length));
+
+		// Log write
+		logger.trace("Bulk write of " + rows.size() + " row(s) to " + table + " with " + rowsPerStatement + " row(s) per statement");
+
+		// Write all statements on one connection
+		int rc = dbManager.executeWithConnection(connection -> writeRows(connection, unique, rowsPerStatement));
+
+		// Log result
+		if(0 == rc) {
+			logger.debug("Bulk write of " + rows.size() + " row(s) to " + table + " completed");
+		}
+
+		// Return code
+		return rc;
+	}
+
+
+	/**
+	 * Write rows on a connection
+	 * @param connection Connection
+	 * @param rows Rows
+	 * @param rowsPerStatement Rows of a statement
+	 * @throws SQLException
+	 */
+	private void writeRows(Connection connection, List<Object[]> rows, int rowsPerStatement) throws SQLException {
+		// Join the transaction of the caller, if any
+		boolean autoCommit = connection.getAutoCommit();
+		if(autoCommit) {
+			connection.setAutoCommit(false);
+		}
+
+		// Statements executed by this write
+		long executed = 0;
+
+		try {
+			// Full statements share the same prepared statement
+			int full = rows.size() / rowsPerStatement;
+			if(0 < full) {
+				try (PreparedStatement preparedStatement = connection.prepareStatement(getSql(rowsPerStatement))) {
+					for(int s = 0; s < full; s++) {
+						executeRows(preparedStatement, rows, s * rowsPerStatement, rowsPerStatement);
+						executed++;
+					}
+				}
+			}
+
+			// Remaining rows
+			int remaining = rows.size() - (full * rowsPerStatement);
+			if(0 < remaining) {
+				try (PreparedStatement preparedStatement = connection.prepareStatement(getSql(remaining))) {
+					executeRows(preparedStatement, rows, full * rowsPerStatement, remaining);
+					executed++;
+				}
+			}
+
+			// Commit own transaction
+			if(autoCommit) {
+				connection.commit();
+			}
+		} catch (SQLException | RuntimeException e) {
+			// Undo own transaction
+			if(autoCommit) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			// Restore auto commit
+			if(autoCommit) {
+				connection.setAutoCommit(true);
+			}
+		}
+
+		// Update statistics
+		rowsWritten += rows.size();
+		statements += executed;
+	}
+
+
+	/**
+	 * Execute a statement with a range of rows
+	 * @param preparedStatement Prepared statement
+	 * @param rows Rows
+	 * @param from First row
+	 * @param count Number of rows
+	 * @throws SQLException
+	 */
+	private void executeRows(PreparedStatement preparedStatement, List<Object[]> rows, int from, int count) throws SQLException {
+		// Flatten row values
+		Object[] parms = new Object[count * columns.length];
+		for(int r = 0; r < count; r++) {
+			Object[] row = rows.get(from + r);
+
+			// Wrong number of values
+			if(row.length != columns.length) {
+				throw new SQLException("Row " + (from + r) + " has " + row.length + " value(s), expected " + columns.length);
+			}
+
+			System.arraycopy(row, 0, parms, r * columns.length, columns.length);
+		}
+
+		// Fill parameters in the statement
+		DBManager.fillPreparedStatement(preparedStatement, dbManager.getDataConversionSettings(), parms);
+
+		// Execute statement
+		preparedStatement.executeUpdate();
+	}
+
+
+	/**
+	 * Get the SQL of a number of rows
+	 * @param rowCount Number of rows
+	 * @return SQL
+	 */
+	private String getSql(int rowCount) {
+		return sqlCache.computeIfAbsent(rowCount, this::buildSql);
+	}
+
+
+	/**
+	 * Build the SQL of a number of rows
+	 * @param rowCount Number of rows
+	 * @return SQL
+	 */
+	private String buildSql(int rowCount) {
+		// Column list
+		String columnList = String.join(", ", columns);
+
+		// Row placeholders
+		StringBuilder placeholders = new StringBuilder("(");
+		for(int c = 0; c < columns.length; c++) {
+			placeholders.append((0 == c) ? "?" : ", ?");
+		}
+		placeholders.append(')');
+
+		// Statement start
+		StringBuilder sql = new StringBuilder();
+		boolean upsert = (0 < keyColumns.length);
+		if(upsert && (DBDialect.H2 == dialect)) {
+			sql.append("MERGE INTO ").append(table).append(" (").append(columnList).append(") KEY (").append(String.join(", ", keyColumns)).append(')');
+		} else {
+			sql.append("INSERT INTO ").append(table).append(" (").append(columnList).append(')');
+		}
+
+		// Rows
+		sql.append(" VALUES ");
+		for(int r = 0; r < rowCount; r++) {
+			if(0 < r)
+				sql.append(", ");
+			sql.append(placeholders);
+		}
+
+		// Update of existing rows
+		if(upsert && (DBDialect.MYSQL == dialect)) {
+			sql.append(" ON DUPLICATE KEY UPDATE ");
+			List<String> updates = getUpdateColumns();
+			if(updates.isEmpty()) {
+				// Nothing to update, keep the row
+				sql.append(keyColumns[0]).append(" = ").append(keyColumns[0]);
+			} else {
+				for(int u = 0; u < updates.size(); u++) {
+					if(0 < u)
+						sql.append(", ");
+					sql.append(updates.get(u)).append(" = VALUES(").append(updates.get(u)).append(')');
+				}
+			}
+		} else if(upsert && (DBDialect.POSTGRESQL == dialect)) {
+			sql.append(" ON CONFLICT (").append(String.join(", ", keyColumns)).append(')');
+			List<String> updates = getUpdateColumns();
+			if(updates.isEmpty()) {
+				// Nothing to update, keep the row
+				sql.append(" DO NOTHING");
+			} else {
+				sql.append(" DO UPDATE SET ");
+				for(int u = 0; u < updates.size(); u++) {
+					if(0 < u)
+						sql.append(", ");
+					sql.append(updates.get(u)).append(" = EXCLUDED.").append(updates.get(u));
+				}
+			}
+		}
+
+		// Return SQL
+		return sql.toString();
+	}
+
+
+	/**
+	 * Get the columns updated by an upsert
+	 * @return Columns not part of the key
+	 */
+	private List<String> getUpdateColumns() {
+		List<String> updates = new ArrayList<>();
+		for(String column : columns) {
+			if(Arrays.stream(keyColumns).noneMatch(column::equalsIgnoreCase)) {
+				updates.add(column);
+			}
+		}
+		return updates;
+	}
+
+
+	/**
+	 * Remove the rows with the same key, the last one is kept
+	 * @param rows Rows, values in column order
+	 * @return Rows with unique keys
+	 */
+	private List<Object[]> deduplicate(List<Object[]> rows) {
+		// Positions of the key columns
+		int[] keyIndexes = new int[keyColumns.length];
+		for(int k = 0; k < keyColumns.length; k++) {
+			for(int c = 0; c < columns.length; c++) {
+				if(columns[c].equalsIgnoreCase(keyColumns[k]))
+					keyIndexes[k] = c;
+			}
+		}
+
+		// Rows by key, a later row replaces the earlier one
+		Map<List<Object>, Object[]> unique = new LinkedHashMap<>();
+		for(Object[] row : rows) {
+			Object[] key = new Object[keyIndexes.length];
+			for(int k = 0; k < keyIndexes.length; k++) {
+				key[k] = row[keyIndexes[k]];
+			}
+			unique.put(Arrays.asList(key), row);
+		}
+
+		// No duplicates
+		if(unique.size() == rows.size()) {
+			return rows;
+		}
+
+		// Log duplicates
+		logger.trace((rows.size() - unique.size()) + " row(s) with a duplicate key replaced by a later row");
+
+		// Return unique rows
+		return new ArrayList<>(unique.values());
+	}
+
+
+	/**
+	 * Check table, columns and dialect
+	 * @return 0 Valid, 1 Not valid
+	 */
+	private int validate() {
+		// Dialect without multi-row statements
+		if((null == dialect) || (DBDialect.UNKNOWN == dialect)) {
+			logger.error("Dialect not set for bulk write to " + table);
+			return 1;
+		}
+
+		// Upsert not standard
+		if((0 < keyColumns.length) && (DBDialect.GENERIC == dialect)) {
+			logger.error("Upsert not supported by dialect " + dialect.getName());
+			return 1;
+		}
+
+		// No columns
+		if(0 == columns.length) {
+			logger.error("No columns for bulk write to " + table);
+			return 1;
+		}
+
+		// Names
+		if((null == table) || !table.matches(IDENTIFIER)) {
+			logger.error("Invalid table(" + table + ")");
+			return 1;
+		}
+		for(String column : columns) {
+			if((null == column) || !column.matches(IDENTIFIER)) {
+				logger.error("Invalid column(" + column + ")");
+				return 1;
+			}
+		}
+		for(String column : keyColumns) {
+			if((null == column) || !column.matches(IDENTIFIER)) {
+				logger.error("Invalid key column(" + column + ")");
+				return 1;
+			}
+			if(Arrays.stream(columns).noneMatch(column::equalsIgnoreCase)) {
+				logger.error("Key column(" + column + ") not written");
+				return 1;
+			}
+		}
+
+		// Valid
+		return 0;
+	}
+
+
+	/**
+	 * Get key columns
+	 * @return Key columns, empty for plain inserts
+	 */
+	public String[] getKeyColumns() {
+		return keyColumns;
+	}
+
+
+	/**
+	 * Set key columns, rows with an existing key are updated
+	 * @param keyColumns Key columns, none for plain inserts
+	 */
+	public void setKeyColumns(String... keyColumns) {
+		this.keyColumns = keyColumns;
+		sqlCache.clear();
+	}
+
+
+	/**
+	 * Get maximum number of rows of a statement
+	 * @return Maximum number of rows
+	 */
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+
+	/**
+	 * Set maximum number of rows of a statement, lowered to respect the parameters limit of the dialect
+	 * @param maxRows Maximum number of rows
+	 */
+	public void setMaxRows(int maxRows) {
+		this.maxRows = Math.max(1, maxRows);
+	}
+
+
+	/**
+	 * Get number of buffered rows written automatically by add
+	 * @return Number of rows
+	 */
+	public int getBufferRows() {
+		return bufferRows;
+	}
+
+
+	/**
+	 * Set number of buffered rows written automatically by add
+	 * @param bufferRows Number of rows
+	 */
+	public void setBufferRows(int bufferRows) {
+		this.bufferRows = Math.max(1, bufferRows);
+	}
+
+
+	/**
+	 * Get rows written
+	 * @return Rows written
+	 */
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+
+	/**
+	 * Get statements executed
+	 * @return Statements executed
+	 */
+	public long getStatements() {
+		return statements;
+	}
+
+}
@@ -0,0 +1,360 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Latency aware limit of the concurrent calls to a database.
+ *
+ * Vegas style: the queue built up in the database is estimated from the ratio between
+ * the round trip time without load and the last sample, the limit grows while the estimated
+ * queue is short and shrinks when it gets long. Calls beyond the limit wait in a small queue,
+ * calls beyond the queue are rejected immediately.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBConcurrencyLimiter {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBConcurrencyLimiter.class);
+
+	// Concurrent HashMap of the limiter instances
+	private static final ConcurrentHashMap<String, DBConcurrencyLimiter> instances = new ConcurrentHashMap<>();
+
+	// Limiters enabled, resolved on first use to keep the properties lookup out of every call
+	private static volatile Boolean enabled;
+
+	// Number of samples after which the round trip time without load is measured again
+	private static final int PROBE_SAMPLES = 1000;
+
+	// Limiter name
+	private final String name;
+
+	// Minimum limit
+	private final int minLimit;
+
+	// Maximum limit
+	private final int maxLimit;
+
+	// Maximum number of waiting calls
+	private final int maxQueue;
+
+	// Maximum wait in nanoseconds
+	private final long maxWaitNanos;
+
+	// Lock
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Signal a free slot
+	private final Condition available = lock.newCondition();
+
+	// Current limit
+	private double limit;
+
+	// Calls in flight
+	private int inFlight;
+
+	// Calls waiting
+	private int waiting;
+
+	// Round trip time without load in nanoseconds, 0 if not measured
+	private double noLoadRtt;
+
+	// Samples since the last measure of the round trip time without load
+	private int probeSamples;
+
+	// Accepted calls
+	private long accepted;
+
+	// Rejected calls
+	private long rejected;
+
+
+	/**
+	 * Constructor
+	 * @param name Limiter name
+	 * @param initialLimit Initial limit
+	 * @param minLimit Minimum limit
+	 * @param maxLimit Maximum limit
+	 * @param maxQueue Maximum number of waiting calls
+	 * @param maxWaitMillis Maximum wait in milliseconds
+	 */
+	public DBConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWaitMillis) {
+		this.name = name;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.maxQueue = Math.max(0, maxQueue);
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+	}
+
+
+	/**
+	 * Get the limiter configured in the application properties for a database
+	 * @param name Database name
+	 * @return Limiter or null if limiters are not enabled
+	 */
+	public static DBConcurrencyLimiter getDefault(String name) {
+		// Resolve enablement once
+		if(null == enabled) {
+			enabled = "y".equalsIgnoreCase(PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE).get(ApplicationAttributes.PROP_DB_LIMITER_ENABLE));
+		}
+
+		// Limiters not enabled
+		if(!enabled) {
+			return null;
+		}
+
+		// Limiter already created
+		DBConcurrencyLimiter limiter = instances.get(name);
+		if(null != limiter) {
+			return limiter;
+		}
+
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Get or create the limiter of the database
+		return instances.computeIfAbsent(name, key -> new DBConcurrencyLimiter(key,
+				appProperties.getInt(ApplicationAttributes.PROP_DB_LIMITER_INITIAL_LIMIT, ApplicationAttributes.DEFAULT_DB_LIMITER_INITIAL_LIMIT),
+				appProperties.getInt(ApplicationAttributes.PROP_DB_LIMITER_MIN_LIMIT, ApplicationAttributes.DEFAULT_DB_LIMITER_MIN_LIMIT),
+				appProperties.getInt(ApplicationAttributes.PROP_DB_LIMITER_MAX_LIMIT, ApplicationAttributes.DEFAULT_DB_LIMITER_MAX_LIMIT),
+				appProperties.getInt(ApplicationAttributes.PROP_DB_LIMITER_MAX_QUEUE, ApplicationAttributes.DEFAULT_DB_LIMITER_MAX_QUEUE),
+				appProperties.getLong(ApplicationAttributes.PROP_DB_LIMITER_MAX_WAIT, ApplicationAttributes.DEFAULT_DB_LIMITER_MAX_WAIT)));
+	}
+
+
+	/**
+	 * Acquire a slot, waiting in the queue if the limit is reached
+	 * @return True if the slot is acquired, false if rejected
+	 */
+	public boolean acquire() {
+		lock.lock();
+		try {
+			// Free slot
+			if(inFlight < (int) limit) {
+				return start();
+			}
+
+			// Queue full, reject immediately
+			if(waiting >= maxQueue) {
+				return reject();
+			}
+
+			// Wait for a free slot
+			waiting++;
+			try {
+				long remaining = maxWaitNanos;
+				while(inFlight >= (int) limit) {
+					// Timeout
+					if(remaining <= 0) {
+						return reject();
+					}
+					remaining = available.awaitNanos(remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return reject();
+			} finally {
+				waiting--;
+			}
+
+			// Slot obtained
+			return start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Release a slot and update the limit with the round trip time of the call
+	 * @param start Start time in nanoseconds, taken when the slot was acquired
+	 */
+	public void release(long start) {
+		// Round trip time
+		double rtt = System.nanoTime() - start;
+
+		lock.lock();
+		try {
+			// Calls in flight when the sample was taken
+			int sampleInFlight = inFlight;
+
+			// Free the slot
+			inFlight--;
+
+			// Update limit
+			update(rtt, sampleInFlight);
+
+			// Wake up waiting calls
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Update the limit with a new sample, lock held
+	 * @param rtt Round trip time in nanoseconds
+	 * @param sampleInFlight Calls in flight at the sample
+	 */
+	private void update(double rtt, int sampleInFlight) {
+		// Measure again the latency without load, the database may have changed
+		if(++probeSamples >= PROBE_SAMPLES) {
+			probeSamples = 0;
+			noLoadRtt = 0;
+		}
+
+		// Lowest latency seen
+		if((0 == noLoadRtt) || (rtt < noLoadRtt)) {
+			noLoadRtt = rtt;
+		}
+
+		// Calls queued in the database
+		double queue = Math.ceil(limit * (1 - noLoadRtt / rtt));
+
+		// Thresholds grow slowly with the limit
+		double step = Math.max(1, Math.log10(limit));
+		double alpha = 3 * step;
+		double beta = 6 * step;
+
+		// New limit
+		double newLimit = limit;
+		if(queue <= step) {
+			// Almost no queue, grow fast
+			newLimit = limit + beta;
+		} else if(queue < alpha) {
+			// Short queue, grow
+			newLimit = limit + step;
+		} else if(queue > beta) {
+			// Long queue, shrink
+			newLimit = limit - step;
+		}
+
+		// Do not grow when the limit is not used
+		if((newLimit > limit) && (sampleInFlight < (limit / 2))) {
+			return;
+		}
+
+		// Bound limit
+		limit = Math.min(maxLimit, Math.max(minLimit, newLimit));
+	}
+
+
+	/**
+	 * Start a call, lock held
+	 * @return True
+	 */
+	private boolean start() {
+		inFlight++;
+		accepted++;
+		return true;
+	}
+
+
+	/**
+	 * Reject a call, lock held
+	 * @return False
+	 */
+	private boolean reject() {
+		rejected++;
+		logger.warn("Concurrency limit reached for " + name + " limit(" + (int) limit + ") inFlight(" + inFlight + ") waiting(" + waiting + ")");
+		return false;
+	}
+
+
+	/**
+	 * Get limiter name
+	 * @return Limiter name
+	 */
+	public String getName() {
+		return name;
+	}
+
+
+	/**
+	 * Get current limit
+	 * @return Current limit
+	 */
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Get calls in flight
+	 * @return Calls in flight
+	 */
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Get accepted calls
+	 * @return Accepted calls
+	 */
+	public long getAccepted() {
+		lock.lock();
+		try {
+			return accepted;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Get rejected calls
+	 * @return Rejected calls
+	 */
+	public long getRejected() {
+		lock.lock();
+		try {
+			return rejected;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
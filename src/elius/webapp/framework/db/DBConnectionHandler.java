@@ -0,0 +1,40 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.sql.Connection;
+
+/**
+ * Run several statements on the same connection, see DBManager.executeWithConnection.
+ *
+ * @author Elia Milioni
+ *
+ */
+@FunctionalInterface
+public interface DBConnectionHandler {
+
+	/**
+	 * Use the connection, statements created by the handler must be closed by the handler
+	 * @param connection Connection, closed or released by the caller
+	 * @throws Exception Any error, logged by the caller
+	 */
+	void handle(Connection connection) throws Exception;
+
+}
@@ -0,0 +1,469 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounded pool of direct connections, used when the data source is not provided by the container.
+ *
+ * Closing a borrowed connection gives it back to the pool.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBConnectionPool {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBConnectionPool.class);
+
+	// Default maximum number of connections
+	public static final int DEFAULT_MAX_TOTAL = 8;
+
+	// Default maximum wait for a connection in milliseconds
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+	// Idle time after which a connection is validated before being borrowed again
+	private static final long VALIDATION_IDLE_MILLIS = 30000;
+
+	// Validation timeout in seconds
+	private static final int VALIDATION_TIMEOUT = 2;
+
+	// Pool settings
+	private final DBJdbcDataSource dataSource;
+
+	// Maximum number of connections
+	private final int maxTotal;
+
+	// Maximum wait for a connection in milliseconds
+	private final long maxWaitMillis;
+
+	// Permits for the connections that can be borrowed
+	private final Semaphore permits;
+
+	// Idle connections, most recently returned first
+	private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+
+	// Borrowed connections
+	private final AtomicInteger active = new AtomicInteger();
+
+	// Number of borrows
+	private final AtomicLong borrowed = new AtomicLong();
+
+	// Number of timeouts waiting for a connection
+	private final AtomicLong timeouts = new AtomicLong();
+
+	// Last borrow or return time
+	private volatile long lastUsed;
+
+	// Pool closed
+	private volatile boolean closed;
+
+
+	/**
+	 * Idle connection with the time it was returned
+	 */
+	private static class IdleConnection {
+		// Physical connection
+		private final Connection connection;
+		// Return time
+		private final long returned;
+
+		IdleConnection(Connection connection, long returned) {
+			this.connection = connection;
+			this.returned = returned;
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param dataSource Pool settings, maxTotal and maxWaitMillis use defaults if not valid
+	 */
+	public DBConnectionPool(DBJdbcDataSource dataSource) {
+		this.dataSource = dataSource;
+		this.maxTotal = Math.max(1, parseInt(dataSource.getMaxTotal(), DEFAULT_MAX_TOTAL));
+		this.maxWaitMillis = Math.max(0, parseLong(dataSource.getMaxWaitMillis(), DEFAULT_MAX_WAIT_MILLIS));
+		this.permits = new Semaphore(maxTotal, true);
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * Borrow a connection, close it to give it back
+	 * @return Connection
+	 * @throws SQLException Pool closed, timeout or error opening the connection
+	 */
+	public Connection getConnection() throws SQLException {
+		// Pool closed
+		if(closed) {
+			throw new SQLException("Connection pool " + dataSource.getName() + " closed");
+		}
+
+		try {
+			// Wait for a free connection
+			if(!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new SQLTransientConnectionException("Timeout waiting for a connection of pool " + dataSource.getName());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted waiting for a connection of pool " + dataSource.getName());
+		}
+
+		// Physical connection
+		Connection connection = null;
+
+		try {
+			// Reuse an idle connection
+			connection = pollIdle();
+
+			// Open a new one
+			if(null == connection) {
+				connection = open();
+			}
+		} catch (SQLException | RuntimeException e) {
+			// Give back the permit
+			permits.release();
+			throw e;
+		}
+
+		// Update statistics
+		active.incrementAndGet();
+		borrowed.incrementAndGet();
+		lastUsed = System.currentTimeMillis();
+
+		// Return pooled connection
+		return (Connection) Proxy.newProxyInstance(DBConnectionPool.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, new PooledConnection(connection));
+	}
+
+
+	/**
+	 * Get a valid idle connection
+	 * @return Connection or null if none is available
+	 */
+	private Connection pollIdle() {
+		// Scan idle connections
+		IdleConnection entry;
+		while(null != (entry = idle.pollFirst())) {
+			try {
+				// Validate connections idle for long
+				if((System.currentTimeMillis() - entry.returned) < VALIDATION_IDLE_MILLIS || entry.connection.isValid(VALIDATION_TIMEOUT)) {
+					return entry.connection;
+				}
+			} catch (SQLException e) {
+				// Not valid
+			}
+
+			// Discard it
+			logger.debug("Invalid idle connection discarded from pool " + dataSource.getName());
+			closeQuietly(entry.connection);
+		}
+
+		// None available
+		return null;
+	}
+
+
+	/**
+	 * Open a new physical connection
+	 * @return Connection
+	 * @throws SQLException
+	 */
+	private Connection open() throws SQLException {
+		try {
+			// Load driver
+			Class.forName(dataSource.getDriverClassName());
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("Driver not found " + dataSource.getDriverClassName(), e);
+		}
+
+		// Open connection
+		Connection connection = DriverManager.getConnection(dataSource.getUrl(), dataSource.getUsername(), dataSource.getPassword());
+
+		// Log the connection
+		logger.trace("New connection opened for pool " + dataSource.getName());
+
+		// Return connection
+		return connection;
+	}
+
+
+	/**
+	 * Give back a borrowed connection
+	 * @param connection Physical connection
+	 */
+	private void giveBack(Connection connection) {
+		// Reusable connection
+		boolean reusable = !closed;
+
+		try {
+			// Restore default state
+			if(reusable && !connection.isClosed() && !connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			reusable = reusable && !connection.isClosed();
+		} catch (SQLException e) {
+			// Not reusable
+			reusable = false;
+		}
+
+		// Keep or close the connection
+		if(reusable) {
+			idle.offerFirst(new IdleConnection(connection, System.currentTimeMillis()));
+		} else {
+			closeQuietly(connection);
+		}
+
+		// Update statistics
+		active.decrementAndGet();
+		lastUsed = System.currentTimeMillis();
+
+		// Free the permit
+		permits.release();
+
+		// Pool closed meanwhile
+		if(closed) {
+			closeIdle();
+		}
+	}
+
+
+	/**
+	 * Close the pool, borrowed connections are closed when given back
+	 */
+	public void close() {
+		// Set closed
+		closed = true;
+
+		// Close idle connections
+		closeIdle();
+
+		// Log closure
+		logger.debug("Connection pool " + dataSource.getName() + " closed");
+	}
+
+
+	/**
+	 * Close all idle connections
+	 */
+	private void closeIdle() {
+		IdleConnection entry;
+		while(null != (entry = idle.pollFirst())) {
+			closeQuietly(entry.connection);
+		}
+	}
+
+
+	/**
+	 * Close a physical connection ignoring errors
+	 * @param connection Connection
+	 */
+	private void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// Log the error
+			logger.debug("Error closing pooled connection: " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Get pool name
+	 * @return Pool name
+	 */
+	public String getName() {
+		return dataSource.getName();
+	}
+
+
+	/**
+	 * Get maximum number of connections
+	 * @return Maximum number of connections
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+
+	/**
+	 * Get number of borrowed connections
+	 * @return Borrowed connections
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+
+	/**
+	 * Get number of idle connections
+	 * @return Idle connections
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+
+	/**
+	 * Get total number of borrows
+	 * @return Number of borrows
+	 */
+	public long getBorrowed() {
+		return borrowed.get();
+	}
+
+
+	/**
+	 * Get number of timeouts waiting for a connection
+	 * @return Number of timeouts
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+
+	/**
+	 * Get last borrow or return time
+	 * @return Time in milliseconds
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+
+	/**
+	 * Check if the pool is closed
+	 * @return True if closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+
+	/**
+	 * Parse an integer setting
+	 * @param value Value
+	 * @param defaultValue Default value
+	 * @return Value or default if not valid
+	 */
+	private static int parseInt(String value, int defaultValue) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (Exception e) {
+			return defaultValue;
+		}
+	}
+
+
+	/**
+	 * Parse a long setting
+	 * @param value Value
+	 * @param defaultValue Default value
+	 * @return Value or default if not valid
+	 */
+	private static long parseLong(String value, long defaultValue) {
+		try {
+			return Long.parseLong(value.trim());
+		} catch (Exception e) {
+			return defaultValue;
+		}
+	}
+
+
+	/**
+	 * Borrowed connection, close gives it back to the pool
+	 */
+	private class PooledConnection implements InvocationHandler {
+
+		// Physical connection
+		private final Connection connection;
+
+		// Given back
+		private boolean released;
+
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Method name
+			String name = method.getName();
+
+			// Give back instead of closing
+			if("close".equals(name)) {
+				if(!released) {
+					released = true;
+					giveBack(connection);
+				}
+				return null;
+			}
+
+			// Closed state of this handle
+			if("isClosed".equals(name)) {
+				return released || connection.isClosed();
+			}
+
+			// Object methods on the handle
+			if("equals".equals(name)) {
+				return proxy == args[0];
+			}
+			if("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			}
+			if("toString".equals(name)) {
+				return "Pooled connection of " + dataSource.getName();
+			}
+
+			// No use after close
+			if(released) {
+				throw new SQLException("Connection already given back to the pool");
+			}
+
+			try {
+				// Delegate to the physical connection
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+}
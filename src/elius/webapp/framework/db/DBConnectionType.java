@@ -23,7 +23,9 @@ public enum DBConnectionType {
 
 	UNKNOWN(0, "Unknown"), 
 	JDBC(1, "Jdbc"), 
-	DIRECT(2, "Direct");
+	DIRECT(2, "Direct"),
+	POOL(3, "Pool"),
+	TENANT(4, "Tenant");
 	
 	// Type name
 	private final String name;
@@ -0,0 +1,90 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+    
+      http://www.apache.org/licenses/LICENSE-2.0
+    
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+public enum DBDialect {
+
+	UNKNOWN(0, "Unknown", 0), 
+	GENERIC(1, "Generic", 2000), 
+	MYSQL(2, "MySql", 65535), 
+	POSTGRESQL(3, "PostgreSql", 32767), 
+	H2(4, "H2", 32767);
+	
+	// Type name
+	private final String name;
+	// Type id
+	private final int id;
+	// Maximum number of parameters of a statement
+	private final int maxParameters;
+
+	
+	/**
+	 * Constructor
+	 * @param id Type id
+	 * @param name Type name
+	 * @param maxParameters Maximum number of parameters of a statement
+	 */
+	DBDialect(int id, String name, int maxParameters) {
+		this.name = name;
+		this.id = id;
+		this.maxParameters = maxParameters;
+	}
+
+	
+	/**
+	 * Get type name
+	 * @return Type name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	
+	/**
+	 * Get type id
+	 * @return Type id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	
+	/**
+	 * Get maximum number of parameters of a statement
+	 * @return Maximum number of parameters
+	 */
+	public int getMaxParameters() {
+		return maxParameters;
+	}
+
+	
+	/**
+	 * Get type by id
+	 * @param id Type id
+	 * @return Type
+	 */
+	public static DBDialect getById(int id) {
+	    for(DBDialect e : values()) {
+	        if(e.id == id) return e;
+	    }
+	    return UNKNOWN;
+	}
+
+};
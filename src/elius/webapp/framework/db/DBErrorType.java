@@ -0,0 +1,150 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+    
+      http://www.apache.org/licenses/LICENSE-2.0
+    
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+
+public enum DBErrorType {
+
+	UNKNOWN(0, "Unknown"), 
+	PERMANENT(1, "Permanent"), 
+	TRANSACTION_ROLLBACK(2, "Transaction rollback"),
+	CONNECTION(3, "Connection");
+	
+	// Type name
+	private final String name;
+	// Type id
+	private final int id;
+
+	
+	/**
+	 * Constructor
+	 * @param id Type id
+	 * @param name Type name
+	 */
+	DBErrorType(int id, String name) {
+		this.name = name;
+		this.id = id;
+	}
+
+	
+	/**
+	 * Get type name
+	 * @return Type name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	
+	/**
+	 * Get type id
+	 * @return Type id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	
+	/**
+	 * Get type by id
+	 * @param id Type id
+	 * @return Type
+	 */
+	public static DBErrorType getById(int id) {
+	    for(DBErrorType e : values()) {
+	        if(e.id == id) return e;
+	    }
+	    return UNKNOWN;
+	}
+	
+	
+	/**
+	 * Classify a SQL State
+	 * @param sqlState SQL State
+	 * @return Transaction rollback (deadlock, serialization failure), connection or permanent error
+	 */
+	public static DBErrorType getBySqlState(String sqlState) {
+		// No SQL State
+		if((null == sqlState) || (sqlState.length() < 2)) {
+			return UNKNOWN;
+		}
+		
+		// Rolled back and safe to replay: serialization failure or deadlock (40001, also deadlocks of MySQL,
+		// SQL Server, DB2 and H2), deadlock of PostgreSQL (40P01)
+		if("40001".equals(sqlState) || "40P01".equals(sqlState)) {
+			return TRANSACTION_ROLLBACK;
+		}
+		
+		// Statement completion unknown (40003), the statement may be committed: repeated only if idempotent
+		if("40003".equals(sqlState)) {
+			return CONNECTION;
+		}
+		
+		// Class 08, connection exception
+		if(sqlState.startsWith("08")) {
+			return CONNECTION;
+		}
+		
+		// Server shutting down or not accepting connections (57P01, 57P02, 57P03)
+		if(sqlState.startsWith("57P")) {
+			return CONNECTION;
+		}
+		
+		// Any other error is not solved by a retry
+		return PERMANENT;
+	}
+	
+	
+	/**
+	 * Classify the exception of a failed connection
+	 * @param e Exception
+	 * @return Connection error if transient, permanent for configuration errors (driver, JNDI name, credentials)
+	 */
+	public static DBErrorType getByException(Throwable e) {
+		// Transient by type: timeouts, broken or refused connections
+		if((e instanceof SQLTransientException) || (e instanceof SQLRecoverableException)) {
+			return CONNECTION;
+		}
+		
+		// Network error, also when wrapped by drivers with their own SQL States
+		for(Throwable cause = e; null != cause; cause = (cause.getCause() != cause) ? cause.getCause() : null) {
+			if(cause instanceof IOException) {
+				return CONNECTION;
+			}
+		}
+		
+		// SQL State set by the driver
+		if((e instanceof SQLException) && (null != ((SQLException) e).getSQLState())) {
+			return getBySqlState(((SQLException) e).getSQLState());
+		}
+		
+		// Classify the cause
+		if((null != e) && (null != e.getCause()) && (e.getCause() != e)) {
+			return getByException(e.getCause());
+		}
+		
+		// Driver class not found, JNDI name not bound, any other error is not solved by a retry
+		return PERMANENT;
+	}
+};
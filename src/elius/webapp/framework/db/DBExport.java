@@ -0,0 +1,974 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Export query results to files, streaming the rows from the result set with constant memory.
+ *
+ * Formats:
+ * <ul>
+ * <li>CSV: RFC 4180, UTF-8, header line with the column labels</li>
+ * <li>BINARY: magic "EWAX", version byte, column count, column labels and JDBC types,
+ * then every row as a 1 marker followed by tagged values, 0 marker at the end. Integers are big endian,
+ * strings are UTF-8 with an int length</li>
+ * </ul>
+ * Files can be gzip compressed and split in parts of a maximum size, every part has its own header.
+ * If the export fails the parts already written are deleted, so no truncated file looks complete.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBExport {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBExport.class);
+
+	// Output buffer size
+	private static final int BUFFER_SIZE = 65536;
+
+	// Binary format magic, EWAX
+	private static final int BINARY_MAGIC = 0x45574158;
+
+	// Binary format version
+	private static final byte BINARY_VERSION = 1;
+
+	// Binary value tags
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_LONG = 1;
+	private static final byte TAG_DOUBLE = 2;
+	private static final byte TAG_STRING = 3;
+	private static final byte TAG_BYTES = 4;
+	private static final byte TAG_DECIMAL = 5;
+	private static final byte TAG_TIMESTAMP = 6;
+	private static final byte TAG_BOOLEAN = 7;
+
+	// Binary row markers
+	private static final byte MARKER_ROW = 1;
+	private static final byte MARKER_END = 0;
+
+	// Gzip header, deflate method, no flags, no time, unknown OS
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	// Empty compressor input
+	private static final byte[] NO_INPUT = new byte[0];
+
+	// Database manager
+	private final DBManager dbManager;
+
+	// Export format
+	private DBExportFormat format;
+
+	// Gzip compression
+	private boolean compress;
+
+	// Maximum size of a part in bytes, 0 for a single file
+	private long maxPartSize;
+
+	// CSV delimiter
+	private char delimiter;
+
+	// Files written by the last export
+	private List<Path> parts = new ArrayList<>();
+
+	// Rows written by the last export
+	private long rows;
+
+	// Current part
+	private FileChannel channel;
+
+	// Encoded data waiting to be written
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	// Compressed data waiting to be written
+	private ByteBuffer deflated;
+
+	// Compressor, reused by all parts
+	private Deflater deflater;
+
+	// Checksum of the uncompressed data
+	private final CRC32 crc = new CRC32();
+
+	// Size of the uncompressed data
+	private long inputSize;
+
+	// Reusable encoder
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+	// Reusable CSV line
+	private final StringBuilder line = new StringBuilder();
+
+	// Reusable buffer for binary strings, grows with the longest string
+	private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+
+	/**
+	 * Constructor, CSV format without compression in a single file
+	 * @param dbManager Database manager
+	 */
+	public DBExport(DBManager dbManager) {
+		this.dbManager = dbManager;
+		this.format = DBExportFormat.CSV;
+		this.compress = false;
+		this.maxPartSize = 0;
+		this.delimiter = ',';
+	}
+
+
+	/**
+	 * Export the result of a query
+	 * @param sql SQL
+	 * @param file Output file, with more parts the part number is added to the name (data-0001.csv)
+	 * @param parms SQL parameters
+	 * @return 0 Successful, 1 Error, the parts already written are deleted
+	 */
+	public int export(String sql, Path file, Object... parms) {
+		// Log export
+		logger.trace("Export sql to " + file + " format(" + format.getName() + ") compress(" + compress + ") maxPartSize(" + maxPartSize + ")");
+
+		// Reset statistics
+		parts = new ArrayList<>();
+		rows = 0;
+
+		// Compressor
+		if(compress) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflated = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+
+		// Return code
+		int rc = 1;
+
+		try {
+			// Stream rows to the files
+			rc = dbManager.executeStream(sql, rs -> write(rs, file), parms);
+
+			// Complete the last part
+			if((0 == rc) && (0 != closePart()))
+				rc = 1;
+		} finally {
+			// Failed, a truncated part must not look complete
+			if(0 != rc) {
+				abortPart();
+				deleteParts();
+			}
+
+			// Free compressor memory
+			if(null != deflater) {
+				deflater.end();
+				deflater = null;
+				deflated = null;
+			}
+		}
+
+		// Log result
+		logger.debug("Exported " + rows + " row(s) in " + parts.size() + " file(s)");
+
+		// Return code
+		return rc;
+	}
+
+
+	/**
+	 * Write all rows
+	 * @param rs Result set
+	 * @param file Output file
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void write(ResultSet rs, Path file) throws SQLException, IOException {
+		// Columns
+		ResultSetMetaData metaData = rs.getMetaData();
+		int columns = metaData.getColumnCount();
+
+		// First part, also for an empty result
+		openPart(file, metaData);
+
+		// Read rows from database
+		while(rs.next()) {
+			// Next part
+			if(null == channel) {
+				openPart(file, metaData);
+			}
+
+			// Write row
+			if(DBExportFormat.BINARY == format) {
+				writeBinaryRow(rs, columns);
+			} else {
+				writeCsvRow(rs, columns);
+			}
+			rows++;
+
+			// Part full
+			if((0 < maxPartSize) && (getPartSize() >= maxPartSize)) {
+				if(0 != closePart())
+					throw new IOException("Error closing export part");
+			}
+		}
+	}
+
+
+	/**
+	 * Open a new part and write the header
+	 * @param file Output file
+	 * @param metaData Result set meta data
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void openPart(Path file, ResultSetMetaData metaData) throws SQLException, IOException {
+		// Part path
+		Path path = (0 < maxPartSize) ? getPartPath(file, parts.size() + 1) : file;
+
+		// Open file
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		parts.add(path);
+		buffer.clear();
+
+		// Start gzip stream
+		if(compress) {
+			deflater.reset();
+			crc.reset();
+			inputSize = 0;
+			deflated.clear();
+			writeFully(ByteBuffer.wrap(GZIP_HEADER));
+		}
+
+		// Columns
+		int columns = metaData.getColumnCount();
+
+		// Header
+		if(DBExportFormat.BINARY == format) {
+			// Magic, version and columns
+			ensure(9);
+			buffer.putInt(BINARY_MAGIC);
+			buffer.put(BINARY_VERSION);
+			buffer.putInt(columns);
+			for(int c = 1; c <= columns; c++) {
+				putString(metaData.getColumnLabel(c));
+				ensure(4);
+				buffer.putInt(metaData.getColumnType(c));
+			}
+		} else {
+			// Column labels
+			line.setLength(0);
+			for(int c = 1; c <= columns; c++) {
+				if(1 < c)
+					line.append(delimiter);
+				appendCsv(metaData.getColumnLabel(c));
+			}
+			line.append("\r\n");
+			putChars(line);
+		}
+
+		// Log part
+		logger.trace("Export part " + path + " opened");
+	}
+
+
+	/**
+	 * Close the current part
+	 * @return 0 Successful, 1 Error
+	 */
+	private int closePart() {
+		// No part open
+		if(null == channel) {
+			return 0;
+		}
+
+		// Return code
+		int rc = 0;
+
+		try {
+			// End marker
+			if(DBExportFormat.BINARY == format) {
+				ensure(1);
+				buffer.put(MARKER_END);
+			}
+
+			// Write pending data
+			flush();
+
+			// Complete gzip stream
+			if(compress) {
+				deflater.finish();
+				while(!deflater.finished()) {
+					deflater.deflate(deflated);
+					if(!deflated.hasRemaining())
+						drainDeflated();
+				}
+				drainDeflated();
+
+				// Trailer, little endian checksum and size
+				ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+				trailer.putInt((int) crc.getValue());
+				trailer.putInt((int) inputSize);
+				trailer.flip();
+				writeFully(trailer);
+			}
+		} catch (IOException e) {
+			// Log the error
+			logger.error("Error writing export part");
+			// Log the trace
+			logger.error(e);
+			// Set return code
+			rc = 1;
+		}
+
+		try {
+			// Close file
+			channel.close();
+		} catch (IOException e) {
+			// Log the error
+			logger.error("Error closing export part");
+			// Log the trace
+			logger.error(e);
+			// Set return code
+			rc = 1;
+		}
+
+		// No part open
+		channel = null;
+
+		// Return code
+		return rc;
+	}
+
+
+	/**
+	 * Close the current part after an error, without end marker and gzip trailer
+	 */
+	private void abortPart() {
+		// No part open
+		if(null == channel) {
+			return;
+		}
+
+		try {
+			// Close file
+			channel.close();
+		} catch (IOException e) {
+			// Log the error
+			logger.error("Error closing export part");
+			// Log the trace
+			logger.error(e);
+		}
+
+		// No part open
+		channel = null;
+	}
+
+
+	/**
+	 * Delete the parts written by a failed export
+	 */
+	private void deleteParts() {
+		for(Path part : parts) {
+			try {
+				// Delete file
+				Files.deleteIfExists(part);
+			} catch (IOException e) {
+				// Log the error
+				logger.error("Export part not deleted " + part);
+				// Log the trace
+				logger.error(e);
+			}
+		}
+
+		// No part written
+		logger.debug("Export failed, " + parts.size() + " part(s) deleted");
+		parts = new ArrayList<>();
+	}
+
+
+	/**
+	 * Write a CSV row
+	 * @param rs Result set
+	 * @param columns Number of columns
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void writeCsvRow(ResultSet rs, int columns) throws SQLException, IOException {
+		// Reuse line
+		line.setLength(0);
+
+		// Columns
+		for(int c = 1; c <= columns; c++) {
+			// Delimiter
+			if(1 < c)
+				line.append(delimiter);
+
+			// Value
+			Object value = rs.getObject(c);
+
+			// Null is an empty field
+			if(null == value) {
+				continue;
+			}
+
+			// Convert binary and LOB values
+			if(value instanceof byte[]) {
+				line.append(Base64.getEncoder().encodeToString((byte[]) value));
+			} else if(value instanceof Blob) {
+				// Write the row so far, the LOB is streamed
+				putChars(line);
+				line.setLength(0);
+				putBase64(((Blob) value).getBinaryStream());
+			} else if(value instanceof Clob) {
+				// Write the row so far, the LOB is streamed
+				putChars(line);
+				// Always quoted, the content is not scanned in advance
+				putChars("\"");
+				putReader(((Clob) value).getCharacterStream(), true);
+				putChars("\"");
+				line.setLength(0);
+			} else if(value instanceof Number) {
+				line.append(value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+			} else {
+				appendCsv(value.toString());
+			}
+		}
+
+		// End of line
+		line.append("\r\n");
+
+		// Encode line
+		putChars(line);
+	}
+
+
+	/**
+	 * Append a CSV field, quoted if needed
+	 * @param value Value
+	 */
+	private void appendCsv(String value) {
+		// Check for characters to be quoted
+		boolean quote = false;
+		for(int i = 0; i < value.length() && !quote; i++) {
+			char ch = value.charAt(i);
+			quote = (ch == delimiter) || (ch == '"') || (ch == '\r') || (ch == '\n');
+		}
+
+		// Plain value
+		if(!quote) {
+			line.append(value);
+			return;
+		}
+
+		// Quoted value, quotes doubled
+		line.append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if('"' == ch)
+				line.append('"');
+			line.append(ch);
+		}
+		line.append('"');
+	}
+
+
+	/**
+	 * Write a binary row
+	 * @param rs Result set
+	 * @param columns Number of columns
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void writeBinaryRow(ResultSet rs, int columns) throws SQLException, IOException {
+		// Row marker
+		ensure(1);
+		buffer.put(MARKER_ROW);
+
+		// Columns
+		for(int c = 1; c <= columns; c++) {
+			// Value
+			Object value = rs.getObject(c);
+
+			// Tagged value
+			if(null == value) {
+				ensure(1);
+				buffer.put(TAG_NULL);
+			} else if((value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte)) {
+				ensure(9);
+				buffer.put(TAG_LONG);
+				buffer.putLong(((Number) value).longValue());
+			} else if((value instanceof Double) || (value instanceof Float)) {
+				ensure(9);
+				buffer.put(TAG_DOUBLE);
+				buffer.putDouble(((Number) value).doubleValue());
+			} else if(value instanceof BigDecimal) {
+				ensure(1);
+				buffer.put(TAG_DECIMAL);
+				putString(((BigDecimal) value).toPlainString());
+			} else if(value instanceof Boolean) {
+				ensure(2);
+				buffer.put(TAG_BOOLEAN);
+				buffer.put((byte) (((Boolean) value) ? 1 : 0));
+			} else if(value instanceof java.util.Date) {
+				ensure(9);
+				buffer.put(TAG_TIMESTAMP);
+				buffer.putLong(((java.util.Date) value).getTime());
+			} else if(value instanceof byte[]) {
+				ensure(5);
+				buffer.put(TAG_BYTES);
+				buffer.putInt(((byte[]) value).length);
+				putBytes(ByteBuffer.wrap((byte[]) value));
+			} else if(value instanceof Blob) {
+				ensure(5);
+				buffer.put(TAG_BYTES);
+				buffer.putInt(checkLength(((Blob) value).length(), c));
+				putStream(((Blob) value).getBinaryStream());
+			} else if(value instanceof Clob) {
+				// Read twice, the encoded length precedes the characters
+				ensure(5);
+				buffer.put(TAG_STRING);
+				buffer.putInt(checkLength(getEncodedLength(((Clob) value).getCharacterStream()), c));
+				putReader(((Clob) value).getCharacterStream(), false);
+			} else {
+				ensure(1);
+				buffer.put(TAG_STRING);
+				putString(value.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * Encode characters in the output buffer
+	 * @param chars Characters
+	 * @throws IOException
+	 */
+	private void putChars(CharSequence chars) throws IOException {
+		// Encode flushing the buffer when full
+		CharBuffer input = CharBuffer.wrap(chars);
+		encoder.reset();
+		while(true) {
+			CoderResult result = encoder.encode(input, buffer, true);
+			if(result.isOverflow()) {
+				flush();
+			} else if(result.isError()) {
+				result.throwException();
+			} else {
+				break;
+			}
+		}
+	}
+
+
+	/**
+	 * Put a string with its length in the output buffer
+	 * @param value String
+	 * @throws IOException
+	 */
+	private void putString(String value) throws IOException {
+		// Encode in the reusable buffer
+		CharBuffer input = CharBuffer.wrap(value);
+		encoder.reset();
+		scratch.clear();
+		while(true) {
+			CoderResult result = encoder.encode(input, scratch, true);
+			if(result.isOverflow()) {
+				// Grow the buffer
+				ByteBuffer larger = ByteBuffer.allocate(scratch.capacity() * 2);
+				scratch.flip();
+				larger.put(scratch);
+				scratch = larger;
+			} else if(result.isError()) {
+				throw new CharacterCodingException();
+			} else {
+				break;
+			}
+		}
+		scratch.flip();
+
+		// Length and bytes
+		ensure(4);
+		buffer.putInt(scratch.remaining());
+		putBytes(scratch);
+	}
+
+
+	/**
+	 * Put bytes in the output buffer
+	 * @param bytes Bytes
+	 * @throws IOException
+	 */
+	private void putBytes(ByteBuffer bytes) throws IOException {
+		// Copy flushing the buffer when full
+		while(bytes.hasRemaining()) {
+			if(!buffer.hasRemaining())
+				flush();
+			int length = Math.min(buffer.remaining(), bytes.remaining());
+			ByteBuffer slice = bytes.duplicate();
+			slice.limit(slice.position() + length);
+			buffer.put(slice);
+			bytes.position(bytes.position() + length);
+		}
+	}
+
+
+	/**
+	 * Put a stream in the output buffer
+	 * @param in Input stream, closed at the end
+	 * @throws IOException
+	 */
+	private void putStream(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			byte[] chunk = new byte[DBLobStream.BUFFER_SIZE];
+			int read;
+			while(-1 != (read = input.read(chunk))) {
+				putBytes(ByteBuffer.wrap(chunk, 0, read));
+			}
+		}
+	}
+
+
+	/**
+	 * Put a stream in the output buffer encoded in Base64
+	 * @param in Input stream, closed at the end
+	 * @throws IOException
+	 */
+	private void putBase64(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			// Chunk multiple of 3, no padding inside the value
+			byte[] chunk = new byte[3 * DBLobStream.BUFFER_SIZE];
+			while(true) {
+				// Fill the chunk
+				int length = 0;
+				int read = 0;
+				while((length < chunk.length) && (-1 != (read = input.read(chunk, length, chunk.length - length)))) {
+					length += read;
+				}
+
+				// Encode chunk
+				if(0 < length) {
+					putBytes(Base64.getEncoder().encode(ByteBuffer.wrap(chunk, 0, length)));
+				}
+
+				// End of stream
+				if(-1 == read) {
+					break;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Put the characters of a reader in the output buffer
+	 * @param in Reader, closed at the end
+	 * @param doubleQuotes True to double the quotes as in a quoted CSV field
+	 * @throws IOException
+	 */
+	private void putReader(Reader in, boolean doubleQuotes) throws IOException {
+		try (Reader reader = in) {
+			char[] chunk = new char[DBLobStream.BUFFER_SIZE];
+			int offset = 0;
+			int read;
+			while(-1 != (read = reader.read(chunk, offset, chunk.length - offset))) {
+				// Keep a trailing high surrogate for the next chunk, pairs are encoded together
+				int length = offset + read;
+				int end = ((0 < length) && Character.isHighSurrogate(chunk[length - 1])) ? (length - 1) : length;
+
+				// Encode chunk
+				line.setLength(0);
+				for(int i = 0; i < end; i++) {
+					if(doubleQuotes && ('"' == chunk[i]))
+						line.append('"');
+					line.append(chunk[i]);
+				}
+				putChars(line);
+
+				// Move the kept surrogate at the start
+				offset = length - end;
+				if(0 < offset)
+					chunk[0] = chunk[length - 1];
+			}
+
+			// Unpaired surrogate at the end, reported by the encoder
+			if(0 < offset) {
+				line.setLength(0);
+				line.append(chunk[0]);
+				putChars(line);
+			}
+		}
+	}
+
+
+	/**
+	 * Get the UTF-8 length of the characters of a reader
+	 * @param in Reader, closed at the end
+	 * @return Length in bytes
+	 * @throws IOException
+	 */
+	private static long getEncodedLength(Reader in) throws IOException {
+		try (Reader reader = in) {
+			char[] chunk = new char[DBLobStream.BUFFER_SIZE];
+			long length = 0;
+			int read;
+			while(-1 != (read = reader.read(chunk))) {
+				for(int i = 0; i < read; i++) {
+					char ch = chunk[i];
+					if(ch < 0x80) {
+						length += 1;
+					} else if(ch < 0x800) {
+						length += 2;
+					} else if(Character.isHighSurrogate(ch)) {
+						// Supplementary character, the low surrogate adds nothing
+						length += 4;
+					} else if(!Character.isLowSurrogate(ch)) {
+						length += 3;
+					}
+				}
+			}
+			return length;
+		}
+	}
+
+
+	/**
+	 * Check that a LOB length fits the int length of the binary format
+	 * @param length Length in bytes
+	 * @param column Column number
+	 * @return Length
+	 * @throws IOException Length too large
+	 */
+	private static int checkLength(long length, int column) throws IOException {
+		if(length > Integer.MAX_VALUE) {
+			throw new IOException("Value of column " + column + " too large for the binary format (" + length + " bytes)");
+		}
+		return (int) length;
+	}
+
+
+	/**
+	 * Make room in the output buffer
+	 * @param size Bytes needed
+	 * @throws IOException
+	 */
+	private void ensure(int size) throws IOException {
+		if(buffer.remaining() < size)
+			flush();
+	}
+
+
+	/**
+	 * Write the output buffer to the file, compressed if needed
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		// Data to write
+		buffer.flip();
+
+		if(compress) {
+			// Checksum and size of the uncompressed data
+			crc.update(buffer.duplicate());
+			inputSize += buffer.remaining();
+
+			// Compress all input
+			deflater.setInput(buffer);
+			while(!deflater.needsInput()) {
+				deflater.deflate(deflated);
+				if(!deflated.hasRemaining())
+					drainDeflated();
+			}
+
+			// Detach the buffer, the compressor must not read it again after clear
+			deflater.setInput(NO_INPUT);
+		} else {
+			// Write as is
+			writeFully(buffer);
+		}
+
+		// Buffer empty
+		buffer.clear();
+	}
+
+
+	/**
+	 * Write the compressed data to the file
+	 * @throws IOException
+	 */
+	private void drainDeflated() throws IOException {
+		deflated.flip();
+		writeFully(deflated);
+		deflated.clear();
+	}
+
+
+	/**
+	 * Write a buffer to the file
+	 * @param data Data
+	 * @throws IOException
+	 */
+	private void writeFully(ByteBuffer data) throws IOException {
+		while(data.hasRemaining()) {
+			channel.write(data);
+		}
+	}
+
+
+	/**
+	 * Get the size of the current part, data still in the compressor not included
+	 * @return Size in bytes
+	 * @throws IOException
+	 */
+	private long getPartSize() throws IOException {
+		return compress ? (GZIP_HEADER.length + deflater.getBytesWritten()) : (channel.position() + buffer.position());
+	}
+
+
+	/**
+	 * Get the path of a part, the number is added before the extension
+	 * @param file Output file
+	 * @param part Part number starting from 1
+	 * @return Part path
+	 */
+	private static Path getPartPath(Path file, int part) {
+		// File name
+		String name = file.getFileName().toString();
+
+		// Split name and extensions
+		int dot = name.indexOf('.');
+		String base = (0 < dot) ? name.substring(0, dot) : name;
+		String extension = (0 < dot) ? name.substring(dot) : "";
+
+		// Part name
+		return file.resolveSibling(String.format("%s-%04d%s", base, part, extension));
+	}
+
+
+	/**
+	 * Get export format
+	 * @return Export format
+	 */
+	public DBExportFormat getFormat() {
+		return format;
+	}
+
+
+	/**
+	 * Set export format
+	 * @param format Export format
+	 */
+	public void setFormat(DBExportFormat format) {
+		this.format = format;
+	}
+
+
+	/**
+	 * Get gzip compression
+	 * @return True if compressed
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+
+
+	/**
+	 * Set gzip compression
+	 * @param compress True to compress
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+
+
+	/**
+	 * Get maximum size of a part
+	 * @return Maximum size in bytes, 0 for a single file
+	 */
+	public long getMaxPartSize() {
+		return maxPartSize;
+	}
+
+
+	/**
+	 * Set maximum size of a part, a part is closed after the row exceeding the size
+	 * @param maxPartSize Maximum size in bytes, 0 for a single file
+	 */
+	public void setMaxPartSize(long maxPartSize) {
+		this.maxPartSize = maxPartSize;
+	}
+
+
+	/**
+	 * Get CSV delimiter
+	 * @return Delimiter
+	 */
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+
+	/**
+	 * Set CSV delimiter
+	 * @param delimiter Delimiter
+	 */
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+
+	/**
+	 * Get the files written by the last export
+	 * @return Files
+	 */
+	public List<Path> getParts() {
+		return parts;
+	}
+
+
+	/**
+	 * Get the rows written by the last export
+	 * @return Number of rows
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+}
@@ -0,0 +1,195 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Copy BLOB / CLOB columns to streams and files with fixed size buffers,
+ * to be used inside a DBResultSetHandler while the connection is open.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBLobStream {
+
+	// Copy buffer size
+	public static final int BUFFER_SIZE = 8192;
+
+
+	/**
+	 * Copy a binary column of the current row to an output stream, i.e. a servlet output stream
+	 * @param rs Result set positioned on a row
+	 * @param column Column label
+	 * @param out Output stream, not closed
+	 * @return Number of bytes copied, -1 if the column is null
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static long copyBinary(ResultSet rs, String column, OutputStream out) throws SQLException, IOException {
+		// Open column stream
+		try (InputStream in = rs.getBinaryStream(column)) {
+			// Null column
+			if(null == in) {
+				return -1;
+			}
+
+			// Copy content
+			return copy(in, out);
+		}
+	}
+
+
+	/**
+	 * Copy a binary column of the current row to a file channel at its current position
+	 * @param rs Result set positioned on a row
+	 * @param column Column label
+	 * @param channel File channel, not closed
+	 * @return Number of bytes copied, -1 if the column is null
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static long copyBinary(ResultSet rs, String column, FileChannel channel) throws SQLException, IOException {
+		// Open column stream
+		try (InputStream in = rs.getBinaryStream(column)) {
+			// Null column
+			if(null == in) {
+				return -1;
+			}
+
+			// Copy content
+			return copy(in, channel);
+		}
+	}
+
+
+	/**
+	 * Copy a character column of the current row to a writer
+	 * @param rs Result set positioned on a row
+	 * @param column Column label
+	 * @param out Writer, not closed
+	 * @return Number of characters copied, -1 if the column is null
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static long copyCharacter(ResultSet rs, String column, Writer out) throws SQLException, IOException {
+		// Open column reader
+		try (Reader in = rs.getCharacterStream(column)) {
+			// Null column
+			if(null == in) {
+				return -1;
+			}
+
+			// Copy content
+			return copy(in, out);
+		}
+	}
+
+
+	/**
+	 * Copy an input stream to an output stream
+	 * @param in Input stream
+	 * @param out Output stream
+	 * @return Number of bytes copied
+	 * @throws IOException
+	 */
+	public static long copy(InputStream in, OutputStream out) throws IOException {
+		// Fixed size buffer
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		// Bytes copied
+		long total = 0;
+
+		// Copy until end of stream
+		int read;
+		while(-1 != (read = in.read(buffer))) {
+			out.write(buffer, 0, read);
+			total += read;
+		}
+
+		// Return bytes copied
+		return total;
+	}
+
+
+	/**
+	 * Copy an input stream to a file channel at its current position
+	 * @param in Input stream
+	 * @param channel File channel
+	 * @return Number of bytes copied
+	 * @throws IOException
+	 */
+	public static long copy(InputStream in, FileChannel channel) throws IOException {
+		// Fixed size heap buffer, the stream can only be read into an array
+		byte[] array = new byte[BUFFER_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(array);
+
+		// Bytes copied
+		long total = 0;
+
+		// Copy until end of stream
+		int read;
+		while(-1 != (read = in.read(array))) {
+			// Drain the buffer
+			buffer.clear().limit(read);
+			while(buffer.hasRemaining()) {
+				total += channel.write(buffer);
+			}
+		}
+
+		// Return bytes copied
+		return total;
+	}
+
+
+	/**
+	 * Copy a reader to a writer
+	 * @param in Reader
+	 * @param out Writer
+	 * @return Number of characters copied
+	 * @throws IOException
+	 */
+	public static long copy(Reader in, Writer out) throws IOException {
+		// Fixed size buffer
+		char[] buffer = new char[BUFFER_SIZE];
+
+		// Characters copied
+		long total = 0;
+
+		// Copy until end of stream
+		int read;
+		while(-1 != (read = in.read(buffer))) {
+			out.write(buffer, 0, read);
+			total += read;
+		}
+
+		// Return characters copied
+		return total;
+	}
+
+}
@@ -19,6 +19,8 @@
 
 package elius.webapp.framework.db;
 
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -66,9 +68,43 @@ public class DBManager {
 	// Authentication credentials
 	private SecretCredentials credentials;
 	
+	// Connection pool
+	private DBConnectionPool connectionPool;
+	
+	// Tenant router and tenant, the pool is resolved at every connection
+	private DBTenantRouter tenantRouter;
+	private String tenant;
+	
 	// Fill flag
 	private DBDataConversionSettings dataConversionSettings;
 	
+	// Connection bound to the request, not closed by this instance
+	private boolean connectionBound;
+	
+	// Concurrency limiter, null to use the default of the database
+	private DBConcurrencyLimiter concurrencyLimiter;
+	
+	// Concurrency limiter of the call in progress
+	private DBConcurrencyLimiter activeLimiter;
+	
+	// Start time of the call in progress
+	private long limitStart;
+	
+	// Retry policy, null to use the default
+	private DBRetryPolicy retryPolicy;
+	
+	// SQL State of the last error
+	private String lastSqlState;
+	
+	// Last connection attempt failed
+	private boolean lastConnectFailed;
+	
+	// Exception of the last failed connection attempt
+	private Exception lastConnectException;
+	
+	// Number of retries of the last call
+	private int lastRetries;
+	
 	
 	/**
 	 * Constructor for datasource connections
@@ -121,6 +157,84 @@ public class DBManager {
 	}
 	
 	
+	/**
+	 * Constructor for pooled connections
+	 * @param connectionPool Connection pool
+	 */
+	public DBManager(DBConnectionPool connectionPool) {
+		// Set connection type to pool
+		connectionType = DBConnectionType.POOL;
+		
+		// Initialize connection
+		connection = null;
+		
+		// Set connection pool
+		this.connectionPool = connectionPool;
+		
+		// Set data conversion setting to default
+		dataConversionSettings = DBDataConversionSettings.DEFAULT;
+		
+	}
+	
+	
+	/**
+	 * Constructor for tenant connections, the pool is resolved at connect time
+	 * so a pool closed and created again by the router is never kept
+	 * @param tenantRouter Tenant router
+	 * @param tenant Tenant
+	 */
+	DBManager(DBTenantRouter tenantRouter, String tenant) {
+		// Set connection type to tenant
+		connectionType = DBConnectionType.TENANT;
+		
+		// Initialize connection
+		connection = null;
+		
+		// Set tenant
+		this.tenantRouter = tenantRouter;
+		this.tenant = tenant;
+		
+		// Set data conversion setting to default
+		dataConversionSettings = DBDataConversionSettings.DEFAULT;
+		
+	}
+	
+	
+	/**
+	 * Create a new instance with the same connection and data conversion settings
+	 * @return Database manager with its own connection
+	 */
+	DBManager newInstance() {
+		// Same connection settings
+		DBManager dbManager;
+		switch(connectionType) {
+			case DIRECT:
+				dbManager = new DBManager(connUrl, driver, credentials);
+				break;
+			case POOL:
+				dbManager = new DBManager(connectionPool);
+				break;
+			case TENANT:
+				dbManager = new DBManager(tenantRouter, tenant);
+				break;
+			default:
+				dbManager = new DBManager(dataSourceName);
+		}
+		
+		// Same data conversion
+		dbManager.setDataConversionSettings(dataConversionSettings);
+		
+		// Same concurrency limiter
+		dbManager.setConcurrencyLimiter(concurrencyLimiter);
+		
+		// Same retry policy
+		dbManager.setRetryPolicy(retryPolicy);
+		
+		// Return new instance
+		return dbManager;
+	}
+	
+	
 	/**
 	 * Execute SQL code
 	 * @param sql SQL
@@ -128,6 +242,36 @@ public class DBManager {
 	 * @return Object table
 	 */
 	public List<Map<String, Object>> executeQuery(String sql, Object... parms) {
+		// Concurrency limit reached
+		if(!acquireLimit()) {
+			return null;
+		}
+		
+		try {
+			// Start of the first attempt
+			long start = System.currentTimeMillis();
+			lastRetries = 0;
+			
+			// Execute query, reads can always be repeated
+			for(int attempt = 1; ; attempt++) {
+				List<Map<String, Object>> table = query(sql, parms);
+				if((null != table) || !retry(attempt, true, true, start))
+					return table;
+			}
+		} finally {
+			// Free concurrency slot
+			releaseLimit();
+		}
+	}
+	
+	
+	/**
+	 * Execute SQL code
+	 * @param sql SQL
+	 * @param parms SQL parameters
+	 * @return Object table
+	 */
+	private List<Map<String, Object>> query(String sql, Object... parms) {
 		
 		// Log SQL, do not trace SQL code for security reasons
 		logger.trace("Execute sql");
@@ -144,45 +288,49 @@ public class DBManager {
 		try {
 			
 			// Prepare statement from connection
-			PreparedStatement preparedStatement = connection.prepareStatement(sql);
+			try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 			
-			// Fill parameters in the statement
-			fillPreparedStatement(preparedStatement, dataConversionSettings, parms);
+				// Fill parameters in the statement
+				fillPreparedStatement(preparedStatement, dataConversionSettings, parms);
 		
-			// Insert row
-			ResultSet rs = preparedStatement.executeQuery();
+				// Insert row
+				ResultSet rs = preparedStatement.executeQuery();
 			
-			// Create list
-			table = new ArrayList<>();
+				// Create list
+				table = new ArrayList<>();
 
-			// Get meta data
-			ResultSetMetaData metaData = rs.getMetaData();
+				// Get meta data
+				ResultSetMetaData metaData = rs.getMetaData();
 			
-			// Read rows from database
-			while ( rs.next() ) {
-				// Allocate row
-				Map<String, Object> tableRow = new LinkedHashMap<>();
+				// Read rows from database
+				while ( rs.next() ) {
+					// Allocate row
+					Map<String, Object> tableRow = new LinkedHashMap<>();
+				
+					// Get every column
+					for (int c = 1; c <= metaData.getColumnCount(); c++) {
+						// Insert column label/value in the row
+						tableRow.put(metaData.getColumnLabel(c), rs.getObject(c));
+					}
 				
-				// Get every column
-				for (int c = 1; c <= metaData.getColumnCount(); c++) {
-					// Insert column label/value in the row
-					tableRow.put(metaData.getColumnLabel(c), rs.getObject(c));
+					// Add row to table
+					table.add(tableRow);
 				}
 				
-				// Add row to table
-				table.add(tableRow);
+				// Log number of rows
+				logger.trace("Number of row selected is " + table.size());
+	
+				// Close result set
+				rs.close();
 			}
 			
-			// Log number of rows
-			logger.trace("Number of row selected is " + table.size());
-
-			// Close result set
-			rs.close();
-			
 		} catch (SQLException e) {
 			// Log SQL State
 			logger.error("SQL State: " + e.getSQLState());
 			
+			// Save SQL State for the retry policy
+			lastSqlState = e.getSQLState();
+			
 			// Log error message
 			logger.error(e.getMessage());
 		} catch (Exception e) {
@@ -199,12 +347,283 @@ public class DBManager {
 	
 	
 	
+	/**
+	 * Execute SQL code and process the result set while the connection is open, i.e. to stream LOB columns
+	 * @param sql SQL
+	 * @param handler Result set handler
+	 * @param parms SQL parameters
+	 * @return 0 Successful, 1 Error
+	 */
+	public int executeStream(String sql, DBResultSetHandler handler, Object... parms) {
+		// Concurrency limit reached
+		if(!acquireLimit()) {
+			return 1;
+		}
+		
+		try {
+			// Start of the first attempt
+			long start = System.currentTimeMillis();
+			lastRetries = 0;
+			
+			// Execute query, rows already handled cannot be repeated
+			for(int attempt = 1; ; attempt++) {
+				int rc = stream(sql, handler, parms);
+				if((0 == rc) || !retry(attempt, false, false, start))
+					return rc;
+			}
+		} finally {
+			// Free concurrency slot
+			releaseLimit();
+		}
+	}
+	
+	
+	/**
+	 * Execute SQL code and process the result set while the connection is open
+	 * @param sql SQL
+	 * @param handler Result set handler
+	 * @param parms SQL parameters
+	 * @return 0 Successful, 1 Error
+	 */
+	private int stream(String sql, DBResultSetHandler handler, Object... parms) {
+		
+		// Log SQL, do not trace SQL code for security reasons
+		logger.trace("Execute sql stream");
+
+		// Error during connection
+		if(0 != connect()) {
+			return 1;
+		}
+		
+		// Return Code
+		int rc = 0;
+		
+		try {
+			
+			// Prepare statement from connection
+			try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+			
+				// Fill parameters in the statement
+				fillPreparedStatement(preparedStatement, dataConversionSettings, parms);
+		
+				// Execute query
+				try (ResultSet rs = preparedStatement.executeQuery()) {
+					
+					// Process rows
+					handler.handle(rs);
+				}
+			}
+			
+		} catch (SQLException e) {
+			// Log SQL State
+			logger.error("SQL State: " + e.getSQLState());
+			
+			// Save SQL State for the retry policy
+			lastSqlState = e.getSQLState();
+			
+			// Log error message
+			logger.error(e.getMessage());
+			
+			// Set return code
+			rc = 1;
+		} catch (Exception e) {
+			// Log the error
+			logger.error(e);
+			
+			// Set return code
+			rc = 1;
+		} finally {	
+			// Close database connection
+			close();
+		}		
+
+		// Return code
+		return rc;
+	}
+	
+	
+	
+	/**
+	 * Run a handler on the connection, i.e. to execute several statements in one transaction
+	 * @param handler Connection handler
+	 * @return 0 Successful, 1 Error
+	 */
+	public int executeWithConnection(DBConnectionHandler handler) {
+		// Concurrency limit reached
+		if(!acquireLimit()) {
+			return 1;
+		}
+		
+		try {
+			// Start of the first attempt
+			long start = System.currentTimeMillis();
+			lastRetries = 0;
+			
+			// Run handler, retried only if the connection was not opened
+			for(int attempt = 1; ; attempt++) {
+				int rc = withConnection(handler);
+				if((0 == rc) || !retry(attempt, false, false, start))
+					return rc;
+			}
+		} finally {
+			// Free concurrency slot
+			releaseLimit();
+		}
+	}
+	
+	
+	/**
+	 * Run a handler on the connection
+	 * @param handler Connection handler
+	 * @return 0 Successful, 1 Error
+	 */
+	private int withConnection(DBConnectionHandler handler) {
+		
+		// Log call
+		logger.trace("Execute connection handler");
+
+		// Error during connection
+		if(0 != connect()) {
+			return 1;
+		}
+		
+		// Return Code
+		int rc = 0;
+		
+		try {
+			// Run handler
+			handler.handle(connection);
+		} catch (SQLException e) {
+			// Log SQL State
+			logger.error("SQL State: " + e.getSQLState());
+			
+			// Save SQL State for the retry policy
+			lastSqlState = e.getSQLState();
+			
+			// Log error message
+			logger.error(e.getMessage());
+			
+			// Set return code
+			rc = 1;
+		} catch (Exception e) {
+			// Log the error
+			logger.error(e);
+			
+			// Set return code
+			rc = 1;
+		} finally {	
+			// Close database connection
+			if (0 != close())
+				rc = 1;
+		}		
+
+		// Return code
+		return rc;
+	}
+	
+	
+	
+	/**
+	 * Stream the first column of the first row to an output stream, i.e. a document to a servlet response
+	 * @param sql SQL selecting a binary column
+	 * @param out Output stream, not closed
+	 * @param parms SQL parameters
+	 * @return 0 Successful, 1 Error or no row found
+	 */
+	public int executeBinary(String sql, OutputStream out, Object... parms) {
+		// Row found
+		boolean[] found = {false};
+		
+		// Copy the column
+		int rc = executeStream(sql, rs -> {
+			if(rs.next()) {
+				found[0] = true;
+				DBLobStream.copyBinary(rs, rs.getMetaData().getColumnLabel(1), out);
+			}
+		}, parms);
+		
+		// No row
+		if((0 == rc) && !found[0]) {
+			// Log the error
+			logger.error("No row selected");
+			// Set return code
+			rc = 1;
+		}
+		
+		// Return code
+		return rc;
+	}
+	
+	
+	
+	/**
+	 * Stream the first column of the first row to a file channel at its current position
+	 * @param sql SQL selecting a binary column
+	 * @param channel File channel, not closed
+	 * @param parms SQL parameters
+	 * @return 0 Successful, 1 Error or no row found
+	 */
+	public int executeBinary(String sql, FileChannel channel, Object... parms) {
+		// Row found
+		boolean[] found = {false};
+		
+		// Copy the column
+		int rc = executeStream(sql, rs -> {
+			if(rs.next()) {
+				found[0] = true;
+				DBLobStream.copyBinary(rs, rs.getMetaData().getColumnLabel(1), channel);
+			}
+		}, parms);
+		
+		// No row
+		if((0 == rc) && !found[0]) {
+			// Log the error
+			logger.error("No row selected");
+			// Set return code
+			rc = 1;
+		}
+		
+		// Return code
+		return rc;
+	}
+	
+	
+	
 	/**
 	 * Execute table drop / create
 	 * @param sql SQL to be executed
 	 * @return 0 Successful, 1 Error
 	 */
 	public int execute(String sql) {
+		// Concurrency limit reached
+		if(!acquireLimit()) {
+			return 1;
+		}
+		
+		try {
+			// Start of the first attempt
+			long start = System.currentTimeMillis();
+			lastRetries = 0;
+			
+			// Execute statement, repeated only if rolled back
+			for(int attempt = 1; ; attempt++) {
+				int rc = executeStatement(sql);
+				if((0 == rc) || !retry(attempt, false, true, start))
+					return rc;
+			}
+		} finally {
+			// Free concurrency slot
+			releaseLimit();
+		}
+	}
+	
+	
+	/**
+	 * Execute table drop / create
+	 * @param sql SQL to be executed
+	 * @return 0 Successful, 1 Error
+	 */
+	private int executeStatement(String sql) {
 		// Log SQL, do not trace SQL code for security reasons
 		logger.trace("Execute sql");
 		
@@ -219,15 +638,19 @@ public class DBManager {
 		// Start DROP / CREATE
 		try {
 			// Create /drop statement from connection
-			Statement statement = connection.createStatement();
+			try (Statement statement = connection.createStatement()) {
 			
-			// Create / drop table
-			statement.execute(sql);
+				// Create / drop table
+				statement.execute(sql);
+			}
 
 		} catch (SQLException e) {
 			// Log SQL State
 			logger.error("SQL State: " + e.getSQLState());
 			
+			// Save SQL State for the retry policy
+			lastSqlState = e.getSQLState();
+			
 			// Log error message
 			logger.error(e.getMessage());
 			
@@ -258,6 +681,36 @@ public class DBManager {
 	 * @return 0 Successfully, 1 Error
 	 */
 	public int update(String sql, Object... parms) {
+		// Concurrency limit reached
+		if(!acquireLimit()) {
+			return 1;
+		}
+		
+		try {
+			// Start of the first attempt
+			long start = System.currentTimeMillis();
+			lastRetries = 0;
+			
+			// Execute update, repeated only if rolled back
+			for(int attempt = 1; ; attempt++) {
+				int rc = executeUpdate(sql, parms);
+				if((0 == rc) || !retry(attempt, false, true, start))
+					return rc;
+			}
+		} finally {
+			// Free concurrency slot
+			releaseLimit();
+		}
+	}
+	
+	
+	/**
+	 * Update 
+	 * @param sql SQL to be executed
+	 * @param parms Parameters
+	 * @return 0 Successfully, 1 Error
+	 */
+	private int executeUpdate(String sql, Object... parms) {
 		// Return Code
 		int rc = 0;
 			
@@ -268,29 +721,33 @@ public class DBManager {
 		
 		try {
 			// Prepare statement from connection
-			PreparedStatement preparedStatement = connection.prepareStatement(sql);
+			try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 			
-			// Fill parameters in the statement
-			fillPreparedStatement(preparedStatement, dataConversionSettings, parms);
+				// Fill parameters in the statement
+				fillPreparedStatement(preparedStatement, dataConversionSettings, parms);
 
-			// Update row
-			int rows = preparedStatement.executeUpdate();
+				// Update row
+				int rows = preparedStatement.executeUpdate();
 			
-			// Log inserted rows
-			logger.trace("Number of row updated is " + rows);
+				// Log inserted rows
+				logger.trace("Number of row updated is " + rows);
 			
-			// Row not updated
-			if (rows <= 0) {
-				// Log the error
-				logger.error("No row uptdated");
+				// Row not updated
+				if (rows <= 0) {
+					// Log the error
+					logger.error("No row uptdated");
 				
-				// Set response code for client
-				return 1;
-			}			
+					// Set response code for client
+					return 1;
+				}
+			}
 		} catch (SQLException e) {
 			// Log SQL State
 			logger.error("SQL State: " + e.getSQLState());
 			
+			// Save SQL State for the retry policy
+			lastSqlState = e.getSQLState();
+			
 			// Log error message
 			logger.error(e.getMessage());
 			
@@ -321,7 +778,7 @@ public class DBManager {
  	 * @param parms Parameters
  	 * @throws SQLException
  	 */
-	private static final void fillPreparedStatement(final PreparedStatement pStmt, DBDataConversionSettings fillFlag, final Object... parms)
+	static final void fillPreparedStatement(final PreparedStatement pStmt, DBDataConversionSettings fillFlag, final Object... parms)
 			throws SQLException {
 		
 
@@ -367,6 +824,27 @@ public class DBManager {
 		// Return code
 		int rc = 0;
 		
+		// Reset the error of the previous attempt
+		lastSqlState = null;
+		lastConnectFailed = false;
+		lastConnectException = null;
+		
+		// Reuse the connection bound to the request
+		if(DBRequestConnection.isActive()) {
+			// Get bound connection
+			connection = DBRequestConnection.get(getConnectionKey());
+			
+			// Found
+			if(null != connection) {
+				// Log messages
+				logger.trace("Request bound database connection reused");
+				// Do not close it
+				connectionBound = true;
+				// Exit successfully
+				return 0;
+			}
+		}
+		
 		// Database connection based on type
 		switch(connectionType) {
 			
@@ -384,10 +862,30 @@ public class DBManager {
 				rc = connectJdbc();
 				break;
 				
+			case POOL:
+				// Log messages
+				logger.trace("Pooled database connection selected");
+				// Call pooled connection
+				rc = connectPool();
+				break;
+				
+			case TENANT:
+				// Log messages
+				logger.trace("Tenant database connection selected");
+				// Call tenant connection
+				rc = connectTenant();
+				break;
+				
 			default:
 				rc = 1;
 		}
 		
+		// Bind the new connection to the request
+		connectionBound = (0 == rc) && DBRequestConnection.bind(getConnectionKey(), connection);
+		
+		// Nothing executed, the call can always be repeated
+		lastConnectFailed = (0 != rc);
+		
 		// Exit with connect return code
 		return rc;
 	}
@@ -411,6 +909,8 @@ public class DBManager {
 			logger.error("Error connecting to database");
 			// Log trace
 			logger.error(e);
+			// Save exception for the retry policy
+			lastConnectException = e;
 			// Set error
 			connection = null;
 			// Set return code
@@ -453,6 +953,81 @@ public class DBManager {
 			logger.error("Error connecting to database");
 			// Log trace
 			logger.error(e);
+			// Save exception for the retry policy
+			lastConnectException = e;
+			// Set error
+			connection = null;
+			// Set return code
+			rc = 1;
+		}
+
+		// Return code
+		return rc;
+	}
+	
+	
+	/**
+	 * Borrow a connection from the pool
+	 * @return 0 Opened, 1 Error
+	 */
+	private int connectPool() {
+		
+		// Set default return code
+		int rc = 0;
+		
+		try {
+			// Borrow connection
+			connection = connectionPool.getConnection();
+		} catch (Exception e) {
+			// Log error message
+			logger.error("Error connecting to database");
+			// Log trace
+			logger.error(e);
+			// Save exception for the retry policy
+			lastConnectException = e;
+			// Set error
+			connection = null;
+			// Set return code
+			rc = 1;
+		}
+
+		// Return code
+		return rc;
+	}
+	
+	
+	/**
+	 * Borrow a connection from the current pool of the tenant
+	 * @return 0 Opened, 1 Error
+	 */
+	private int connectTenant() {
+		
+		// Set default return code
+		int rc = 0;
+		
+		try {
+			// Current pool
+			DBConnectionPool pool = tenantRouter.getPool(tenant);
+			
+			// Closed by the router meanwhile, get the new one
+			if((null != pool) && pool.isClosed()) {
+				pool = tenantRouter.getPool(tenant);
+			}
+			
+			// Tenant not valid or connection budget exhausted
+			if(null == pool) {
+				throw new SQLException("Connection pool not available for tenant(" + tenant + ")");
+			}
+			
+			// Borrow connection
+			connection = pool.getConnection();
+		} catch (Exception e) {
+			// Log error message
+			logger.error("Error connecting to database");
+			// Log trace
+			logger.error(e);
+			// Save exception for the retry policy
+			lastConnectException = e;
 			// Set error
 			connection = null;
 			// Set return code
@@ -473,6 +1048,14 @@ public class DBManager {
 		// Set default return code
 		int rc = 0;
 		
+		// Connection bound to the request, released at request end
+		if(connectionBound) {
+			// Log the connection is kept
+			logger.trace("Database connection kept for the request");
+			// Return successful
+			return 0;
+		}
+		
 		try {
 			// Close connection
 			connection.close();
@@ -497,6 +1080,156 @@ public class DBManager {
 
 	
 
+	/**
+	 * Acquire a slot of the concurrency limiter
+	 * @return True if the call can proceed
+	 */
+	private boolean acquireLimit() {
+		// Instance or default limiter
+		activeLimiter = (null != concurrencyLimiter) ? concurrencyLimiter : DBConcurrencyLimiter.getDefault(getConnectionKey());
+		
+		// No limit
+		if(null == activeLimiter) {
+			return true;
+		}
+		
+		// Wait for a slot, rejected if the queue is full or the wait expires
+		if(!activeLimiter.acquire()) {
+			// Log the error
+			logger.error("Database call rejected by the concurrency limiter");
+			// Nothing to release
+			activeLimiter = null;
+			// Return rejected
+			return false;
+		}
+		
+		// Start of the call
+		limitStart = System.nanoTime();
+		
+		// Proceed
+		return true;
+	}
+	
+	
+	/**
+	 * Release the slot of the concurrency limiter
+	 */
+	private void releaseLimit() {
+		// Release slot with the call latency
+		if(null != activeLimiter) {
+			activeLimiter.release(limitStart);
+			activeLimiter = null;
+		}
+	}
+	
+	
+	/**
+	 * Check if the failed attempt must be retried and wait the backoff
+	 * @param attempt Number of the failed attempt, starting from 1
+	 * @param idempotent True if the statement can be repeated after a connection error
+	 * @param replayable True if the statement can be repeated after it was rolled back
+	 * @param start Start time of the first attempt in milliseconds
+	 * @return True if the call must be retried
+	 */
+	private boolean retry(int attempt, boolean idempotent, boolean replayable, long start) {
+		// Set number of retries
+		lastRetries = attempt - 1;
+		
+		// Instance or default policy
+		DBRetryPolicy policy = (null != retryPolicy) ? retryPolicy : DBRetryPolicy.getDefault();
+		
+		// Retries not enabled
+		if(null == policy) {
+			return false;
+		}
+		
+		// Classify the error, connection failures by exception so configuration errors are not retried
+		DBErrorType errorType = lastConnectFailed ? DBErrorType.getByException(lastConnectException) : DBErrorType.getBySqlState(lastSqlState);
+		
+		// Check if the statement can be repeated
+		boolean retryable;
+		switch(errorType) {
+			case CONNECTION:
+				retryable = lastConnectFailed || idempotent;
+				break;
+			case TRANSACTION_ROLLBACK:
+				retryable = replayable;
+				break;
+			default:
+				retryable = false;
+		}
+		
+		// Not transient or not safe to repeat
+		if(!retryable) {
+			return false;
+		}
+		
+		// Inside a transaction of the caller the whole transaction must be repeated, not the statement
+		if(connectionBound) {
+			try {
+				// Transaction in progress
+				if(!connection.isClosed() && !connection.getAutoCommit()) {
+					return false;
+				}
+			} catch (SQLException e) {
+				// Unknown state
+				return false;
+			}
+			
+			// Do not reuse a broken connection bound to the request
+			if(DBErrorType.CONNECTION == errorType) {
+				DBRequestConnection.discard(getConnectionKey());
+				connectionBound = false;
+			}
+		}
+		
+		// Free the concurrency slot during the backoff, it is not part of the call latency
+		releaseLimit();
+		
+		// Wait backoff
+		if(!policy.awaitRetry(attempt, errorType, start)) {
+			return false;
+		}
+		
+		// Acquire a slot again for the next attempt
+		if(!acquireLimit()) {
+			return false;
+		}
+		
+		// Set number of retries
+		lastRetries = attempt;
+		
+		// Retry
+		return true;
+	}
+	
+	
+	/**
+	 * Get the key identifying the database of this instance, used to bind connections to the request
+	 * @return Connection key
+	 */
+	private String getConnectionKey() {
+		// Direct connection, same URL and user
+		if(DBConnectionType.DIRECT == connectionType) {
+			return connectionType.getName() + ":" + connUrl + ":" + ((null != credentials) ? credentials.getUserId() : "");
+		}
+		
+		// Pool, one per database
+		if(DBConnectionType.POOL == connectionType) {
+			return connectionType.getName() + ":" + connectionPool.getName();
+		}
+		
+		// Tenant, one pool per tenant
+		if(DBConnectionType.TENANT == connectionType) {
+			return connectionType.getName() + ":" + tenant;
+		}
+		
+		// Data source
+		return connectionType.getName() + ":" + dataSourceName;
+	}
+	
+	
+	
 	/**
 	 * Get connection instance
 	 * @return Connection or null
@@ -507,6 +1240,66 @@ public class DBManager {
 
 
 	
+	/**
+	 * Get concurrency limiter
+	 * @return Concurrency limiter or null if the default of the database is used
+	 */
+	public DBConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+
+
+	/**
+	 * Set concurrency limiter, i.e. to share one limiter between data sources of the same database
+	 * @param concurrencyLimiter Concurrency limiter or null to use the default of the database
+	 */
+	public void setConcurrencyLimiter(DBConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+
+
+	/**
+	 * Get retry policy
+	 * @return Retry policy or null if the default is used
+	 */
+	public DBRetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+
+
+	/**
+	 * Set retry policy
+	 * @param retryPolicy Retry policy or null to use the default
+	 */
+	public void setRetryPolicy(DBRetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+
+
+	/**
+	 * Get the number of retries of the last call
+	 * @return Number of retries
+	 */
+	public int getLastRetries() {
+		return lastRetries;
+	}
+
+
+
+	/**
+	 * Get the SQL State of the last error
+	 * @return SQL State or null
+	 */
+	public String getLastSqlState() {
+		return lastSqlState;
+	}
+
+
+
 	/**
 	 * Get data conversion settings
 	 * @return Data conversion settings
@@ -0,0 +1,441 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Query result kept in memory by primary key and refreshed incrementally.
+ *
+ * The query must end its parameters with the watermark predicate, i.e.:
+ * <pre>SELECT id, name, updated_at FROM customer WHERE updated_at &gt;= ?</pre>
+ * every refresh reads only the rows from the last watermark on and merges them by key.
+ * Prefer &gt;= to &gt; so rows written in the same instant of the watermark are not lost,
+ * rows read twice simply replace themselves.
+ *
+ * Physically deleted rows are not detected, use a soft delete column (see setDeletedColumn).
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBMaterializedQuery {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBMaterializedQuery.class);
+
+	// Database manager
+	private final DBManager dbManager;
+
+	// SQL, watermark parameter last
+	private final String sql;
+
+	// SQL parameters before the watermark
+	private final Object[] parms;
+
+	// Primary key column label
+	private final String keyColumn;
+
+	// Watermark column label, monotonically increasing (updated_at, version)
+	private final String watermarkColumn;
+
+	// Initial watermark, used for the first load
+	private final Object initialWatermark;
+
+	// Soft delete column label, null if not used
+	private String deletedColumn;
+
+	// Rows by primary key, replaced as a whole on reload
+	private volatile Map<Object, Map<String, Object>> rows = new ConcurrentHashMap<>();
+
+	// Last watermark read
+	private volatile Object watermark;
+
+	// Periodic refresh scheduler
+	private ScheduledExecutorService scheduler;
+
+
+	/**
+	 * Constructor
+	 * @param dbManager Database manager
+	 * @param sql SQL, watermark predicate parameter last
+	 * @param keyColumn Primary key column label
+	 * @param watermarkColumn Watermark column label
+	 * @param initialWatermark Watermark for the first load, i.e. 0 or new Timestamp(0)
+	 * @param parms SQL parameters before the watermark
+	 */
+	public DBMaterializedQuery(DBManager dbManager, String sql, String keyColumn, String watermarkColumn,
+			Object initialWatermark, Object... parms) {
+		this.dbManager = dbManager;
+		this.sql = sql;
+		this.keyColumn = keyColumn;
+		this.watermarkColumn = watermarkColumn;
+		this.initialWatermark = initialWatermark;
+		this.parms = parms;
+		this.watermark = initialWatermark;
+	}
+
+
+	/**
+	 * Read the rows changed since the last watermark and merge them
+	 * @return 0 Successful, 1 Error
+	 */
+	public synchronized int refresh() {
+		// Merge into the current result
+		return load(rows, watermark);
+	}
+
+
+	/**
+	 * Discard the result and load it again from the initial watermark,
+	 * the current result is kept until the new one is complete
+	 * @return 0 Successful, 1 Error
+	 */
+	public synchronized int reload() {
+		// Load all rows in a new result
+		return load(new ConcurrentHashMap<>(), initialWatermark);
+	}
+
+
+	/**
+	 * Read the rows changed since a watermark and merge them in a result,
+	 * the result and the watermark are published only if successful
+	 * @param target Result to merge into
+	 * @param from Watermark to read from
+	 * @return 0 Successful, 1 Error
+	 */
+	private int load(Map<Object, Map<String, Object>> target, Object from) {
+		// Parameters with the watermark
+		Object[] queryParms = Arrays.copyOf(parms, parms.length + 1);
+		queryParms[parms.length] = from;
+
+		// Read changed rows
+		List<Map<String, Object>> table = dbManager.executeQuery(sql, queryParms);
+
+		// Error reading rows, keep the current result
+		if(null == table) {
+			logger.error("Error refreshing materialized query");
+			return 1;
+		}
+
+		// New watermark
+		Object lastWatermark = from;
+
+		// Merge rows
+		for(Map<String, Object> row : table) {
+			// Move the watermark forward
+			Object rowWatermark = getColumn(row, watermarkColumn);
+			if((null != rowWatermark) && ((null == lastWatermark) || (0 < compareWatermark(rowWatermark, lastWatermark)))) {
+				lastWatermark = rowWatermark;
+			}
+
+			// Get key
+			Object key = getColumn(row, keyColumn);
+
+			// Skip rows without key
+			if(null == key) {
+				logger.warn("Materialized query row without key column " + keyColumn + " skipped");
+				continue;
+			}
+
+			// Remove soft deleted rows, replace the others
+			if(isDeleted(row)) {
+				target.remove(key);
+			} else {
+				target.put(key, row);
+			}
+		}
+
+		// Publish result and watermark
+		rows = target;
+		watermark = lastWatermark;
+
+		// Log refresh
+		logger.trace("Materialized query refreshed, " + table.size() + " row(s) merged, " + target.size() + " row(s) cached");
+
+		// Return successful
+		return 0;
+	}
+
+
+	/**
+	 * Refresh executed by the scheduler, any exception would cancel the next executions
+	 */
+	private void scheduledRefresh() {
+		try {
+			// Refresh
+			refresh();
+		} catch (Throwable e) {
+			// Log error, retried on the next period
+			logger.error("Error refreshing materialized query");
+			logger.error(e);
+		}
+	}
+
+
+	/**
+	 * Compare two watermarks, numbers and date/time values are normalized
+	 * so the initial watermark type may differ from the one returned by the driver
+	 * @param a First watermark
+	 * @param b Second watermark
+	 * @return Negative, zero or positive as the first is lower, equal or greater
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compareWatermark(Object a, Object b) {
+		// Numbers, any precision
+		if((a instanceof Number) && (b instanceof Number)) {
+			return toDecimal((Number) a).compareTo(toDecimal((Number) b));
+		}
+
+		// Date and time values as instants
+		Instant instantA = toInstant(a);
+		Instant instantB = toInstant(b);
+		if((null != instantA) && (null != instantB)) {
+			return instantA.compareTo(instantB);
+		}
+
+		// Same comparable type
+		if((a instanceof Comparable) && a.getClass().isInstance(b)) {
+			return ((Comparable) a).compareTo(b);
+		}
+
+		// Fall back to the text representation
+		return a.toString().compareTo(b.toString());
+	}
+
+
+	/**
+	 * Convert a number to a decimal
+	 * @param number Number
+	 * @return Decimal
+	 */
+	private static BigDecimal toDecimal(Number number) {
+		// Already decimal
+		if(number instanceof BigDecimal) {
+			return (BigDecimal) number;
+		}
+
+		// Integer types without loss
+		if((number instanceof Long) || (number instanceof Integer) || (number instanceof Short) || (number instanceof Byte)) {
+			return BigDecimal.valueOf(number.longValue());
+		}
+
+		// Other types by text (BigInteger, Double, Float)
+		return new BigDecimal(number.toString());
+	}
+
+
+	/**
+	 * Convert a date/time value to an instant, local values use the default time zone as JDBC does
+	 * @param value Value
+	 * @return Instant or null if not a date/time value
+	 */
+	private static Instant toInstant(Object value) {
+		if(value instanceof Timestamp) {
+			return ((Timestamp) value).toInstant();
+		} else if(value instanceof java.sql.Time) {
+			// Time of day only, compared as is
+			return null;
+		} else if(value instanceof java.sql.Date) {
+			return Timestamp.valueOf(((java.sql.Date) value).toLocalDate().atStartOfDay()).toInstant();
+		} else if(value instanceof java.util.Date) {
+			return ((java.util.Date) value).toInstant();
+		} else if(value instanceof LocalDateTime) {
+			return Timestamp.valueOf((LocalDateTime) value).toInstant();
+		} else if(value instanceof LocalDate) {
+			return Timestamp.valueOf(((LocalDate) value).atStartOfDay()).toInstant();
+		} else if(value instanceof OffsetDateTime) {
+			return ((OffsetDateTime) value).toInstant();
+		} else if(value instanceof ZonedDateTime) {
+			return ((ZonedDateTime) value).toInstant();
+		} else if(value instanceof Instant) {
+			return (Instant) value;
+		}
+
+		// Not a date/time value
+		return null;
+	}
+
+
+	/**
+	 * Start the periodic refresh, the first one is executed immediately
+	 * @param periodMillis Refresh period in milliseconds
+	 */
+	public synchronized void start(long periodMillis) {
+		// Already started
+		if(null != scheduler) {
+			return;
+		}
+
+		// Single daemon thread
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "DBMaterializedQuery");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Schedule refresh, errors are logged and retried on the next period
+		scheduler.scheduleWithFixedDelay(this::scheduledRefresh, 0, periodMillis, TimeUnit.MILLISECONDS);
+
+		// Log start
+		logger.debug("Materialized query refresh started every " + periodMillis + "ms");
+	}
+
+
+	/**
+	 * Stop the periodic refresh
+	 */
+	public synchronized void stop() {
+		// Not started
+		if(null == scheduler) {
+			return;
+		}
+
+		// Stop scheduler
+		scheduler.shutdownNow();
+		scheduler = null;
+
+		// Log stop
+		logger.debug("Materialized query refresh stopped");
+	}
+
+
+	/**
+	 * Get a column value, the label is matched case insensitive if not found
+	 * @param row Row
+	 * @param column Column label
+	 * @return Column value
+	 */
+	private static Object getColumn(Map<String, Object> row, String column) {
+		// Exact match
+		if(row.containsKey(column)) {
+			return row.get(column);
+		}
+
+		// Drivers may change the label case
+		for(Map.Entry<String, Object> entry : row.entrySet()) {
+			if(entry.getKey().equalsIgnoreCase(column))
+				return entry.getValue();
+		}
+
+		// Not found
+		return null;
+	}
+
+
+	/**
+	 * Check the soft delete column
+	 * @param row Row
+	 * @return True if the row is deleted
+	 */
+	private boolean isDeleted(Map<String, Object> row) {
+		// Soft delete not used
+		if(null == deletedColumn) {
+			return false;
+		}
+
+		// Get flag
+		Object flag = getColumn(row, deletedColumn);
+
+		// Boolean, numeric or Y/N flag
+		if(flag instanceof Boolean) {
+			return (Boolean) flag;
+		} else if(flag instanceof Number) {
+			return 0 != ((Number) flag).intValue();
+		} else if(null != flag) {
+			return "Y".equalsIgnoreCase(flag.toString().trim());
+		}
+
+		// Not deleted
+		return false;
+	}
+
+
+	/**
+	 * Get a snapshot of the cached rows
+	 * @return Object table
+	 */
+	public List<Map<String, Object>> getRows() {
+		return new ArrayList<>(rows.values());
+	}
+
+
+	/**
+	 * Get a cached row
+	 * @param key Primary key
+	 * @return Row or null if not found
+	 */
+	public Map<String, Object> getRow(Object key) {
+		return rows.get(key);
+	}
+
+
+	/**
+	 * Get the number of cached rows
+	 * @return Number of rows
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+
+	/**
+	 * Get the last watermark read
+	 * @return Watermark
+	 */
+	public Object getWatermark() {
+		return watermark;
+	}
+
+
+	/**
+	 * Get soft delete column label
+	 * @return Soft delete column label or null
+	 */
+	public String getDeletedColumn() {
+		return deletedColumn;
+	}
+
+
+	/**
+	 * Set soft delete column label, rows with the flag set (true, not zero or Y) are removed
+	 * @param deletedColumn Soft delete column label or null
+	 */
+	public void setDeletedColumn(String deletedColumn) {
+		this.deletedColumn = deletedColumn;
+	}
+
+}
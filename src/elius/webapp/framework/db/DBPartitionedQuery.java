@@ -0,0 +1,379 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Execute a query over a range split in slices, every slice runs concurrently on its own connection.
+ *
+ * The query must end its parameters with the range predicate, i.e.:
+ * <pre>SELECT ... WHERE status = ? AND id &gt;= ? AND id &lt; ?</pre>
+ * the slice bounds are appended to the caller parameters (lower inclusive, upper exclusive).
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBPartitionedQuery {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBPartitionedQuery.class);
+
+	// Pool shared by all queries, blocked slices are compensated with new threads
+	private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	// Database manager used as template for the slices connections
+	private final DBManager dbManager;
+
+	// Number of slices executed concurrently
+	private final int parallelism;
+
+
+	/**
+	 * Constructor
+	 * @param dbManager Database manager used as template, every slice uses a new instance with the same settings
+	 * @param parallelism Number of slices executed concurrently
+	 */
+	public DBPartitionedQuery(DBManager dbManager, int parallelism) {
+		this.dbManager = dbManager;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+
+	/**
+	 * Execute the query on every slice and concatenate the rows in range order
+	 * @param sql SQL, range predicate parameters last
+	 * @param range Range of the partitioning column
+	 * @param parms SQL parameters before the range predicate
+	 * @return Object table or null in case of error
+	 */
+	public List<Map<String, Object>> executeQuery(String sql, DBQueryRange range, Object... parms) {
+		// Execute slices
+		List<List<Map<String, Object>>> results = executeSlices(sql, range, parms);
+
+		// Error in at least one slice
+		if(null == results) {
+			return null;
+		}
+
+		// Concatenate rows
+		List<Map<String, Object>> table = new ArrayList<>();
+		for(List<Map<String, Object>> result : results) {
+			table.addAll(result);
+		}
+
+		// Log number of rows
+		logger.trace("Number of row selected is " + table.size());
+
+		// Return object table
+		return table;
+	}
+
+
+	/**
+	 * Execute an aggregate query on every slice and merge the partial aggregates of the same group
+	 * @param sql SQL, range predicate parameters last
+	 * @param range Range of the partitioning column
+	 * @param keyColumns Group by columns, empty for a single aggregate row
+	 * @param combiner Combine two partial rows of the same group, i.e. sum()
+	 * @param parms SQL parameters before the range predicate
+	 * @return Object table or null in case of error
+	 */
+	public List<Map<String, Object>> executeAggregate(String sql, DBQueryRange range, String[] keyColumns,
+			BinaryOperator<Map<String, Object>> combiner, Object... parms) {
+		// Execute slices
+		List<List<Map<String, Object>>> results = executeSlices(sql, range, parms);
+
+		// Error in at least one slice
+		if(null == results) {
+			return null;
+		}
+
+		// Groups in order of first appearance
+		Map<List<Object>, Map<String, Object>> groups = new LinkedHashMap<>();
+
+		// Merge partial rows
+		for(List<Map<String, Object>> result : results) {
+			for(Map<String, Object> row : result) {
+				// Group key
+				List<Object> key = new ArrayList<>(keyColumns.length);
+				for(String column : keyColumns) {
+					key.add(row.get(column));
+				}
+
+				// Combine with the rows of the same group, group columns are never combined
+				groups.merge(key, row, (left, right) -> {
+					Map<String, Object> merged = combiner.apply(left, right);
+					for(String column : keyColumns) {
+						merged.put(column, left.get(column));
+					}
+					return merged;
+				});
+			}
+		}
+
+		// Log number of groups
+		logger.trace("Number of groups merged is " + groups.size());
+
+		// Return object table
+		return new ArrayList<>(groups.values());
+	}
+
+
+	/**
+	 * Combiner adding the numeric columns of two partial rows, suitable for SUM and COUNT aggregates
+	 * @return Combiner
+	 */
+	public static BinaryOperator<Map<String, Object>> sum() {
+		return (left, right) -> {
+			// Merged row
+			Map<String, Object> row = new LinkedHashMap<>(left);
+
+			// Add numeric columns, keep the others
+			for(Map.Entry<String, Object> column : right.entrySet()) {
+				row.merge(column.getKey(), column.getValue(), (a, b) -> add(a, b));
+			}
+
+			// Return merged row
+			return row;
+		};
+	}
+
+
+	/**
+	 * Add two numeric values preserving the widest type
+	 * @param a First value
+	 * @param b Second value
+	 * @return Sum, or the first value if not numeric
+	 */
+	private static Object add(Object a, Object b) {
+		// Not numeric columns are group keys or constants
+		if(!(a instanceof Number) || !(b instanceof Number)) {
+			return a;
+		}
+
+		// Integer types
+		if(isInteger(a) && isInteger(b)) {
+			return Long.valueOf(((Number) a).longValue() + ((Number) b).longValue());
+		}
+
+		// Floating point types
+		if(isFloating(a) || isFloating(b)) {
+			return Double.valueOf(((Number) a).doubleValue() + ((Number) b).doubleValue());
+		}
+
+		// Exact types
+		return new BigDecimal(a.toString()).add(new BigDecimal(b.toString()));
+	}
+
+
+	/**
+	 * Check for integer types
+	 * @param value Value
+	 * @return True if integer up to long
+	 */
+	private static boolean isInteger(Object value) {
+		return (value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte);
+	}
+
+
+	/**
+	 * Check for floating point types
+	 * @param value Value
+	 * @return True if double or float
+	 */
+	private static boolean isFloating(Object value) {
+		return (value instanceof Double) || (value instanceof Float);
+	}
+
+
+	/**
+	 * Execute the query on every slice
+	 * @param sql SQL, range predicate parameters last
+	 * @param range Range of the partitioning column
+	 * @param parms SQL parameters before the range predicate
+	 * @return Slices results in range order or null in case of error
+	 */
+	private List<List<Map<String, Object>>> executeSlices(String sql, DBQueryRange range, Object... parms) {
+		// Split range
+		List<Object[]> slices = range.split(parallelism);
+
+		// Log request
+		logger.trace("Execute sql on " + slices.size() + " slice(s)");
+
+		try {
+			// Execute all slices
+			return pool.invoke(new SliceTask(sql, slices, 0, slices.size(), parms));
+		} catch (Exception e) {
+			// Log the error
+			logger.error("Error executing partitioned query");
+			// Log the trace
+			logger.error(e);
+			// Return error
+			return null;
+		}
+	}
+
+
+	/**
+	 * Fork-join task executing a contiguous group of slices
+	 */
+	private class SliceTask extends RecursiveTask<List<List<Map<String, Object>>>> {
+
+		// Serial version
+		private static final long serialVersionUID = 1L;
+
+		// SQL
+		private final String sql;
+		// Slices bounds
+		private final List<Object[]> slices;
+		// First slice, inclusive
+		private final int first;
+		// Last slice, exclusive
+		private final int last;
+		// SQL parameters before the range predicate
+		private final Object[] parms;
+
+
+		/**
+		 * Constructor
+		 * @param sql SQL
+		 * @param slices Slices bounds
+		 * @param first First slice, inclusive
+		 * @param last Last slice, exclusive
+		 * @param parms SQL parameters before the range predicate
+		 */
+		SliceTask(String sql, List<Object[]> slices, int first, int last, Object[] parms) {
+			this.sql = sql;
+			this.slices = slices;
+			this.first = first;
+			this.last = last;
+			this.parms = parms;
+		}
+
+
+		@Override
+		protected List<List<Map<String, Object>>> compute() {
+			// Results in range order
+			List<List<Map<String, Object>>> results = new ArrayList<>();
+
+			// Nothing to do
+			if(first >= last) {
+				return results;
+			}
+
+			// Single slice, execute it
+			if(1 == (last - first)) {
+				// Slice parameters
+				Object[] sliceParms = Arrays.copyOf(parms, parms.length + 2);
+				sliceParms[parms.length] = slices.get(first)[0];
+				sliceParms[parms.length + 1] = slices.get(first)[1];
+
+				// Execute on a new connection, the pool adds a thread while blocked on the database
+				SliceBlocker blocker = new SliceBlocker(sql, sliceParms);
+				try {
+					ForkJoinPool.managedBlock(blocker);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Slice " + first + " interrupted");
+				}
+				List<Map<String, Object>> table = blocker.table;
+
+				// Fail the whole query
+				if(null == table) {
+					throw new IllegalStateException("Error executing slice " + first);
+				}
+
+				// Return slice result
+				results.add(table);
+				return results;
+			}
+
+			// Split in two halves
+			int middle = (first + last) >>> 1;
+			SliceTask left = new SliceTask(sql, slices, first, middle, parms);
+			SliceTask right = new SliceTask(sql, slices, middle, last, parms);
+
+			// Execute left asynchronously and right in this thread
+			left.fork();
+			List<List<Map<String, Object>>> rightResults = right.compute();
+
+			// Merge in range order
+			results.addAll(left.join());
+			results.addAll(rightResults);
+
+			// Return results
+			return results;
+		}
+	}
+
+
+	/**
+	 * Blocking execution of a slice
+	 */
+	private class SliceBlocker implements ForkJoinPool.ManagedBlocker {
+
+		// SQL
+		private final String sql;
+		// SQL parameters with the slice bounds
+		private final Object[] parms;
+		// Result, null in case of error
+		private List<Map<String, Object>> table;
+		// Executed
+		private boolean done;
+
+
+		/**
+		 * Constructor
+		 * @param sql SQL
+		 * @param parms SQL parameters with the slice bounds
+		 */
+		SliceBlocker(String sql, Object[] parms) {
+			this.sql = sql;
+			this.parms = parms;
+		}
+
+
+		@Override
+		public boolean block() {
+			table = dbManager.newInstance().executeQuery(sql, parms);
+			done = true;
+			return true;
+		}
+
+
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+/**
+ * Usage snapshot of a connection pool.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBPoolUsage {
+
+	// Pool name
+	private final String name;
+
+	// Maximum number of connections
+	private final int maxTotal;
+
+	// Borrowed connections
+	private final int active;
+
+	// Idle connections
+	private final int idle;
+
+	// Total number of borrows
+	private final long borrowed;
+
+	// Number of timeouts waiting for a connection
+	private final long timeouts;
+
+	// Last borrow or return time in milliseconds
+	private final long lastUsed;
+
+
+	/**
+	 * Constructor
+	 * @param pool Connection pool
+	 */
+	public DBPoolUsage(DBConnectionPool pool) {
+		this.name = pool.getName();
+		this.maxTotal = pool.getMaxTotal();
+		this.active = pool.getActive();
+		this.idle = pool.getIdle();
+		this.borrowed = pool.getBorrowed();
+		this.timeouts = pool.getTimeouts();
+		this.lastUsed = pool.getLastUsed();
+	}
+
+
+	/**
+	 * Get pool name
+	 * @return Pool name
+	 */
+	public String getName() {
+		return name;
+	}
+
+
+	/**
+	 * Get maximum number of connections
+	 * @return Maximum number of connections
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+
+	/**
+	 * Get borrowed connections
+	 * @return Borrowed connections
+	 */
+	public int getActive() {
+		return active;
+	}
+
+
+	/**
+	 * Get idle connections
+	 * @return Idle connections
+	 */
+	public int getIdle() {
+		return idle;
+	}
+
+
+	/**
+	 * Get total number of borrows
+	 * @return Number of borrows
+	 */
+	public long getBorrowed() {
+		return borrowed;
+	}
+
+
+	/**
+	 * Get number of timeouts waiting for a connection
+	 * @return Number of timeouts
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+
+	/**
+	 * Get last borrow or return time
+	 * @return Time in milliseconds
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+
+
+	@Override
+	public String toString() {
+		return "Pool(" + name + ") active(" + active + "/" + maxTotal + ") idle(" + idle + ") borrowed(" + borrowed + ") timeouts(" + timeouts + ")";
+	}
+
+}
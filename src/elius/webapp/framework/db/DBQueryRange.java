@@ -0,0 +1,146 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Numeric or timestamp range of a query column, lower bound inclusive and upper bound exclusive.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBQueryRange {
+
+	// Lower bound, inclusive
+	private final long from;
+
+	// Upper bound, exclusive
+	private final long to;
+
+	// Timestamp range
+	private final boolean timestamp;
+
+
+	/**
+	 * Constructor
+	 * @param from Lower bound, inclusive
+	 * @param to Upper bound, exclusive
+	 * @param timestamp True if bounds are epoch milliseconds of a timestamp column
+	 */
+	private DBQueryRange(long from, long to, boolean timestamp) {
+		this.from = from;
+		this.to = to;
+		this.timestamp = timestamp;
+	}
+
+
+	/**
+	 * Numeric range
+	 * @param from Lower bound, inclusive
+	 * @param to Upper bound, exclusive
+	 * @return Range
+	 */
+	public static DBQueryRange of(long from, long to) {
+		return new DBQueryRange(from, to, false);
+	}
+
+
+	/**
+	 * Timestamp range
+	 * @param from Lower bound, inclusive
+	 * @param to Upper bound, exclusive
+	 * @return Range
+	 */
+	public static DBQueryRange of(Timestamp from, Timestamp to) {
+		return new DBQueryRange(from.getTime(), to.getTime(), true);
+	}
+
+
+	/**
+	 * Split the range in contiguous slices of the same size
+	 * @param slices Number of slices, reduced if the range is smaller
+	 * @return List of slices bounds (lower inclusive, upper exclusive) as Long or Timestamp
+	 */
+	public List<Object[]> split(int slices) {
+		// List of bounds
+		List<Object[]> bounds = new ArrayList<>();
+
+		// Empty range
+		if(to <= from) {
+			return bounds;
+		}
+
+		// Length unsigned, it can exceed Long.MAX_VALUE
+		long length = to - from;
+
+		// Never more slices than values
+		long wanted = Math.max(1, slices);
+		long count = (Long.compareUnsigned(length, wanted) < 0) ? length : wanted;
+
+		// Slice size, rounded up
+		long size = Long.divideUnsigned(length - 1, count) + 1;
+
+		// Create slices, the remaining length is compared to avoid overflows near the limits
+		long lower = from;
+		while(Long.compareUnsigned(to - lower, size) > 0) {
+			// Add bounds
+			bounds.add(new Object[] {value(lower), value(lower + size)});
+			lower += size;
+		}
+
+		// Last slice
+		bounds.add(new Object[] {value(lower), value(to)});
+
+		// Return slices
+		return bounds;
+	}
+
+
+	/**
+	 * Convert a bound to the column type
+	 * @param bound Bound
+	 * @return Long or Timestamp
+	 */
+	private Object value(long bound) {
+		return timestamp ? new Timestamp(bound) : Long.valueOf(bound);
+	}
+
+
+	/**
+	 * Get lower bound, inclusive
+	 * @return Lower bound
+	 */
+	public Object getFrom() {
+		return value(from);
+	}
+
+
+	/**
+	 * Get upper bound, exclusive
+	 * @return Upper bound
+	 */
+	public Object getTo() {
+		return value(to);
+	}
+
+}
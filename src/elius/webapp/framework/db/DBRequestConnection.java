@@ -0,0 +1,240 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Connections bound to the current request thread.
+ *
+ * While a request scope is active every DBManager borrows at most one connection per
+ * data source and keeps it until the scope ends, instead of opening and closing
+ * a connection for each call.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBRequestConnection {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBRequestConnection.class);
+
+	// Request scope of the current thread, null if no scope is active
+	private static final ThreadLocal<Scope> scope = new ThreadLocal<>();
+
+
+	/**
+	 * Request scope
+	 */
+	private static class Scope {
+		// Nesting level, i.e. forwarded or included requests
+		private int depth;
+		// Bound connections by connection key
+		private final Map<String, Connection> connections = new HashMap<>();
+	}
+
+
+	/**
+	 * Start the request scope for the current thread
+	 */
+	public static void begin() {
+		// Get current scope
+		Scope current = scope.get();
+
+		// Create it if not already active
+		if(null == current) {
+			current = new Scope();
+			scope.set(current);
+		}
+
+		// Increment nesting level
+		current.depth++;
+	}
+
+
+	/**
+	 * End the request scope for the current thread, bound connections are released on the outermost end
+	 * @return 0 Successful, 1 Error releasing at least one connection
+	 */
+	public static int end() {
+		// Get current scope
+		Scope current = scope.get();
+
+		// No active scope
+		if(null == current) {
+			return 0;
+		}
+
+		// Still nested
+		if(0 < --current.depth) {
+			return 0;
+		}
+
+		// Remove scope from thread
+		scope.remove();
+
+		// Return code
+		int rc = 0;
+
+		// Release every bound connection
+		for(Map.Entry<String, Connection> entry : current.connections.entrySet()) {
+			if(0 != release(entry.getValue()))
+				rc = 1;
+		}
+
+		// Log number of released connections
+		logger.trace("Request scope ended, " + current.connections.size() + " connection(s) released");
+
+		// Return code
+		return rc;
+	}
+
+
+	/**
+	 * Check if a request scope is active for the current thread
+	 * @return True if active
+	 */
+	public static boolean isActive() {
+		return (null != scope.get());
+	}
+
+
+	/**
+	 * Get the connection bound to the current request
+	 * @param key Connection key
+	 * @return Connection or null if not bound or no longer usable
+	 */
+	static Connection get(String key) {
+		// Get current scope
+		Scope current = scope.get();
+
+		// No active scope
+		if(null == current) {
+			return null;
+		}
+
+		// Get bound connection
+		Connection connection = current.connections.get(key);
+
+		try {
+			// Discard closed connections
+			if((null != connection) && connection.isClosed()) {
+				current.connections.remove(key);
+				connection = null;
+			}
+		} catch (SQLException e) {
+			// Discard connection in error
+			current.connections.remove(key);
+			connection = null;
+		}
+
+		// Return connection
+		return connection;
+	}
+
+
+	/**
+	 * Bind a connection to the current request
+	 * @param key Connection key
+	 * @param connection Connection
+	 * @return True if bound, false if no request scope is active
+	 */
+	static boolean bind(String key, Connection connection) {
+		// Get current scope
+		Scope current = scope.get();
+
+		// No active scope
+		if(null == current) {
+			return false;
+		}
+
+		// Bind connection
+		current.connections.put(key, connection);
+
+		// Log binding
+		logger.trace("Connection bound to the request");
+
+		// Bound
+		return true;
+	}
+
+
+	/**
+	 * Unbind and release a connection of the current request, i.e. after a connection failure
+	 * @param key Connection key
+	 */
+	static void discard(String key) {
+		// Get current scope
+		Scope current = scope.get();
+
+		// Remove and release the connection
+		if(null != current) {
+			Connection connection = current.connections.remove(key);
+			if(null != connection)
+				release(connection);
+		}
+	}
+
+
+	/**
+	 * Release a connection, pending transactions are rolled back
+	 * @param connection Connection
+	 * @return 0 Successful, 1 Error
+	 */
+	private static int release(Connection connection) {
+		try {
+			// Do not give back a connection with an open transaction
+			if(!connection.isClosed() && !connection.getAutoCommit()) {
+				// Log the rollback
+				logger.warn("Uncommitted transaction found at request end, rollback");
+				// Rollback
+				connection.rollback();
+				// Restore default
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			// Log the error
+			logger.error("Error restoring connection state");
+			// Log the trace
+			logger.error(e);
+		}
+
+		try {
+			// Close connection
+			connection.close();
+		} catch (SQLException e) {
+			// Log the error
+			logger.error("Error closing database connection");
+			// Log the trace
+			logger.error(e);
+			// Return error
+			return 1;
+		}
+
+		// Return successful
+		return 0;
+	}
+}
@@ -0,0 +1,40 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.sql.ResultSet;
+
+/**
+ * Process a result set while the connection is still open, see DBManager.executeStream.
+ *
+ * @author Elia Milioni
+ *
+ */
+@FunctionalInterface
+public interface DBResultSetHandler {
+
+	/**
+	 * Process the result set, the handler scrolls it with next()
+	 * @param rs Result set, closed by the caller
+	 * @throws Exception Any error, logged by the caller
+	 */
+	void handle(ResultSet rs) throws Exception;
+
+}
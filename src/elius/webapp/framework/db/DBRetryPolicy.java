@@ -0,0 +1,213 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Retry of transient database errors with jittered exponential backoff.
+ *
+ * A call is retried while the attempts and the time budget are not exhausted,
+ * every wait is a random time between zero and the exponential delay of the attempt.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBRetryPolicy {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBRetryPolicy.class);
+
+	// Policy configured in the application properties
+	private static DBRetryPolicy defaultPolicy;
+
+	// Maximum number of attempts, first included
+	private final int maxAttempts;
+
+	// Delay of the first retry in milliseconds
+	private final long baseDelayMillis;
+
+	// Maximum delay of a retry in milliseconds
+	private final long maxDelayMillis;
+
+	// Maximum time from the first attempt in milliseconds
+	private final long budgetMillis;
+
+	// Number of retries
+	private final AtomicLong retries = new AtomicLong();
+
+	// Number of retries after a transaction rollback
+	private final AtomicLong rollbackRetries = new AtomicLong();
+
+	// Number of retries after a connection error
+	private final AtomicLong connectionRetries = new AtomicLong();
+
+	// Number of calls failed after exhausting attempts or budget
+	private final AtomicLong exhausted = new AtomicLong();
+
+
+	/**
+	 * Constructor
+	 * @param maxAttempts Maximum number of attempts, first included
+	 * @param baseDelayMillis Delay of the first retry in milliseconds
+	 * @param maxDelayMillis Maximum delay of a retry in milliseconds
+	 * @param budgetMillis Maximum time from the first attempt in milliseconds
+	 */
+	public DBRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, long budgetMillis) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(1, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+		this.budgetMillis = Math.max(0, budgetMillis);
+	}
+
+
+	/**
+	 * Get the policy configured in the application properties
+	 * @return Policy or null if retries are not enabled
+	 */
+	public static synchronized DBRetryPolicy getDefault() {
+		// Already created
+		if(null != defaultPolicy) {
+			return defaultPolicy;
+		}
+
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Retries not enabled
+		if(!"y".equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_DB_RETRY_ENABLE))) {
+			return null;
+		}
+
+		// Create policy
+		defaultPolicy = new DBRetryPolicy(
+				appProperties.getInt(ApplicationAttributes.PROP_DB_RETRY_MAX_ATTEMPTS, ApplicationAttributes.DEFAULT_DB_RETRY_MAX_ATTEMPTS),
+				appProperties.getLong(ApplicationAttributes.PROP_DB_RETRY_BASE_DELAY, ApplicationAttributes.DEFAULT_DB_RETRY_BASE_DELAY),
+				appProperties.getLong(ApplicationAttributes.PROP_DB_RETRY_MAX_DELAY, ApplicationAttributes.DEFAULT_DB_RETRY_MAX_DELAY),
+				appProperties.getLong(ApplicationAttributes.PROP_DB_RETRY_BUDGET, ApplicationAttributes.DEFAULT_DB_RETRY_BUDGET));
+
+		// Return policy
+		return defaultPolicy;
+	}
+
+
+	/**
+	 * Wait before a new attempt
+	 * @param attempt Number of the failed attempt, starting from 1
+	 * @param errorType Error type of the failed attempt
+	 * @param start Start time of the first attempt in milliseconds
+	 * @return True if the call must be retried, false if attempts or budget are exhausted
+	 */
+	public boolean awaitRetry(int attempt, DBErrorType errorType, long start) {
+		// Attempts exhausted
+		if(attempt >= maxAttempts) {
+			exhausted.incrementAndGet();
+			logger.warn("Retry attempts exhausted after " + attempt + " attempt(s)");
+			return false;
+		}
+
+		// Exponential delay with full jitter
+		long delay = Math.min(maxDelayMillis, baseDelayMillis << Math.min(30, attempt - 1));
+		delay = ThreadLocalRandom.current().nextLong(delay + 1);
+
+		// Budget exhausted
+		if((System.currentTimeMillis() - start + delay) > budgetMillis) {
+			exhausted.incrementAndGet();
+			logger.warn("Retry budget exhausted after " + attempt + " attempt(s)");
+			return false;
+		}
+
+		// Log retry
+		logger.warn("Retry " + attempt + " of " + (maxAttempts - 1) + " after " + errorType.getName() + " error in " + delay + "ms");
+
+		try {
+			// Backoff
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		// Update statistics
+		retries.incrementAndGet();
+		if(DBErrorType.TRANSACTION_ROLLBACK == errorType) {
+			rollbackRetries.incrementAndGet();
+		} else if(DBErrorType.CONNECTION == errorType) {
+			connectionRetries.incrementAndGet();
+		}
+
+		// Retry
+		return true;
+	}
+
+
+	/**
+	 * Get maximum number of attempts
+	 * @return Maximum number of attempts, first included
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+
+	/**
+	 * Get number of retries
+	 * @return Number of retries
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+
+	/**
+	 * Get number of retries after a transaction rollback (deadlock, serialization failure)
+	 * @return Number of retries
+	 */
+	public long getRollbackRetries() {
+		return rollbackRetries.get();
+	}
+
+
+	/**
+	 * Get number of retries after a connection error
+	 * @return Number of retries
+	 */
+	public long getConnectionRetries() {
+		return connectionRetries.get();
+	}
+
+
+	/**
+	 * Get number of calls failed after exhausting attempts or budget
+	 * @return Number of calls
+	 */
+	public long getExhausted() {
+		return exhausted.get();
+	}
+
+}
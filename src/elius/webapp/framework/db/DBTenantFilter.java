@@ -0,0 +1,99 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.io.IOException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Resolve the tenant of the request from the tenant header, see DBTenantRouter.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBTenantFilter implements Filter {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBTenantFilter.class);
+
+	// Tenant header
+	private String tenantHeader;
+
+
+	/**
+	 * Constructor
+	 */
+	public DBTenantFilter() {
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Get tenant header
+		tenantHeader = appProperties.get(ApplicationAttributes.PROP_DB_TENANTS_HEADER, ApplicationAttributes.DEFAULT_DB_TENANTS_HEADER);
+	}
+
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+			throws IOException, ServletException {
+
+		// Resolve tenant
+		String tenant = null;
+		if (servletRequest instanceof HttpServletRequest) {
+			tenant = resolveTenant((HttpServletRequest) servletRequest);
+		}
+
+		// Log
+		logger.trace("Request tenant (" + tenant + ")");
+
+		// Set tenant for the request thread
+		DBTenantRouter.setCurrentTenant(tenant);
+
+		try {
+			// Process request
+			filterChain.doFilter(servletRequest, servletResponse);
+		} finally {
+			// Clear tenant
+			DBTenantRouter.setCurrentTenant(null);
+		}
+	}
+
+
+	/**
+	 * Resolve the tenant of the request, override to use other sources (session, host name...)
+	 * @param httpServletRequest Request
+	 * @return Tenant or null if not found
+	 */
+	protected String resolveTenant(HttpServletRequest httpServletRequest) {
+		return httpServletRequest.getHeader(tenantHeader);
+	}
+
+}
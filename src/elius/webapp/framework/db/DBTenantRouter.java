@@ -0,0 +1,374 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Route database calls to the tenant of the request.
+ *
+ * Every tenant has its own bounded pool, created on first use from the application properties
+ * (db.tenant.&lt;tenant&gt;.url, .driver, .username, .password, .maxTotal, .maxWaitMillis).
+ * The sum of the pools sizes never exceeds db.tenants.maxConnections: idle pools are closed
+ * after db.tenants.idleTimeout or, least recently used first, to make room for a new tenant.
+ * Managers resolve the tenant pool at every connection, so a closed pool is never reused.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class DBTenantRouter {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(DBTenantRouter.class);
+
+	// Shared instance
+	private static DBTenantRouter instance;
+
+	// Tenant of the current request
+	private static final ThreadLocal<String> currentTenant = new ThreadLocal<>();
+
+	// Properties file
+	private final PropertiesManager appProperties;
+
+	// Maximum number of connections of all pools
+	private final int maxConnections;
+
+	// Idle time in milliseconds after which a pool is closed
+	private final long idleTimeout;
+
+	// Pools by tenant
+	private final Map<String, DBConnectionPool> pools = new ConcurrentHashMap<>();
+
+	// Periodic idle pools sweep
+	private final ScheduledExecutorService sweeper;
+
+
+	/**
+	 * Constructor
+	 */
+	private DBTenantRouter() {
+		// Load application properties
+		appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Global connection budget
+		maxConnections = appProperties.getInt(ApplicationAttributes.PROP_DB_TENANTS_MAX_CONNECTIONS, ApplicationAttributes.DEFAULT_DB_TENANTS_MAX_CONNECTIONS);
+
+		// Idle pool timeout
+		idleTimeout = appProperties.getLong(ApplicationAttributes.PROP_DB_TENANTS_IDLE_TIMEOUT, ApplicationAttributes.DEFAULT_DB_TENANTS_IDLE_TIMEOUT);
+
+		// Single daemon thread
+		sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "DBTenantRouter");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Sweep idle pools twice per timeout, not more than once per second
+		long period = Math.max(1000, idleTimeout / 2);
+		sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Get the shared instance
+	 * @return Tenant router
+	 */
+	public static synchronized DBTenantRouter getInstance() {
+		// Create on first use
+		if(null == instance) {
+			instance = new DBTenantRouter();
+		}
+
+		// Return instance
+		return instance;
+	}
+
+
+	/**
+	 * Set the tenant of the current request
+	 * @param tenant Tenant or null to clear it
+	 */
+	public static void setCurrentTenant(String tenant) {
+		if(null == tenant) {
+			currentTenant.remove();
+		} else {
+			currentTenant.set(tenant);
+		}
+	}
+
+
+	/**
+	 * Get the tenant of the current request
+	 * @return Tenant or null if not set
+	 */
+	public static String getCurrentTenant() {
+		return currentTenant.get();
+	}
+
+
+	/**
+	 * Get a database manager for the tenant of the current request
+	 * @return Database manager or null if the tenant is not set or not valid
+	 */
+	public DBManager getManager() {
+		// Get current tenant
+		String tenant = currentTenant.get();
+
+		// Tenant not resolved
+		if(null == tenant) {
+			logger.error("Tenant not set for the current request");
+			return null;
+		}
+
+		// Get manager
+		return getManager(tenant);
+	}
+
+
+	/**
+	 * Get a database manager for a tenant
+	 * @param tenant Tenant
+	 * @return Database manager or null if the tenant is not valid or the connection budget is exhausted
+	 */
+	public DBManager getManager(String tenant) {
+		// Check the tenant pool can be created
+		if(null == getPool(tenant)) {
+			return null;
+		}
+
+		// Return manager on the tenant, the pool is resolved at every connection
+		return new DBManager(this, tenant);
+	}
+
+
+	/**
+	 * Get the pool of a tenant, created if missing or closed
+	 * @param tenant Tenant
+	 * @return Pool or null if the tenant is not valid or the connection budget is exhausted
+	 */
+	DBConnectionPool getPool(String tenant) {
+		// Fast path, pool already created
+		DBConnectionPool pool = pools.get(tenant);
+
+		// Create it
+		if((null == pool) || pool.isClosed()) {
+			pool = createPool(tenant);
+		}
+
+		// Return pool
+		return pool;
+	}
+
+
+	/**
+	 * Create the pool of a tenant
+	 * @param tenant Tenant
+	 * @return Pool or null in case of error
+	 */
+	private synchronized DBConnectionPool createPool(String tenant) {
+		// Created meanwhile
+		DBConnectionPool pool = pools.get(tenant);
+		if((null != pool) && !pool.isClosed()) {
+			return pool;
+		}
+
+		// Tenant is part of the properties keys
+		if(!tenant.matches("[A-Za-z0-9_\\-]+")) {
+			logger.error("Invalid tenant(" + tenant + ")");
+			return null;
+		}
+
+		// Tenant properties prefix
+		String prefix = ApplicationAttributes.PROP_DB_TENANT_PREFIX + tenant + ".";
+
+		// Tenant database
+		DBJdbcDataSource dataSource = new DBJdbcDataSource(tenant,
+				appProperties.get(prefix + "url"),
+				appProperties.get(prefix + "driver"),
+				appProperties.get(prefix + "maxTotal"),
+				appProperties.get(prefix + "maxWaitMillis"),
+				appProperties.get(prefix + "username"),
+				appProperties.get(prefix + "password"));
+
+		// Unknown tenant
+		if(null == dataSource.getUrl()) {
+			logger.error("Database not configured for tenant(" + tenant + ")");
+			return null;
+		}
+
+		// New pool
+		pool = new DBConnectionPool(dataSource);
+
+		// Close expired pools
+		evictIdle();
+
+		// Make room in the connection budget
+		while((getAllocated() + pool.getMaxTotal()) > maxConnections) {
+			if(!evictLeastRecentlyUsed()) {
+				logger.error("Connection budget exhausted, pool not created for tenant(" + tenant + ")");
+				return null;
+			}
+		}
+
+		// Register pool
+		pools.put(tenant, pool);
+
+		// Log creation
+		logger.debug("Pool created for tenant(" + tenant + ") maxTotal(" + pool.getMaxTotal() + ")");
+
+		// Return pool
+		return pool;
+	}
+
+
+	/**
+	 * Close the pools without borrowed connections idle for more than the idle timeout
+	 */
+	public synchronized void evictIdle() {
+		// Current time
+		long now = System.currentTimeMillis();
+
+		// Scan pools
+		Iterator<Map.Entry<String, DBConnectionPool>> iterator = pools.entrySet().iterator();
+		while(iterator.hasNext()) {
+			Map.Entry<String, DBConnectionPool> entry = iterator.next();
+			DBConnectionPool pool = entry.getValue();
+
+			// Expired
+			if((0 == pool.getActive()) && ((now - pool.getLastUsed()) > idleTimeout)) {
+				iterator.remove();
+				pool.close();
+				logger.debug("Idle pool closed for tenant(" + entry.getKey() + ")");
+			}
+		}
+	}
+
+
+	/**
+	 * Idle pools sweep executed by the scheduler, any exception would cancel the next executions
+	 */
+	private void sweep() {
+		try {
+			// Close expired pools
+			evictIdle();
+		} catch (Throwable e) {
+			// Log error, retried on the next period
+			logger.error("Error closing idle tenant pools");
+			logger.error(e);
+		}
+	}
+
+
+	/**
+	 * Close the least recently used pool without borrowed connections
+	 * @return True if a pool was closed
+	 */
+	private boolean evictLeastRecentlyUsed() {
+		// Candidate
+		String tenant = null;
+		DBConnectionPool candidate = null;
+
+		// Find the least recently used idle pool
+		for(Map.Entry<String, DBConnectionPool> entry : pools.entrySet()) {
+			DBConnectionPool pool = entry.getValue();
+			if((0 == pool.getActive()) && ((null == candidate) || (pool.getLastUsed() < candidate.getLastUsed()))) {
+				tenant = entry.getKey();
+				candidate = pool;
+			}
+		}
+
+		// No idle pool
+		if(null == candidate) {
+			return false;
+		}
+
+		// Close it
+		pools.remove(tenant);
+		candidate.close();
+
+		// Log eviction
+		logger.debug("Pool closed for tenant(" + tenant + ") to free connection budget");
+
+		// Closed
+		return true;
+	}
+
+
+	/**
+	 * Get the number of connections allocated to the pools
+	 * @return Sum of the pools maximum sizes
+	 */
+	private int getAllocated() {
+		int allocated = 0;
+		for(DBConnectionPool pool : pools.values()) {
+			allocated += pool.getMaxTotal();
+		}
+		return allocated;
+	}
+
+
+	/**
+	 * Get the usage of every tenant pool
+	 * @return Usage snapshots
+	 */
+	public List<DBPoolUsage> getUsage() {
+		// Snapshots
+		List<DBPoolUsage> usage = new ArrayList<>();
+		for(DBConnectionPool pool : pools.values()) {
+			usage.add(new DBPoolUsage(pool));
+		}
+
+		// Return snapshots
+		return usage;
+	}
+
+
+	/**
+	 * Close all pools, i.e. at application shutdown
+	 */
+	public synchronized void close() {
+		// Stop idle pools sweep
+		sweeper.shutdownNow();
+
+		// Close pools
+		for(DBConnectionPool pool : pools.values()) {
+			pool.close();
+		}
+		pools.clear();
+
+		// Log closure
+		logger.debug("All tenant pools closed");
+	}
+
+}
@@ -0,0 +1,547 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+import elius.webapp.framework.security.secret.SecretCredentials;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Client side cache of successful GET responses.
+ *
+ * Responses are stored following Cache-Control (max-age, no-cache, no-store) and Expires,
+ * stale responses with ETag or Last-Modified are revalidated with If-None-Match and If-Modified-Since
+ * and a 304 is served from the cache. The key is the URI, a digest of the credentials and the accepted types,
+ * which are all the request headers that can vary: responses with Vary: * are not stored.
+ * Responses to authenticated requests are stored only if Cache-Control: public and are always revalidated,
+ * so the server checks the credentials of every call.
+ * Least recently used entries are evicted beyond http.cache.maxEntries or http.cache.maxSize.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpCache {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpCache.class);
+
+	// Cache configured in the application properties
+	private static volatile HttpCache defaultCache;
+
+	// Enabled in the application properties, resolved on first use to keep the lookup out of every call
+	private static volatile Boolean enabled;
+
+	// Maximum number of entries
+	private final int maxEntries;
+
+	// Maximum size of the bodies in characters
+	private final long maxSize;
+
+	// Entries in access order
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	// Size of the bodies in characters
+	private long size;
+
+	// Responses served from the cache without calls
+	private long hits;
+
+	// Responses served from the cache after a 304
+	private long revalidations;
+
+	// Calls to the server, revalidations included
+	private long misses;
+
+	// Responses stored
+	private long stores;
+
+	// Entries evicted
+	private long evictions;
+
+
+	/**
+	 * Cached response
+	 */
+	static final class Entry {
+
+		// Body
+		private final String body;
+
+		// Entity tag
+		private final String etag;
+
+		// Last modified date as sent by the server
+		private final String lastModified;
+
+		// Expiration time in milliseconds
+		private final long expires;
+
+
+		/**
+		 * Constructor
+		 * @param body Body
+		 * @param etag Entity tag or null
+		 * @param lastModified Last modified date or null
+		 * @param expires Expiration time in milliseconds
+		 */
+		Entry(String body, String etag, String lastModified, long expires) {
+			this.body = body;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+
+
+		/**
+		 * Check if the entry can be served without a call
+		 * @return True if fresh
+		 */
+		boolean isFresh() {
+			return System.currentTimeMillis() < expires;
+		}
+
+
+		/**
+		 * Get body
+		 * @return Body
+		 */
+		String getBody() {
+			return body;
+		}
+
+
+		/**
+		 * Get entity tag
+		 * @return Entity tag or null
+		 */
+		String getEtag() {
+			return etag;
+		}
+
+
+		/**
+		 * Get last modified date
+		 * @return Last modified date or null
+		 */
+		String getLastModified() {
+			return lastModified;
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param maxEntries Maximum number of entries
+	 * @param maxSize Maximum size of the bodies in characters
+	 */
+	public HttpCache(int maxEntries, long maxSize) {
+		this.maxEntries = Math.max(1, maxEntries);
+		this.maxSize = Math.max(1, maxSize);
+	}
+
+
+	/**
+	 * Get the cache configured in the application properties
+	 * @return Cache or null if the cache is not enabled
+	 */
+	public static HttpCache getDefault() {
+		// Already created
+		HttpCache cache = defaultCache;
+		if(null != cache) {
+			return cache;
+		}
+
+		// Cache not enabled
+		if(Boolean.FALSE.equals(enabled)) {
+			return null;
+		}
+
+		synchronized(HttpCache.class) {
+			// Resolved meanwhile
+			if(null != enabled) {
+				return defaultCache;
+			}
+
+			// Load application properties
+			PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+			// Create cache if enabled
+			if("y".equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_HTTP_CACHE_ENABLE))) {
+				defaultCache = new HttpCache(
+						appProperties.getInt(ApplicationAttributes.PROP_HTTP_CACHE_MAX_ENTRIES, ApplicationAttributes.DEFAULT_HTTP_CACHE_MAX_ENTRIES),
+						appProperties.getLong(ApplicationAttributes.PROP_HTTP_CACHE_MAX_SIZE, ApplicationAttributes.DEFAULT_HTTP_CACHE_MAX_SIZE));
+			}
+			enabled = (null != defaultCache);
+
+			// Return cache
+			return defaultCache;
+		}
+	}
+
+
+	/**
+	 * Get the key of a request
+	 * @param uri URI
+	 * @param credentials Credentials or null
+	 * @param accept Accepted types
+	 * @return Key
+	 */
+	static String getKey(String uri, SecretCredentials credentials, MediaType... accept) {
+		// URI
+		StringBuilder key = new StringBuilder(uri);
+
+		// Credentials digest, responses are not served to a different user or password
+		key.append(' ').append((null == credentials) ? "" : getDigest(credentials));
+
+		// Accepted types
+		for(MediaType mediaType : accept) {
+			key.append(' ').append(mediaType);
+		}
+
+		// Return key
+		return key.toString();
+	}
+
+
+	/**
+	 * Get the digest of the credentials
+	 * @param credentials Credentials
+	 * @return SHA-256 of user and password in Base64
+	 */
+	private static String getDigest(SecretCredentials credentials) {
+		try {
+			// User and password, separated by a character not allowed in the user
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(String.valueOf(credentials.getUserId()).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(String.valueOf(credentials.getPassword()).getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			// Always available
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * Get an entry, fresh or to be revalidated
+	 * @param key Key
+	 * @return Entry or null if not found
+	 */
+	synchronized Entry get(String key) {
+		// Find entry
+		Entry entry = entries.get(key);
+
+		// Update statistics
+		if((null != entry) && entry.isFresh()) {
+			hits++;
+		} else {
+			misses++;
+		}
+
+		// Return entry
+		return entry;
+	}
+
+
+	/**
+	 * Store a successful response
+	 * @param key Key
+	 * @param authenticated True if the request had credentials
+	 * @param response Response
+	 * @param body Body
+	 */
+	void store(String key, boolean authenticated, Response response, String body) {
+		// Response cache directives
+		String cacheControl = getHeader(response, HttpHeaders.CACHE_CONTROL);
+		String vary = getHeader(response, HttpHeaders.VARY);
+
+		// Not storable, authenticated responses only if explicitly public
+		if(cacheControl.contains("no-store") || vary.contains("*") || (authenticated && !isPublic(cacheControl))) {
+			remove(key);
+			return;
+		}
+
+		// Validators
+		String etag = response.getHeaderString(HttpHeaders.ETAG);
+		String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+
+		// Expiration, authenticated responses are always revalidated
+		long expires = authenticated ? System.currentTimeMillis() : getExpires(response, cacheControl);
+
+		// Neither fresh nor revalidable
+		if((expires <= System.currentTimeMillis()) && (null == etag) && (null == lastModified)) {
+			remove(key);
+			return;
+		}
+
+		// Store entry
+		put(key, new Entry(body, etag, lastModified, expires));
+	}
+
+
+	/**
+	 * Refresh an entry after a 304 Not Modified
+	 * @param key Key
+	 * @param authenticated True if the request had credentials
+	 * @param entry Stale entry
+	 * @param response Not modified response
+	 */
+	void revalidated(String key, boolean authenticated, Entry entry, Response response) {
+		// New expiration and validators, the old ones if not sent again
+		String cacheControl = getHeader(response, HttpHeaders.CACHE_CONTROL);
+		String etag = response.getHeaderString(HttpHeaders.ETAG);
+		String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+		long expires = authenticated ? System.currentTimeMillis() : getExpires(response, cacheControl);
+
+		// Refresh entry
+		Entry refreshed = new Entry(entry.getBody(),
+				(null != etag) ? etag : entry.getEtag(),
+				(null != lastModified) ? lastModified : entry.getLastModified(),
+				expires);
+
+		synchronized(this) {
+			revalidations++;
+		}
+
+		// Store entry
+		put(key, refreshed);
+	}
+
+
+	/**
+	 * Put an entry and evict the least recently used ones beyond the limits
+	 * @param key Key
+	 * @param entry Entry
+	 */
+	private synchronized void put(String key, Entry entry) {
+		// Too large for the cache
+		if(entry.getBody().length() > maxSize) {
+			remove(key);
+			return;
+		}
+
+		// Replace entry
+		Entry previous = entries.put(key, entry);
+		if(null != previous) {
+			size -= previous.getBody().length();
+		}
+		size += entry.getBody().length();
+		stores++;
+
+		// Evict least recently used
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while(((entries.size() > maxEntries) || (size > maxSize)) && iterator.hasNext()) {
+			Map.Entry<String, Entry> eldest = iterator.next();
+			size -= eldest.getValue().getBody().length();
+			iterator.remove();
+			evictions++;
+		}
+
+		// Log store
+		logger.trace("Response cached, entries(" + entries.size() + ") size(" + size + ")");
+	}
+
+
+	/**
+	 * Remove an entry
+	 * @param key Key
+	 */
+	private synchronized void remove(String key) {
+		Entry previous = entries.remove(key);
+		if(null != previous) {
+			size -= previous.getBody().length();
+		}
+	}
+
+
+	/**
+	 * Remove all entries
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+
+	/**
+	 * Check the public directive
+	 * @param cacheControl Cache-Control header in lower case
+	 * @return True if the response can be stored by shared caches
+	 */
+	private static boolean isPublic(String cacheControl) {
+		for(String directive : cacheControl.split(",")) {
+			if("public".equals(directive.trim())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Get the expiration time of a response
+	 * @param response Response
+	 * @param cacheControl Cache-Control header in lower case
+	 * @return Expiration time in milliseconds, now if it must be revalidated
+	 */
+	private static long getExpires(Response response, String cacheControl) {
+		// Current time
+		long now = System.currentTimeMillis();
+
+		// Always revalidate
+		if(cacheControl.contains("no-cache")) {
+			return now;
+		}
+
+		// Max age, reduced by the age in upstream caches
+		for(String directive : cacheControl.split(",")) {
+			directive = directive.trim();
+			if(directive.startsWith("max-age=")) {
+				try {
+					long maxAge = Long.parseLong(directive.substring(8).trim());
+					long age = parseLong(response.getHeaderString("Age"));
+					return now + Math.max(0, maxAge - age) * 1000;
+				} catch (NumberFormatException e) {
+					return now;
+				}
+			}
+		}
+
+		// Expires, relative to the date of the server
+		String expires = response.getHeaderString(HttpHeaders.EXPIRES);
+		if(null != expires) {
+			try {
+				long expiresTime = ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+				long date = (null != response.getDate()) ? response.getDate().getTime() : now;
+				return now + (expiresTime - date);
+			} catch (Exception e) {
+				// Invalid dates are already expired
+				return now;
+			}
+		}
+
+		// No freshness information
+		return now;
+	}
+
+
+	/**
+	 * Get a header in lower case
+	 * @param response Response
+	 * @param name Header name
+	 * @return Value or empty string
+	 */
+	private static String getHeader(Response response, String name) {
+		String value = response.getHeaderString(name);
+		return (null == value) ? "" : value.toLowerCase();
+	}
+
+
+	/**
+	 * Parse a number of seconds
+	 * @param value Value or null
+	 * @return Seconds, 0 if not set
+	 */
+	private static long parseLong(String value) {
+		return (null == value) ? 0 : Long.parseLong(value.trim());
+	}
+
+
+	/**
+	 * Get number of entries
+	 * @return Number of entries
+	 */
+	public synchronized int getEntries() {
+		return entries.size();
+	}
+
+
+	/**
+	 * Get size of the cached bodies
+	 * @return Size in characters
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Get responses served from the cache without calls
+	 * @return Hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+
+	/**
+	 * Get responses served from the cache after a 304 Not Modified
+	 * @return Revalidations
+	 */
+	public synchronized long getRevalidations() {
+		return revalidations;
+	}
+
+
+	/**
+	 * Get calls to the server without a fresh cached response, revalidations included
+	 * @return Misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+
+	/**
+	 * Get responses stored
+	 * @return Stores
+	 */
+	public synchronized long getStores() {
+		return stores;
+	}
+
+
+	/**
+	 * Get entries evicted
+	 * @return Evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+}
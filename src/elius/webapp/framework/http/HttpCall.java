@@ -0,0 +1,169 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.net.URI;
+
+import elius.webapp.framework.security.secret.SecretCredentials;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Immutable description of an HTTP call, see HttpFanOut.
+ *
+ * @author Elia Milioni
+ *
+ */
+public final class HttpCall {
+
+	// HTTP method
+	private final String method;
+
+	// URI to be called
+	private final String uri;
+
+	// Credentials or null for unauthenticated connection
+	private final SecretCredentials credentials;
+
+	// True to trust all certificates
+	private final boolean trustAllCertificates;
+
+	// Body or null
+	private final Entity<?> body;
+
+	// Accepted types
+	private final MediaType[] accept;
+
+
+	/**
+	 * Constructor
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body or null
+	 * @param accept Accepted types
+	 */
+	private HttpCall(String method, String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType... accept) {
+		this.method = method;
+		this.uri = uri;
+		this.credentials = credentials;
+		this.trustAllCertificates = trustAllCertificates;
+		this.body = body;
+		this.accept = accept;
+	}
+
+
+	/**
+	 * GET call, same request of HttpConnection.get
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @return Call
+	 */
+	public static HttpCall get(String uri, SecretCredentials credentials, boolean trustAllCertificates) {
+		return new HttpCall(HttpMethod.GET, uri, credentials, trustAllCertificates, null, MediaType.APPLICATION_FORM_URLENCODED_TYPE);
+	}
+
+
+	/**
+	 * POST call, same request of HttpConnection.post
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body
+	 * @param content Set content type
+	 * @param accept Set accept type
+	 * @return Call
+	 */
+	public static HttpCall post(String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType content, MediaType accept) {
+		return new HttpCall(HttpMethod.POST, uri, credentials, trustAllCertificates, body, content, accept);
+	}
+
+
+	/**
+	 * Get the host of the URI, used to limit the calls to the same server
+	 * @return Host and port, the URI if not valid
+	 */
+	String getHost() {
+		try {
+			URI parsed = URI.create(uri);
+			return (null == parsed.getHost()) ? uri : (parsed.getHost() + ":" + parsed.getPort());
+		} catch (IllegalArgumentException e) {
+			return uri;
+		}
+	}
+
+
+	/**
+	 * Get HTTP method
+	 * @return HTTP method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+
+	/**
+	 * Get URI
+	 * @return URI
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+
+	/**
+	 * Get credentials
+	 * @return Credentials or null
+	 */
+	public SecretCredentials getCredentials() {
+		return credentials;
+	}
+
+
+	/**
+	 * Get trust all certificates
+	 * @return True to trust all certificates
+	 */
+	public boolean isTrustAllCertificates() {
+		return trustAllCertificates;
+	}
+
+
+	/**
+	 * Get body
+	 * @return Body or null
+	 */
+	public Entity<?> getBody() {
+		return body;
+	}
+
+
+	/**
+	 * Get accepted types
+	 * @return Accepted types
+	 */
+	public MediaType[] getAccept() {
+		return accept.clone();
+	}
+
+}
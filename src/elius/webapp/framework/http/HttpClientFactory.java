@@ -0,0 +1,216 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.apache.connector.ApacheHttpClientBuilderConfigurator;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import org.glassfish.jersey.client.spi.ConnectorProvider;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+import elius.webapp.framework.security.SecurityTlsContextRegistry;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+
+/**
+ * Long-lived Jersey clients shared by all HTTP connections, one for every trust mode.
+ *
+ * Every client has its own pool of keep-alive connections (http.pool.maxTotal, http.pool.maxPerRoute),
+ * idle connections are closed after http.pool.idleTimeout. Credentials are set on every request,
+ * cookies are disabled because the client is shared by different users.
+ * With http.engine=http2 the clients use java.net.http instead, with one multiplexed connection to every
+ * HTTP/2 host: the pool settings do not apply and the connect timeout is http.policy.connectTimeout.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpClientFactory {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpClientFactory.class);
+
+	// Engine based on java.net.http
+	private static final String ENGINE_HTTP2 = "http2";
+
+	// Concurrent HashMap of the client instances by trust all certificates
+	private static final ConcurrentHashMap<Boolean, Client> instances = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Get the new or already allocated client for the selected trust mode
+	 * @param trustAllCertificates True to trust all certificates
+	 * @return Client instance
+	 */
+	public static Client getInstance(boolean trustAllCertificates) {
+		return instances.computeIfAbsent(trustAllCertificates, HttpClientFactory::create);
+	}
+
+
+	/**
+	 * Close the default outbound queue, then all clients and their connections, i.e. at application shutdown
+	 */
+	public static synchronized void close() {
+		// Stop the outbound queue sending with the clients and unmap its journal
+		HttpOutboundQueue.closeDefault();
+
+		// Close clients
+		for(Client client : instances.values()) {
+			client.close();
+		}
+		instances.clear();
+
+		// Log closure
+		logger.debug("All HTTP clients closed");
+	}
+
+
+	/**
+	 * Create a client
+	 * @param trustAllCertificates True to trust all certificates
+	 * @return Client
+	 */
+	private static Client create(boolean trustAllCertificates) {
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Client settings
+		boolean http2 = ENGINE_HTTP2.equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_HTTP_ENGINE));
+		int asyncThreads = appProperties.getInt(ApplicationAttributes.PROP_HTTP_ASYNC_THREADS, ApplicationAttributes.DEFAULT_HTTP_ASYNC_THREADS);
+		boolean metrics = HttpMetrics.isEnabled();
+		boolean compression = "y".equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_HTTP_COMPRESSION_ENABLE));
+		int compressionThreshold = appProperties.getInt(ApplicationAttributes.PROP_HTTP_COMPRESSION_THRESHOLD, ApplicationAttributes.DEFAULT_HTTP_COMPRESSION_THRESHOLD);
+
+		// Client configuration
+		ClientConfig clientConfig = new ClientConfig();
+		if(http2) {
+			// java.net.http connector, the connect timeout is set on the client
+			SSLContext sslContext = SecurityTlsContextRegistry.getInstance(trustAllCertificates);
+			int connectTimeout = appProperties.getInt(ApplicationAttributes.PROP_HTTP_POLICY_CONNECT_TIMEOUT, ApplicationAttributes.DEFAULT_HTTP_POLICY_CONNECT_TIMEOUT);
+			clientConfig.connectorProvider((client, runtimeConfig) -> new HttpJdkConnector(sslContext, connectTimeout));
+		} else {
+			// Apache connector with its connection pool
+			configureApache(clientConfig, appProperties, trustAllCertificates, metrics, compression);
+		}
+
+		// Bounded threads for the asynchronous calls
+		clientConfig.property(ClientProperties.ASYNC_THREADPOOL_SIZE, asyncThreads);
+
+		// Compression with pooled Deflater and Inflater instead of the connector one,
+		// the entity is buffered to set the encoding of the request beyond the threshold
+		if(compression) {
+			clientConfig.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED);
+			clientConfig.register(new HttpCompressionFilter(compressionThreshold));
+		}
+
+		// Metrics of every request, failures completed by the connector
+		if(metrics) {
+			clientConfig.register(new HttpMetricsFilter());
+			ConnectorProvider connectorProvider = clientConfig.getConnectorProvider();
+			clientConfig.connectorProvider((client, runtimeConfig) -> new HttpMetricsConnector(connectorProvider.getConnector(client, runtimeConfig)));
+		}
+
+		// Basic authentication, credentials set on every request
+		clientConfig.register(HttpAuthenticationFeature.basicBuilder().build());
+
+		// Log creation
+		logger.debug("HTTP client created TrustAll(" + trustAllCertificates + ") engine(" + (http2 ? ENGINE_HTTP2 : "apache") + ") metrics(" + metrics + ") compression(" + compression + ")");
+
+		// Create client
+		return ClientBuilder.newClient(clientConfig);
+	}
+
+
+	/**
+	 * Configure the Apache connector
+	 * @param clientConfig Client configuration
+	 * @param appProperties Application properties
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param metrics True to collect the connection metrics
+	 * @param compression True if the compression is done by the client filter
+	 */
+	private static void configureApache(ClientConfig clientConfig, PropertiesManager appProperties, boolean trustAllCertificates, boolean metrics, boolean compression) {
+		// Pool settings
+		int maxTotal = appProperties.getInt(ApplicationAttributes.PROP_HTTP_POOL_MAX_TOTAL, ApplicationAttributes.DEFAULT_HTTP_POOL_MAX_TOTAL);
+		int maxPerRoute = appProperties.getInt(ApplicationAttributes.PROP_HTTP_POOL_MAX_PER_ROUTE, ApplicationAttributes.DEFAULT_HTTP_POOL_MAX_PER_ROUTE);
+		long idleTimeout = appProperties.getLong(ApplicationAttributes.PROP_HTTP_POOL_IDLE_TIMEOUT, ApplicationAttributes.DEFAULT_HTTP_POOL_IDLE_TIMEOUT);
+		long keepAlive = appProperties.getLong(ApplicationAttributes.PROP_HTTP_POOL_KEEP_ALIVE, ApplicationAttributes.DEFAULT_HTTP_POOL_KEEP_ALIVE);
+
+		// Socket factories
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", metrics ? HttpMetricsHooks.sslSocketFactory(SecurityTlsContextRegistry.getInstance(trustAllCertificates))
+						: new SSLConnectionSocketFactory(SecurityTlsContextRegistry.getInstance(trustAllCertificates)))
+				.build();
+
+		// Connection pool
+		PoolingHttpClientConnectionManager connectionManager = metrics ? HttpMetricsHooks.connectionManager(registry) : new PoolingHttpClientConnectionManager(registry);
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		// Keep alive sent by the server, bounded by the configured one
+		ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+			long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return (0 < duration) ? Math.min(duration, keepAlive) : keepAlive;
+		};
+
+		// Connector
+		clientConfig.connectorProvider(new ApacheConnectorProvider());
+		clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+		clientConfig.property(ApacheClientProperties.KEEPALIVE_STRATEGY, keepAliveStrategy);
+		clientConfig.property(ApacheClientProperties.DISABLE_COOKIES, true);
+
+		// Close idle and expired connections in background
+		clientConfig.register((ApacheHttpClientBuilderConfigurator) builder -> {
+			builder.evictExpiredConnections().evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+			if(metrics) {
+				builder.setRequestExecutor(HttpMetricsHooks.requestExecutor());
+			}
+			if(compression) {
+				builder.disableContentCompression();
+			}
+			return builder;
+		});
+
+		// Log pool
+		logger.trace("HTTP connection pool maxTotal(" + maxTotal + ") maxPerRoute(" + maxPerRoute + ")");
+	}
+
+}
@@ -0,0 +1,404 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Gzip and deflate streams with pooled Deflater and Inflater, their native memory is allocated once
+ * and reused by the following calls instead of being allocated and released by every call.
+ *
+ * @author Elia Milioni
+ *
+ */
+final class HttpCompression {
+
+	// Maximum number of idle Deflater or Inflater of a pool
+	private static final int POOL_SIZE = 64;
+
+	// Stream buffer size
+	private static final int BUFFER_SIZE = 8192;
+
+	// Gzip header: magic, deflate, no flags, no time, no extra flags, unknown OS
+	private static final byte[] GZIP_HEADER = {(byte) 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	// Gzip header flags
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	// Idle Deflater, raw deflate
+	private static final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	// Idle Inflater, raw deflate
+	private static final ArrayBlockingQueue<Inflater> rawInflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	// Idle Inflater, zlib wrapped deflate
+	private static final ArrayBlockingQueue<Inflater> zlibInflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+
+	/**
+	 * Not instantiable
+	 */
+	private HttpCompression() {
+	}
+
+
+	/**
+	 * Create a gzip stream
+	 * @param out Output stream, closed with the gzip stream
+	 * @return Gzip stream
+	 * @throws IOException Error writing the header
+	 */
+	static GzipOutputStream gzip(OutputStream out) throws IOException {
+		return new GzipOutputStream(out);
+	}
+
+
+	/**
+	 * Create a stream decompressing a gzip body
+	 * @param in Compressed stream
+	 * @return Decompressed stream
+	 * @throws IOException Invalid header
+	 */
+	static InputStream gunzip(InputStream in) throws IOException {
+		// Skip header
+		readGzipHeader(in);
+
+		// Inflate raw deflate data, then check the trailer
+		return new PooledInflaterInputStream(in, rawInflaters, true, true);
+	}
+
+
+	/**
+	 * Create a stream decompressing a deflate body, zlib wrapped or raw as sent by some servers
+	 * @param in Compressed stream
+	 * @return Decompressed stream
+	 * @throws IOException Error reading the stream
+	 */
+	static InputStream inflate(InputStream in) throws IOException {
+		// Look at the zlib header
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		int b0 = pushback.read();
+		int b1 = pushback.read();
+		if(b1 >= 0) {
+			pushback.unread(b1);
+		}
+		if(b0 >= 0) {
+			pushback.unread(b0);
+		}
+		boolean zlib = (b1 >= 0) && (8 == (b0 & 0x0f)) && (0 == (((b0 << 8) | b1) % 31));
+
+		// Inflate
+		return zlib ? new PooledInflaterInputStream(pushback, zlibInflaters, false, false)
+				: new PooledInflaterInputStream(pushback, rawInflaters, true, false);
+	}
+
+
+	/**
+	 * Borrow an Inflater
+	 * @param pool Pool
+	 * @param nowrap True for raw deflate
+	 * @return Inflater
+	 */
+	private static Inflater borrow(ArrayBlockingQueue<Inflater> pool, boolean nowrap) {
+		Inflater inflater = pool.poll();
+		return (null != inflater) ? inflater : new Inflater(nowrap);
+	}
+
+
+	/**
+	 * Give back an Inflater, released if the pool is full
+	 * @param pool Pool
+	 * @param inflater Inflater
+	 */
+	private static void release(ArrayBlockingQueue<Inflater> pool, Inflater inflater) {
+		inflater.reset();
+		if(!pool.offer(inflater)) {
+			inflater.end();
+		}
+	}
+
+
+	/**
+	 * Read and check a gzip header
+	 * @param in Stream
+	 * @throws IOException Invalid header
+	 */
+	private static void readGzipHeader(InputStream in) throws IOException {
+		// Magic, compression method, flags
+		if((0x1f != readByte(in)) || (0x8b != readByte(in))) {
+			throw new ZipException("Not in GZIP format");
+		}
+		if(8 != readByte(in)) {
+			throw new ZipException("Unsupported compression method");
+		}
+		int flags = readByte(in);
+
+		// Time, extra flags, OS
+		for(int i = 0; i < 6; i++) {
+			readByte(in);
+		}
+
+		// Optional fields
+		if(0 != (flags & FEXTRA)) {
+			int size = readByte(in) | (readByte(in) << 8);
+			for(int i = 0; i < size; i++) {
+				readByte(in);
+			}
+		}
+		if(0 != (flags & FNAME)) {
+			while(0 != readByte(in));
+		}
+		if(0 != (flags & FCOMMENT)) {
+			while(0 != readByte(in));
+		}
+		if(0 != (flags & FHCRC)) {
+			readByte(in);
+			readByte(in);
+		}
+	}
+
+
+	/**
+	 * Read a byte
+	 * @param in Stream
+	 * @return Byte
+	 * @throws IOException End of stream
+	 */
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if(b < 0) {
+			throw new EOFException("Unexpected end of GZIP stream");
+		}
+		return b;
+	}
+
+
+	/**
+	 * Gzip stream with a pooled Deflater
+	 */
+	static final class GzipOutputStream extends DeflaterOutputStream {
+
+		// Checksum of the uncompressed data
+		private final CRC32 crc = new CRC32();
+
+		// Trailer written and Deflater given back
+		private boolean finished;
+
+
+		/**
+		 * Constructor
+		 * @param out Output stream
+		 * @throws IOException Error writing the header
+		 */
+		private GzipOutputStream(OutputStream out) throws IOException {
+			super(out, borrowDeflater(), BUFFER_SIZE);
+			out.write(GZIP_HEADER);
+		}
+
+
+		/**
+		 * Borrow a Deflater
+		 * @return Deflater
+		 */
+		private static Deflater borrowDeflater() {
+			Deflater deflater = deflaters.poll();
+			return (null != deflater) ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			super.write(b, off, len);
+			crc.update(b, off, len);
+		}
+
+
+		/**
+		 * Write the remaining data and the trailer without closing the stream
+		 * @throws IOException Error writing
+		 */
+		@Override
+		public void finish() throws IOException {
+			// Already finished
+			if(finished) {
+				return;
+			}
+			finished = true;
+
+			try {
+				// Compressed data
+				super.finish();
+
+				// Trailer, little endian checksum and size
+				int size = (int) def.getBytesRead();
+				int checksum = (int) crc.getValue();
+				out.write(new byte[] {
+						(byte) checksum, (byte) (checksum >> 8), (byte) (checksum >> 16), (byte) (checksum >> 24),
+						(byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)});
+			} finally {
+				// Give back the Deflater
+				giveBack();
+			}
+		}
+
+
+		/**
+		 * Give back the Deflater without writing, if the body is not completed
+		 */
+		void release() {
+			// Already finished
+			if(finished) {
+				return;
+			}
+			finished = true;
+
+			// Give back the Deflater
+			giveBack();
+		}
+
+
+		/**
+		 * Give back the Deflater, released if the pool is full
+		 */
+		private void giveBack() {
+			def.reset();
+			if(!deflaters.offer(def)) {
+				def.end();
+			}
+		}
+	}
+
+
+	/**
+	 * Inflater stream with a pooled Inflater, checking the gzip trailer
+	 */
+	private static final class PooledInflaterInputStream extends InflaterInputStream {
+
+		// Checksum of the uncompressed data, gzip only
+		private final CRC32 crc;
+
+		// Pool of the Inflater
+		private final ArrayBlockingQueue<Inflater> pool;
+
+		// Trailer checked
+		private boolean trailerRead;
+
+		// Stream closed
+		private boolean closed;
+
+
+		/**
+		 * Constructor
+		 * @param in Compressed stream
+		 * @param pool Pool of the Inflater
+		 * @param nowrap True for raw deflate
+		 * @param gzip True to check the gzip trailer
+		 */
+		PooledInflaterInputStream(InputStream in, ArrayBlockingQueue<Inflater> pool, boolean nowrap, boolean gzip) {
+			super(in, borrow(pool, nowrap), BUFFER_SIZE);
+			this.pool = pool;
+			this.crc = gzip ? new CRC32() : null;
+		}
+
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			// Decompress
+			int n = super.read(b, off, len);
+
+			// Gzip checksum and trailer
+			if(null != crc) {
+				if(n > 0) {
+					crc.update(b, off, n);
+				} else if((n < 0) && !trailerRead) {
+					readTrailer();
+				}
+			}
+
+			// Return bytes read
+			return n;
+		}
+
+
+		/**
+		 * Check the gzip trailer
+		 * @throws IOException Corrupt trailer
+		 */
+		private void readTrailer() throws IOException {
+			trailerRead = true;
+
+			// Bytes already read in the buffer, then the stream
+			int remaining = inf.getRemaining();
+			InputStream trailer = (remaining > 0) ? new SequenceInputStream(new ByteArrayInputStream(buf, len - remaining, remaining), in) : in;
+
+			// Checksum and size
+			long checksum = readInt(trailer);
+			long size = readInt(trailer);
+			if((checksum != crc.getValue()) || (size != (inf.getBytesWritten() & 0xffffffffL))) {
+				throw new ZipException("Corrupt GZIP trailer");
+			}
+		}
+
+
+		/**
+		 * Read a little endian unsigned int
+		 * @param in Stream
+		 * @return Value
+		 * @throws IOException End of stream
+		 */
+		private static long readInt(InputStream in) throws IOException {
+			return readByte(in) | (readByte(in) << 8) | (readByte(in) << 16) | ((long) readByte(in) << 24);
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			// Already closed
+			if(closed) {
+				return;
+			}
+			closed = true;
+
+			try {
+				super.close();
+			} finally {
+				// Give back the Inflater
+				release(pool, inf);
+			}
+		}
+	}
+
+}
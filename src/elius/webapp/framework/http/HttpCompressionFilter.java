@@ -0,0 +1,222 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Client filter compressing request bodies with gzip beyond a threshold, advertising gzip and deflate
+ * and decompressing the responses while they are read.
+ *
+ * The request body is kept in memory up to the threshold, beyond it the Content-Encoding header is set
+ * and the body is compressed while written: the client must buffer the entity before sending the headers.
+ *
+ * @author Elia Milioni
+ *
+ */
+class HttpCompressionFilter implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor {
+
+	// Accepted encodings
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	// Minimum size in bytes of the compressed request bodies
+	private final int threshold;
+
+
+	/**
+	 * Constructor
+	 * @param threshold Minimum size in bytes of the compressed request bodies
+	 */
+	HttpCompressionFilter(int threshold) {
+		this.threshold = Math.max(1, threshold);
+	}
+
+
+	@Override
+	public void filter(ClientRequestContext requestContext) {
+		// Advertise compression, unless set by the caller
+		if(!requestContext.getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+			requestContext.getHeaders().putSingle(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+		}
+	}
+
+
+	@Override
+	public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+		// Encoding of the body
+		String encoding = responseContext.getHeaderString(HttpHeaders.CONTENT_ENCODING);
+		if((null == encoding) || !responseContext.hasEntity()) {
+			return;
+		}
+		encoding = encoding.trim().toLowerCase();
+
+		// Decompress while read
+		if("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+			responseContext.setEntityStream(HttpCompression.gunzip(responseContext.getEntityStream()));
+		} else if("deflate".equals(encoding)) {
+			responseContext.setEntityStream(HttpCompression.inflate(responseContext.getEntityStream()));
+		} else {
+			return;
+		}
+
+		// Headers of the decompressed body
+		responseContext.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+		responseContext.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+	}
+
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		// Already encoded by the caller
+		if(context.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+			context.proceed();
+			return;
+		}
+
+		// Write body, compressed beyond the threshold
+		ThresholdOutputStream out = new ThresholdOutputStream(context.getOutputStream(), context.getHeaders(), threshold);
+		context.setOutputStream(out);
+		try {
+			context.proceed();
+
+			// Write remaining data, the entity stream is closed by the client
+			out.finish();
+		} finally {
+			// Give back the Deflater if the body is not completed
+			out.release();
+		}
+	}
+
+
+	/**
+	 * Stream buffering the body up to the threshold, then compressing it
+	 */
+	private static final class ThresholdOutputStream extends OutputStream {
+
+		// Entity stream
+		private final OutputStream out;
+
+		// Request headers
+		private final MultivaluedMap<String, Object> headers;
+
+		// Minimum size in bytes of the compressed bodies
+		private final int threshold;
+
+		// Body up to the threshold
+		private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		// Gzip stream beyond the threshold
+		private HttpCompression.GzipOutputStream gzip;
+
+		// Remaining data written
+		private boolean finished;
+
+
+		/**
+		 * Constructor
+		 * @param out Entity stream
+		 * @param headers Request headers
+		 * @param threshold Minimum size in bytes of the compressed bodies
+		 */
+		ThresholdOutputStream(OutputStream out, MultivaluedMap<String, Object> headers, int threshold) {
+			this.out = out;
+			this.headers = headers;
+			this.threshold = threshold;
+		}
+
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			// Already compressing
+			if(null != gzip) {
+				gzip.write(b, off, len);
+				return;
+			}
+
+			// Buffer up to the threshold
+			buffer.write(b, off, len);
+			if(buffer.size() < threshold) {
+				return;
+			}
+
+			// Threshold reached, compress
+			headers.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+			headers.remove(HttpHeaders.CONTENT_LENGTH);
+			gzip = HttpCompression.gzip(out);
+			buffer.writeTo(gzip);
+			buffer = null;
+		}
+
+
+		/**
+		 * Write the buffered body or the gzip trailer, without closing the entity stream
+		 * @throws IOException Error writing
+		 */
+		void finish() throws IOException {
+			// Already finished
+			if(finished) {
+				return;
+			}
+			finished = true;
+
+			// Small body as is, or end of the compressed one
+			if(null == gzip) {
+				buffer.writeTo(out);
+			} else {
+				gzip.finish();
+			}
+		}
+
+
+		/**
+		 * Give back the Deflater without writing, if the body is not completed
+		 */
+		void release() {
+			finished = true;
+			if(null != gzip) {
+				gzip.release();
+			}
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			finish();
+		}
+	}
+
+}
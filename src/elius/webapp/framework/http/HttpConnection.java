@@ -19,19 +19,31 @@
 
 package elius.webapp.framework.http;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 
-import elius.webapp.framework.security.SecurityTrustAllCertificates;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
 import elius.webapp.framework.security.secret.SecretCredentials;
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -40,28 +52,14 @@ public class HttpConnection {
 	// Get logger
 	private static Logger logger = LogManager.getLogger(HttpConnection.class);
 
+	// Bytes transferred to a file in a single call
+	private static final long TRANSFER_SIZE = 1024 * 1024;
+
 	// Request response content
 	private String httpResponseContent;
 	
-	
-	/**
-	 * Trust all certificates
-	 * @throws Exception
-	 */
-	private SSLContext trustAll() throws Exception {
-		// Get context instance
-		SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-		// Initialize it
-		sslContext.init(null, null, null);
-		// Trust settings
-		TrustManager[] trustAll = new TrustManager[] {new SecurityTrustAllCertificates()};
-		// Set parameters in the context
-		sslContext.init(null, trustAll, new java.security.SecureRandom());
-		// Set trust all certificates context to HttpsURLConnection
-		HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());	
-		// Return context
-		return sslContext;
-	}
+	// Cache of GET responses, the default one if null
+	private HttpCache cache;
 	
 	
 	/**
@@ -73,48 +71,132 @@ public class HttpConnection {
 	 */
 	public int get(String uri, SecretCredentials credentials, boolean trustAllCertificates) {
 		// Log get
-		logger.debug("GET URI(" + uri + ") User(" + credentials.getUserId() + ") + TrustAll(" + trustAllCertificates + ")");		
+		logger.debug("GET URI(" + uri + ") User(" + getUserId(credentials) + ") + TrustAll(" + trustAllCertificates + ")");		
 		
+		// Execute call
+		int rc = invoke(HttpMethod.GET, uri, credentials, trustAllCertificates, null, MediaType.APPLICATION_FORM_URLENCODED_TYPE);
+		
+		// Log get
+		if(0 == rc) {
+			logger.debug("Get successfully executed");		
+		}
+
+		// Return code
+		return rc;
+	}
+	
+	
+	/**
+	 * Execute a POST call to the specified URL
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body
+	 * @param content Set content type
+	 * @param accept Set accept type
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error 
+	 */
+	public int post(String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType content, MediaType accept) {
+		// Log post
+		logger.debug("POST URI(" + uri + ") User(" + getUserId(credentials) + ") + TrustAll(" + trustAllCertificates + ")");		
+		
+		// Execute call
+		int rc = invoke(HttpMethod.POST, uri, credentials, trustAllCertificates, body, content, accept);
+		
+		// Log post
+		if(0 == rc) {
+			logger.debug("POST successfully executed");		
+		}
+
+		// Return code
+		return rc;
+	}
+	
+	
+	/**
+	 * Execute a call with the shared client of the trust mode
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body or null
+	 * @param accept Accepted types
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error
+	 */
+	private int invoke(String method, String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType... accept) {
 		// Initialized response content
 		httpResponseContent = "";
 		
+		// Cache of GET responses, instance or default
+		HttpCache httpCache = HttpMethod.GET.equals(method) ? ((null != cache) ? cache : HttpCache.getDefault()) : null;
+		String cacheKey = null;
+		HttpCache.Entry cached = null;
+		
+		// Hedged GET, not cached, the requests run on the threads of the hedging instead of the asynchronous pool
+		HttpHedge hedge = ((null == httpCache) && HttpMethod.GET.equals(method)) ? HttpHedge.getDefault(uri) : null;
+		if(null != hedge) {
+			HttpResult result = hedge.executeSync(uri, (target, done) -> invokeSync(done, method, target, credentials, trustAllCertificates, body, accept));
+			logResult(uri, result);
+			httpResponseContent = result.getBody();
+			return result.getRc();
+		}
+		
 		try {
-			Client client = null;
+			// Prepare request
+			Invocation.Builder request = prepare(uri, credentials, trustAllCertificates, accept);
 			
-			// Trust all certificates
-			if(trustAllCertificates) {
-				client = ClientBuilder.newBuilder().sslContext(trustAll()).build();
-			} else {
-				client = ClientBuilder.newClient();
-			}
-	
-			// Set authentication
-			if(null != credentials) {
-				// Set authentication basic parameters
-				HttpAuthenticationFeature feature = HttpAuthenticationFeature.basic(credentials.getUserId(), credentials.getPassword());
-				// Set authentication in the client
-			    client.register(feature);				
+			// Look for a cached response
+			if(null != httpCache) {
+				cacheKey = HttpCache.getKey(uri, credentials, accept);
+				cached = httpCache.get(cacheKey);
+				
+				// Fresh, no call
+				if((null != cached) && cached.isFresh()) {
+					logger.trace("Response served from cache");
+					httpResponseContent = cached.getBody();
+					return 0;
+				}
+				
+				// Stale, ask the server if it changed
+				if(null != cached) {
+					if(null != cached.getEtag())
+						request.header(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+					if(null != cached.getLastModified())
+						request.header(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+				}
 			}
 			
-			// Execute call
-			Response response = client.target(uri)
-	          .request(MediaType.APPLICATION_FORM_URLENCODED)
-	          .get();
-	     
-			// Set response content
-			httpResponseContent = response.readEntity(String.class);
-			
-			// Get status code
-			int httpRc = response.getStatus();
-
-			// Check HTTP status code
-			if((httpRc < 200) || (208 < httpRc)) {
-				// Log error
-				logger.error("HTTP error");
-				// Log message
-				logger.error(httpResponseContent);
-				// Return HTTP error
-				return 1;
+			// Execute call, the response is closed to give the connection back to the pool
+			try (Response response = execute(uri, method, request, body)) {
+			
+				// Not modified, serve the cached response
+				if((null != cached) && (Response.Status.NOT_MODIFIED.getStatusCode() == response.getStatus())) {
+					logger.trace("Response revalidated");
+					httpCache.revalidated(cacheKey, null != credentials, cached, response);
+					httpResponseContent = cached.getBody();
+					return 0;
+				}
+				
+				// Set response content
+				httpResponseContent = response.readEntity(String.class);
+				
+				// Get status code
+				int httpRc = response.getStatus();
+	
+				// Store successful response
+				if((null != httpCache) && (Response.Status.OK.getStatusCode() == httpRc)) {
+					httpCache.store(cacheKey, null != credentials, response, httpResponseContent);
+				}
+				
+				// Check HTTP status code
+				if((httpRc < 200) || (208 < httpRc)) {
+					// Log error
+					logger.error("HTTP error");
+					// Log message
+					logger.error(httpResponseContent);
+					// Return HTTP error
+					return 1;
+				}
 			}
 			
 		} catch (Exception e) {
@@ -126,71 +208,191 @@ public class HttpConnection {
 			return 2;
 		}
 		
-		// Log get
-		logger.debug("Get successfully executed");		
-
 		// Return successful
 		return 0;
 	}
 	
 	
 	/**
-	 * Execute a POST call to the specified URL
+	 * Execute a GET call and process the body as a stream, without reading it in memory
 	 * @param uri URI to be called
 	 * @param credentials Credentials or null for unauthenticated connection
 	 * @param trustAllCertificates True to trust all certificates
-	 * @param body Body
-	 * @param content Set content type
-	 * @param accept Set accept type
-	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error 
+	 * @param handler Body handler, called only for successful responses
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error
 	 */
-	public int post(String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType content, MediaType accept) {
+	public int getStream(String uri, SecretCredentials credentials, boolean trustAllCertificates, HttpStreamHandler handler) {
 		// Log get
-		logger.debug("POST URI(" + uri + ") User(" + credentials.getUserId() + ") + TrustAll(" + trustAllCertificates + ")");		
+		logger.debug("GET stream URI(" + uri + ") User(" + getUserId(credentials) + ") + TrustAll(" + trustAllCertificates + ")");
 		
-		// Initialized response content
-		httpResponseContent = "";
+		// Execute call
+		return stream(uri, credentials, trustAllCertificates, MediaType.WILDCARD_TYPE, handler);
+	}
+	
+	
+	/**
+	 * Execute a GET call and write the body to a file
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param file Output file, replaced if it exists
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error
+	 */
+	public int download(String uri, SecretCredentials credentials, boolean trustAllCertificates, Path file) {
+		return getStream(uri, credentials, trustAllCertificates, body -> {
+			// Copy from the socket to the file with the channel buffer
+			try (ReadableByteChannel source = Channels.newChannel(body);
+					FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				long position = 0;
+				long transferred;
+				while(0 < (transferred = channel.transferFrom(source, position, TRANSFER_SIZE))) {
+					position += transferred;
+				}
+				
+				// Log size
+				logger.trace("Downloaded " + position + " byte(s) to " + file);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Execute a GET call and write the body to an output stream, i.e. to proxy it to a servlet response
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param out Output stream, not closed
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error
+	 */
+	public int download(String uri, SecretCredentials credentials, boolean trustAllCertificates, OutputStream out) {
+		return getStream(uri, credentials, trustAllCertificates, body -> {
+			// Copy with a fixed buffer
+			long size = body.transferTo(out);
+			
+			// Log size
+			logger.trace("Downloaded " + size + " byte(s)");
+		});
+	}
+	
+	
+	/**
+	 * Execute a GET call and deserialize the JSON body into a class, without reading it as a string
+	 * @param <T> Target type
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param type Target class
+	 * @return Object or null in case of error or empty body
+	 */
+	public <T> T get(String uri, SecretCredentials credentials, boolean trustAllCertificates, Class<T> type) {
+		return readJson(HttpMethod.GET, uri, credentials, trustAllCertificates, null, HttpJson.getReader(type));
+	}
+	
+	
+	/**
+	 * Execute a GET call and deserialize the JSON body into a generic type, without reading it as a string
+	 * @param <T> Target type
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param type Target type, i.e. new TypeReference&lt;List&lt;Bean&gt;&gt;() {}
+	 * @return Object or null in case of error or empty body
+	 */
+	public <T> T get(String uri, SecretCredentials credentials, boolean trustAllCertificates, TypeReference<T> type) {
+		return readJson(HttpMethod.GET, uri, credentials, trustAllCertificates, null, HttpJson.getReader(type));
+	}
+	
+	
+	/**
+	 * Execute a POST call and deserialize the JSON body of the response into a class, without reading it as a string
+	 * @param <T> Target type
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body, with its content type
+	 * @param type Target class
+	 * @return Object or null in case of error or empty body
+	 */
+	public <T> T post(String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, Class<T> type) {
+		return readJson(HttpMethod.POST, uri, credentials, trustAllCertificates, body, HttpJson.getReader(type));
+	}
+	
+	
+	/**
+	 * Execute a POST call and deserialize the JSON body of the response into a generic type, without reading it as a string
+	 * @param <T> Target type
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body, with its content type
+	 * @param type Target type, i.e. new TypeReference&lt;List&lt;Bean&gt;&gt;() {}
+	 * @return Object or null in case of error or empty body
+	 */
+	public <T> T post(String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, TypeReference<T> type) {
+		return readJson(HttpMethod.POST, uri, credentials, trustAllCertificates, body, HttpJson.getReader(type));
+	}
+	
+	
+	/**
+	 * Execute a call and deserialize the JSON body with the shared mapper while it is read
+	 * @param <T> Target type
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body or null
+	 * @param reader Reader of the target type
+	 * @return Object or null in case of error or empty body
+	 */
+	private <T> T readJson(String method, String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, ObjectReader reader) {
+		// Log call
+		logger.debug(method + " JSON URI(" + uri + ") User(" + getUserId(credentials) + ") + TrustAll(" + trustAllCertificates + ")");
 		
-		try {
-			Client client = null;
+		try (Response response = execute(uri, method, prepare(uri, credentials, trustAllCertificates, MediaType.APPLICATION_JSON_TYPE), body)) {
 			
-			// Trust all certificates
-			if(trustAllCertificates) {
-				client = ClientBuilder.newBuilder().sslContext(trustAll()).build();
-			} else {
-				client = ClientBuilder.newClient();
+			// Check HTTP status code
+			if(!isSuccessful(uri, response) || !response.hasEntity()) {
+				return null;
 			}
-	
-			// Set authentication
-			if(null != credentials) {
-				// Set authentication basic parameters
-				HttpAuthenticationFeature feature = HttpAuthenticationFeature.basic(credentials.getUserId(), credentials.getPassword());
-				// Set authentication in the client
-			    client.register(feature);				
+			
+			// Deserialize from the entity stream
+			try (InputStream in = response.readEntity(InputStream.class)) {
+				return reader.readValue(in);
 			}
 			
-			// Execute call
-			Response response = client.target(uri)
-	          .request(content)
-	          .accept(accept)
-	          .post(body);
-	     
-			// Get status code
-			int httpRc = response.getStatus();
-
+		} catch (Exception e) {
+			// Log error
+			logger.error("Generic error");
+			// Log message
+			logger.error(e.getMessage());
+			// Return generic error
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Execute a GET call and process the body as a stream
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param accept Set accept type
+	 * @param handler Body handler
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error
+	 */
+	private int stream(String uri, SecretCredentials credentials, boolean trustAllCertificates, MediaType accept, HttpStreamHandler handler) {
+		try (Response response = execute(uri, HttpMethod.GET, prepare(uri, credentials, trustAllCertificates, accept), null)) {
+			
 			// Check HTTP status code
-			httpResponseContent = response.readEntity(String.class);
-			
-			// Check HTTP return code
-			if((httpRc < 200) || (208 < httpRc)) {
-				// Log error
-				logger.error("HTTP error");
-				// Log message
-				logger.error(httpResponseContent);
-				// Return HTTP error
+			if(!isSuccessful(uri, response)) {
 				return 1;
 			}
 			
+			// Process body
+			try (InputStream body = response.readEntity(InputStream.class)) {
+				handler.handle(body);
+			}
+			
 		} catch (Exception e) {
 			// Log error
 			logger.error("Generic error");
@@ -201,11 +403,500 @@ public class HttpConnection {
 		}
 		
 		// Log get
-		logger.debug("POST successfully executed");		
-
+		logger.debug("GET stream successfully executed");
+		
 		// Return successful
 		return 0;
-
+	}
+	
+	
+	/**
+	 * Prepare a request with the shared client of the trust mode
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param accept Accepted types
+	 * @return Request
+	 */
+	private static Invocation.Builder prepare(String uri, SecretCredentials credentials, boolean trustAllCertificates, MediaType... accept) {
+		// Prepare request
+		Invocation.Builder request = HttpClientFactory.getInstance(trustAllCertificates)
+				.target(uri)
+				.request(accept);
+		
+		// Set authentication
+		setCredentials(request, credentials);
+		
+		// Return request
+		return request;
+	}
+	
+	
+	/**
+	 * Execute a request of a hedged call
+	 * @param done Completed when the call can be abandoned
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body or null
+	 * @param accept Accepted types
+	 * @return Result
+	 */
+	private static HttpResult invokeSync(CompletableFuture<?> done, String method, String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType... accept) {
+		try {
+			// Execute call and read the response
+			return HttpResult.of(execute(done, uri, method, prepare(uri, credentials, trustAllCertificates, accept), body));
+		} catch (Exception e) {
+			// Return generic error
+			return HttpResult.failed(e);
+		}
+	}
+	
+	
+	/**
+	 * Execute a request with the rate limit and the policy of the host: timeouts, retries, circuit breaker and bulkhead
+	 * @param uri URI to be called
+	 * @param method HTTP method
+	 * @param request Request
+	 * @param body Body or null
+	 * @return Response
+	 * @throws ProcessingException Generic error or call rejected by the rate limit or the policy
+	 */
+	private static Response execute(String uri, String method, Invocation.Builder request, Entity<?> body) {
+		return execute(null, uri, method, request, body);
+	}
+	
+	
+	/**
+	 * Execute a request with the rate limit and the policy of the host: timeouts, retries, circuit breaker and bulkhead
+	 * @param done Completed when the call can be abandoned and not retried, or null
+	 * @param uri URI to be called
+	 * @param method HTTP method
+	 * @param request Request
+	 * @param body Body or null
+	 * @return Response
+	 * @throws ProcessingException Generic error or call rejected by the rate limit or the policy
+	 */
+	private static Response execute(CompletableFuture<?> done, String uri, String method, Invocation.Builder request, Entity<?> body) {
+		// Rate limit and policy of the host
+		HttpRateLimiter limiter = HttpRateLimiter.getDefault(uri);
+		HttpHostPolicy policy = HttpHostPolicy.getDefault(uri);
+		
+		// Nothing to apply
+		if((null == limiter) && (null == policy)) {
+			return send(method, request, body);
+		}
+		
+		// Set timeouts
+		if(null != policy) {
+			policy.apply(request);
+		}
+		
+		// Buffered response of the previous attempt, returned if the retry is rejected
+		Response last = null;
+		
+		for(int attempt = 1; ; attempt++) {
+			// Wait for the rate limit
+			if((null != limiter) && !limiter.acquire()) {
+				if(null != last) {
+					return last;
+				}
+				throw new ProcessingException("Call rejected by the rate limit of " + limiter.getHost());
+			}
+			
+			// Circuit open or bulkhead full, the rate limit reservation is given back
+			if((null != policy) && !policy.acquire()) {
+				if(null != limiter) {
+					limiter.cancel();
+				}
+				if(null != last) {
+					return last;
+				}
+				throw new ProcessingException("Call rejected by the policy of " + policy.getHost());
+			}
+			
+			// Discard the response of the previous attempt
+			if(null != last) {
+				last.close();
+				last = null;
+			}
+			
+			// Execute call
+			Response response;
+			try {
+				response = send(method, request, body);
+			} catch (RuntimeException | Error e) {
+				// Generic error, the slot is freed whatever the exception
+				if(null == policy) {
+					throw e;
+				}
+				policy.release(0);
+				
+				// Retry if allowed, not abandoned and not rejected by the rate limit
+				if((e instanceof ProcessingException) && policy.isRetryable(method, 0) && ((null == done) || !done.isDone())
+						&& ((null == limiter) || limiter.isAvailable()) && policy.awaitRetry(attempt)) {
+					continue;
+				}
+				throw e;
+			}
+			
+			// Honor Retry-After of throttled responses
+			int status = response.getStatus();
+			if(null != limiter) {
+				limiter.update(status, response.getHeaderString(HttpHeaders.RETRY_AFTER));
+			}
+			
+			// No policy
+			if(null == policy) {
+				return response;
+			}
+			
+			// Record outcome
+			policy.release(status);
+			
+			// Retryable status, not retried if abandoned or rejected by the rate limit, i.e. Retry-After beyond the maximum wait
+			long delay = (policy.isRetryable(method, status) && ((null == done) || !done.isDone())
+					&& ((null == limiter) || limiter.isAvailable())) ? policy.getRetryDelay(attempt) : -1;
+			if(0 <= delay) {
+				// Buffer the response freeing the connection before the backoff, returned if the retry is rejected
+				try {
+					response.bufferEntity();
+					last = response;
+				} catch (ProcessingException e) {
+					response.close();
+				}
+				
+				// Wait backoff
+				if(HttpHostPolicy.await(delay)) {
+					continue;
+				}
+				
+				// Interrupted, return the buffered response
+				if(null != last) {
+					return last;
+				}
+				throw new ProcessingException("Retry to " + policy.getHost() + " interrupted");
+			}
+			
+			// Return response
+			return response;
+		}
+	}
+	
+	
+	/**
+	 * Send a request
+	 * @param method HTTP method
+	 * @param request Request
+	 * @param body Body or null
+	 * @return Response
+	 */
+	private static Response send(String method, Invocation.Builder request, Entity<?> body) {
+		return (null == body) ? request.method(method) : request.method(method, body);
+	}
+	
+	
+	/**
+	 * Check the status of a streamed response, the body of errors is not read
+	 * @param uri URI called
+	 * @param response Response
+	 * @return True if successful
+	 */
+	private static boolean isSuccessful(String uri, Response response) {
+		// Get status code
+		int httpRc = response.getStatus();
+		
+		// Check HTTP status code
+		if((httpRc < 200) || (208 < httpRc)) {
+			// Log error
+			logger.error("HTTP error URI(" + uri + ") Status(" + httpRc + ")");
+			// Return HTTP error
+			return false;
+		}
+		
+		// Successful
+		return true;
+	}
+	
+	
+	/**
+	 * Execute an asynchronous GET call to the specified URL
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @return Future completed with the result, also for errors
+	 */
+	public CompletableFuture<HttpResult> getAsync(String uri, SecretCredentials credentials, boolean trustAllCertificates) {
+		// Log get
+		logger.debug("GET async URI(" + uri + ") User(" + getUserId(credentials) + ") + TrustAll(" + trustAllCertificates + ")");
+		
+		// Hedged call
+		HttpHedge hedge = HttpHedge.getDefault(uri);
+		if(null != hedge) {
+			return hedge.execute(uri, (target, done) -> invokeAsync(done, HttpMethod.GET, target, credentials, trustAllCertificates, null, MediaType.APPLICATION_FORM_URLENCODED_TYPE));
+		}
+		
+		// Execute call
+		return invokeAsync(HttpMethod.GET, uri, credentials, trustAllCertificates, null, MediaType.APPLICATION_FORM_URLENCODED_TYPE);
+	}
+	
+	
+	/**
+	 * Execute an asynchronous POST call to the specified URL
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body
+	 * @param content Set content type
+	 * @param accept Set accept type
+	 * @return Future completed with the result, also for errors
+	 */
+	public CompletableFuture<HttpResult> postAsync(String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType content, MediaType accept) {
+		// Log post
+		logger.debug("POST async URI(" + uri + ") User(" + getUserId(credentials) + ") + TrustAll(" + trustAllCertificates + ")");
+		
+		// Execute call
+		return invokeAsync(HttpMethod.POST, uri, credentials, trustAllCertificates, body, content, accept);
+	}
+	
+	
+	/**
+	 * Execute an asynchronous call with the shared client of the trust mode
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body or null
+	 * @param accept Accepted types
+	 * @return Future completed with the result, never exceptionally
+	 */
+	CompletableFuture<HttpResult> invokeAsync(String method, String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType... accept) {
+		return invokeAsync(null, method, uri, credentials, trustAllCertificates, body, accept);
+	}
+	
+	
+	/**
+	 * Execute an asynchronous call that can be abandoned
+	 * @param done Completed when the call can be abandoned, or null
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param credentials Credentials or null for unauthenticated connection
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body or null
+	 * @param accept Accepted types
+	 * @return Future completed with the result, never exceptionally
+	 */
+	CompletableFuture<HttpResult> invokeAsync(CompletableFuture<?> done, String method, String uri, SecretCredentials credentials, boolean trustAllCertificates, Entity<?> body, MediaType... accept) {
+		try {
+			// Prepare request
+			Invocation.Builder request = prepare(uri, credentials, trustAllCertificates, accept);
+			
+			// Rate limit and policy of the host
+			HttpRateLimiter limiter = HttpRateLimiter.getDefault(uri);
+			HttpHostPolicy policy = HttpHostPolicy.getDefault(uri);
+			if(null != policy) {
+				policy.apply(request);
+			}
+			
+			// Execute first attempt
+			return attemptAsync(done, limiter, policy, 1, null, method, uri, request, body);
+			
+		} catch (Exception e) {
+			// Log error
+			HttpResult result = HttpResult.failed(e);
+			logResult(uri, result);
+			
+			// Return generic error
+			return CompletableFuture.completedFuture(result);
+		}
+	}
+	
+	
+	/**
+	 * Execute an attempt of an asynchronous call, delayed without blocking by the rate limit
+	 * @param done Completed when the call can be abandoned, or null
+	 * @param limiter Rate limit of the host or null
+	 * @param policy Policy of the host or null
+	 * @param attempt Number of the attempt, starting from 1
+	 * @param previous Result of the previous attempt, returned if the retry is rejected, or null
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param request Request
+	 * @param body Body or null
+	 * @return Future completed with the result, never exceptionally
+	 */
+	private CompletableFuture<HttpResult> attemptAsync(CompletableFuture<?> done, HttpRateLimiter limiter, HttpHostPolicy policy, int attempt, HttpResult previous, String method, String uri, Invocation.Builder request, Entity<?> body) {
+		// No rate limit
+		if(null == limiter) {
+			return sendAsync(done, limiter, policy, attempt, previous, method, uri, request, body);
+		}
+		
+		// Reserve a call
+		long wait = limiter.reserve();
+		
+		// Rejected
+		if(wait < 0) {
+			HttpResult result = (null != previous) ? previous : HttpResult.failed(new ProcessingException("Call rejected by the rate limit of " + limiter.getHost()));
+			logResult(uri, result);
+			return CompletableFuture.completedFuture(result);
+		}
+		
+		// Start now or at the reserved time
+		return (0 == wait) ? sendAsync(done, limiter, policy, attempt, previous, method, uri, request, body)
+				: CompletableFuture.supplyAsync(() -> sendAsync(done, limiter, policy, attempt, previous, method, uri, request, body),
+						CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS)).thenCompose(next -> next);
+	}
+	
+	
+	/**
+	 * Send an attempt of an asynchronous call, retried without blocking after the backoff
+	 * @param done Completed when the call can be abandoned, or null
+	 * @param limiter Rate limit of the host or null
+	 * @param policy Policy of the host or null
+	 * @param attempt Number of the attempt, starting from 1
+	 * @param previous Result of the previous attempt, returned if the retry is rejected, or null
+	 * @param method HTTP method
+	 * @param uri URI to be called
+	 * @param request Request
+	 * @param body Body or null
+	 * @return Future completed with the result, never exceptionally
+	 */
+	private CompletableFuture<HttpResult> sendAsync(CompletableFuture<?> done, HttpRateLimiter limiter, HttpHostPolicy policy, int attempt, HttpResult previous, String method, String uri, Invocation.Builder request, Entity<?> body) {
+		// Abandoned, the result is already known, the rate limit reservation is given back
+		if((null != done) && done.isDone()) {
+			if(null != limiter) {
+				limiter.cancel();
+			}
+			return CompletableFuture.completedFuture(HttpResult.failed(new CancellationException("Request abandoned")));
+		}
+		
+		// Circuit open or bulkhead full, the rate limit reservation is given back
+		if((null != policy) && !policy.acquire()) {
+			if(null != limiter) {
+				limiter.cancel();
+			}
+			HttpResult result = (null != previous) ? previous : HttpResult.failed(new ProcessingException("Call rejected by the policy of " + policy.getHost()));
+			logResult(uri, result);
+			return CompletableFuture.completedFuture(result);
+		}
+		
+		// Result of the attempt
+		CompletableFuture<HttpResult> future;
+		try {
+			// Execute call
+			CompletionStage<Response> stage = (null == body) ? request.rx().method(method) : request.rx().method(method, body);
+			
+			// Read the response when completed
+			future = stage.toCompletableFuture().handle((response, error) -> {
+				try {
+					return (null == error) ? HttpResult.of(response) : HttpResult.failed(error);
+				} catch (Exception e) {
+					return HttpResult.failed(e);
+				}
+			});
+		} catch (Exception e) {
+			future = CompletableFuture.completedFuture(HttpResult.failed(e));
+		}
+		
+		return future.thenCompose(result -> {
+			// Honor Retry-After of throttled responses
+			if(null != limiter) {
+				limiter.update(result.getStatus(), result.getHeader(HttpHeaders.RETRY_AFTER));
+			}
+			
+			// Record outcome and compute the backoff, not retried if rejected by the rate limit
+			long delay = -1;
+			if(null != policy) {
+				policy.release(result.getStatus());
+				if(policy.isRetryable(method, result.getStatus()) && ((null == limiter) || limiter.isAvailable())) {
+					delay = policy.getRetryDelay(attempt);
+				}
+			}
+			
+			// Abandoned, the result is already known
+			if((null != done) && done.isDone()) {
+				return CompletableFuture.completedFuture(result);
+			}
+			
+			// Final result
+			if(delay < 0) {
+				logResult(uri, result);
+				return CompletableFuture.completedFuture(result);
+			}
+			
+			// Retry after the backoff
+			return CompletableFuture.supplyAsync(() -> attemptAsync(done, limiter, policy, attempt + 1, result, method, uri, request, body),
+					CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)).thenCompose(next -> next);
+		});
+	}
+	
+	
+	/**
+	 * Log the result of an asynchronous call
+	 * @param uri URI called
+	 * @param result Result
+	 */
+	private static void logResult(String uri, HttpResult result) {
+		if(1 == result.getRc()) {
+			// Log error
+			logger.error("HTTP error URI(" + uri + ") Status(" + result.getStatus() + ")");
+			// Log message
+			logger.error(result.getBody());
+		} else if(2 == result.getRc()) {
+			// Log error
+			logger.error("Generic error URI(" + uri + ")");
+			// Log message
+			logger.error(result.getError());
+		} else {
+			// Log call
+			logger.debug("Async call successfully executed URI(" + uri + ")");
+		}
+	}
+	
+	
+	/**
+	 * Set the basic authentication credentials of a request
+	 * @param request Request
+	 * @param credentials Credentials or null for unauthenticated connection
+	 */
+	static void setCredentials(Invocation.Builder request, SecretCredentials credentials) {
+		// Unauthenticated
+		if(null == credentials) {
+			return;
+		}
+		
+		// Set authentication basic parameters
+		request.property(HttpAuthenticationFeature.HTTP_AUTHENTICATION_BASIC_USERNAME, credentials.getUserId());
+		request.property(HttpAuthenticationFeature.HTTP_AUTHENTICATION_BASIC_PASSWORD, credentials.getPassword());
+	}
+	
+	
+	/**
+	 * Get the user of the credentials for logging
+	 * @param credentials Credentials or null
+	 * @return User or null
+	 */
+	static String getUserId(SecretCredentials credentials) {
+		return (null == credentials) ? null : credentials.getUserId();
+	}
+	
+	
+	/**
+	 * Get the cache of GET responses
+	 * @return Cache or null for the default one
+	 */
+	public HttpCache getCache() {
+		return cache;
+	}
+	
+	
+	/**
+	 * Set the cache of GET responses
+	 * @param cache Cache or null for the default one, configured in the application properties
+	 */
+	public void setCache(HttpCache cache) {
+		this.cache = cache;
 	}
 	
 	
@@ -0,0 +1,264 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Execute a list of calls in parallel, i.e. to aggregate data from many upstream services.
+ *
+ * At most maxConcurrency calls of the batch and maxPerHost calls to the same host run at the same time,
+ * the others wait in order. Results are returned in the order of the calls when all calls are completed
+ * or the deadline expires: calls not completed in time have return code 2, like the other generic errors,
+ * and are abandoned: their retries are not started and their connections are released when they end.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpFanOut {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpFanOut.class);
+
+	// Error of the calls still running at the deadline
+	static final String ERROR_DEADLINE = "Deadline exceeded";
+
+	// Error of the calls not started before the deadline
+	static final String ERROR_NOT_STARTED = "Not started before the deadline";
+
+	// Maximum number of calls of a batch running at the same time
+	private final int maxConcurrency;
+
+	// Maximum number of calls to the same host running at the same time
+	private final int maxPerHost;
+
+	// Connection executing the calls
+	private final HttpConnection httpConnection = new HttpConnection();
+
+
+	/**
+	 * Constructor
+	 * @param maxConcurrency Maximum number of calls of a batch running at the same time
+	 * @param maxPerHost Maximum number of calls to the same host running at the same time
+	 */
+	public HttpFanOut(int maxConcurrency, int maxPerHost) {
+		this.maxConcurrency = Math.max(1, maxConcurrency);
+		this.maxPerHost = Math.max(1, maxPerHost);
+	}
+
+
+	/**
+	 * Execute calls in parallel
+	 * @param calls Calls
+	 * @param timeoutMillis Deadline of the whole batch in milliseconds
+	 * @return Results in the order of the calls
+	 */
+	public List<HttpResult> execute(List<HttpCall> calls, long timeoutMillis) {
+		// Log batch
+		logger.debug("Fan out of " + calls.size() + " call(s) maxConcurrency(" + maxConcurrency + ") maxPerHost(" + maxPerHost + ") timeout(" + timeoutMillis + ")");
+
+		// Start the first calls
+		Batch batch = new Batch(calls);
+		batch.dispatch();
+
+		try {
+			// Wait all calls or the deadline
+			CompletableFuture.allOf(batch.futures.toArray(new CompletableFuture<?>[0])).get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// Log deadline
+			logger.warn("Fan out deadline of " + timeoutMillis + "ms exceeded");
+		} catch (InterruptedException e) {
+			// Stop waiting
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// Not expected, results are never exceptional
+			logger.error(e);
+		}
+
+		// Do not start other calls, abandon the running ones
+		batch.close();
+
+		// Collect results
+		List<HttpResult> results = new ArrayList<>(calls.size());
+		int failed = 0;
+		for(int i = 0; i < calls.size(); i++) {
+			HttpResult result = batch.futures.get(i).getNow(null);
+			if(null == result) {
+				result = new HttpResult(2, 0, Collections.emptyMap(), "", batch.isStarted(i) ? ERROR_DEADLINE : ERROR_NOT_STARTED);
+			}
+			if(0 != result.getRc()) {
+				failed++;
+			}
+			results.add(result);
+		}
+
+		// Log result
+		logger.debug("Fan out completed, " + failed + " of " + calls.size() + " call(s) failed");
+
+		// Return results
+		return results;
+	}
+
+
+	/**
+	 * Calls of an execution
+	 */
+	private class Batch {
+
+		// Calls
+		private final List<HttpCall> calls;
+
+		// Hosts of the calls
+		private final String[] hosts;
+
+		// Results
+		private final List<CompletableFuture<HttpResult>> futures;
+
+		// Completed at the deadline, the running calls are abandoned
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		// Calls started
+		private final boolean[] started;
+
+		// Calls waiting, in order
+		private final LinkedList<Integer> pending = new LinkedList<>();
+
+		// Calls running by host
+		private final Map<String, Integer> hostRunning = new HashMap<>();
+
+		// Calls running
+		private int running;
+
+		// No more calls started after the deadline
+		private boolean closed;
+
+
+		/**
+		 * Constructor
+		 * @param calls Calls
+		 */
+		Batch(List<HttpCall> calls) {
+			this.calls = calls;
+			this.hosts = new String[calls.size()];
+			this.futures = new ArrayList<>(calls.size());
+			this.started = new boolean[calls.size()];
+			for(int i = 0; i < calls.size(); i++) {
+				hosts[i] = calls.get(i).getHost();
+				futures.add(new CompletableFuture<>());
+				pending.add(i);
+			}
+		}
+
+
+		/**
+		 * Start the waiting calls allowed by the limits
+		 */
+		void dispatch() {
+			// Calls to start
+			List<Integer> starting = new ArrayList<>();
+
+			synchronized(this) {
+				// Deadline expired
+				if(closed) {
+					return;
+				}
+
+				// Take calls in order, skipping hosts at their limit
+				Iterator<Integer> iterator = pending.iterator();
+				while(iterator.hasNext() && (running < maxConcurrency)) {
+					int i = iterator.next();
+					int perHost = hostRunning.getOrDefault(hosts[i], 0);
+					if(perHost >= maxPerHost) {
+						continue;
+					}
+					iterator.remove();
+					hostRunning.put(hosts[i], perHost + 1);
+					running++;
+					started[i] = true;
+					starting.add(i);
+				}
+			}
+
+			// Start calls outside of the lock, they may complete immediately
+			for(int i : starting) {
+				start(i);
+			}
+		}
+
+
+		/**
+		 * Start a call
+		 * @param i Call index
+		 */
+		private void start(int i) {
+			// Execute call
+			HttpCall call = calls.get(i);
+			httpConnection.invokeAsync(done, call.getMethod(), call.getUri(), call.getCredentials(), call.isTrustAllCertificates(), call.getBody(), call.getAccept())
+				.thenAccept(result -> {
+					// Free the slot
+					synchronized(this) {
+						running--;
+						hostRunning.merge(hosts[i], -1, Integer::sum);
+					}
+
+					// Set result
+					futures.get(i).complete(result);
+
+					// Start waiting calls
+					dispatch();
+				});
+		}
+
+
+		/**
+		 * Check if a call was started
+		 * @param i Call index
+		 * @return True if started
+		 */
+		synchronized boolean isStarted(int i) {
+			return started[i];
+		}
+
+
+		/**
+		 * Stop starting calls and abandon the running ones
+		 */
+		void close() {
+			synchronized(this) {
+				closed = true;
+			}
+			done.complete(null);
+		}
+	}
+
+}
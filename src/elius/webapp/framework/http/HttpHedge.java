@@ -0,0 +1,532 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Hedging of the GET calls to a replicated host.
+ *
+ * If the response has not arrived after the configured percentile of the recent latencies of the host,
+ * a second request is sent, to the alternate base URI if set, and the first response wins: the other
+ * request is abandoned, its retries are not started and its connection is released when it ends.
+ * Generic errors do not win while the other request is still running. Until http.hedge.minSamples
+ * latencies are known the delay is http.hedge.delayMillis. Latencies are kept in windows of
+ * http.hedge.window calls, the percentile is the upper bound of its histogram bucket.
+ *
+ * Hedged requests are limited by a budget shared by all hosts: every call adds http.hedge.budgetPercent
+ * hundredths of a request, a hedged request takes a whole one.
+ *
+ * Synchronous calls run their requests on the threads of the hedging, at most http.hedge.threads shared
+ * by all hosts, and not on the asynchronous pool of the clients used by the asynchronous calls. When the
+ * threads are busy the first request runs on the calling thread and the hedged one is not sent.
+ * Calls served by the HTTP cache are not hedged: a cached GET is revalidated with a single request.
+ *
+ * Settings are read from http.hedge.* and can be overridden for a host with http.host.[host].*
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpHedge {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpHedge.class);
+
+	// Budget unit of a hedged request
+	private static final long BUDGET_UNIT = 100;
+
+	// Maximum budget saved when the calls are fast, in hedged requests
+	private static final long BUDGET_MAX = 10;
+
+	// Budget of the hedged requests shared by all hosts, in hundredths of a request
+	private static final AtomicLong budget = new AtomicLong();
+
+	// Concurrent HashMap of the hedge instances by host
+	private static final ConcurrentHashMap<String, HttpHedge> instances = new ConcurrentHashMap<>();
+
+	// Enabled in the application properties, resolved on first use to keep the lookup out of every call
+	private static volatile Boolean enabled;
+
+	// Threads of the requests of the synchronous calls, created on first use
+	private static volatile ExecutorService executor;
+
+	// Host
+	private final String host;
+
+	// Percentile of the latencies, i.e. 0.95
+	private final double percentile;
+
+	// Delay in milliseconds until enough latencies are known
+	private final long delayMillis;
+
+	// Minimum number of latencies to compute the percentile
+	private final long minSamples;
+
+	// Number of latencies of a window
+	private final long window;
+
+	// Alternate base URI or null
+	private final String alternate;
+
+	// Budget added by every call, in hundredths of a request
+	private final long budgetPercent;
+
+	// Latencies of the current window
+	private volatile HttpLatencyHistogram current = new HttpLatencyHistogram();
+
+	// Latencies of the previous window or null
+	private volatile HttpLatencyHistogram previous;
+
+	// Number of calls
+	private final AtomicLong calls = new AtomicLong();
+
+	// Number of hedged requests sent
+	private final AtomicLong hedged = new AtomicLong();
+
+	// Number of hedged requests winning
+	private final AtomicLong won = new AtomicLong();
+
+	// Number of hedged requests not sent for the budget
+	private final AtomicLong skipped = new AtomicLong();
+
+
+	/**
+	 * Constructor
+	 * @param host Host
+	 * @param percentile Percentile of the latencies, i.e. 95
+	 * @param delayMillis Delay in milliseconds until enough latencies are known
+	 * @param minSamples Minimum number of latencies to compute the percentile
+	 * @param window Number of latencies of a window
+	 * @param alternate Alternate base URI, i.e. https://replica:8443, or null for the same URI
+	 * @param budgetPercent Hedged requests in percent of the calls
+	 */
+	public HttpHedge(String host, double percentile, long delayMillis, long minSamples, long window, String alternate, int budgetPercent) {
+		this.host = host;
+		this.percentile = Math.min(100, Math.max(0, percentile)) / 100;
+		this.delayMillis = Math.max(0, delayMillis);
+		this.minSamples = Math.max(1, minSamples);
+		this.window = Math.max(this.minSamples, window);
+		this.alternate = ((null == alternate) || alternate.trim().isEmpty()) ? null : alternate.trim().replaceAll("/+$", "");
+		this.budgetPercent = Math.max(0, budgetPercent);
+	}
+
+
+	/**
+	 * Get the hedge configured in the application properties for the host of a URI
+	 * @param uri URI
+	 * @return Hedge or null if hedging is not enabled or the URI has no host
+	 */
+	public static HttpHedge getDefault(String uri) {
+		// Resolve enablement once
+		if(null == enabled) {
+			enabled = "y".equalsIgnoreCase(PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE).get(ApplicationAttributes.PROP_HTTP_HEDGE_ENABLE));
+		}
+
+		// Hedging not enabled
+		if(!enabled) {
+			return null;
+		}
+
+		// Host of the URI
+		String host;
+		try {
+			host = URI.create(uri).getHost();
+		} catch (IllegalArgumentException e) {
+			host = null;
+		}
+		if(null == host) {
+			return null;
+		}
+
+		// Already created
+		HttpHedge hedge = instances.get(host.toLowerCase());
+		if(null != hedge) {
+			return hedge;
+		}
+
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Get or create the hedge of the host, the budget is shared by all hosts
+		return instances.computeIfAbsent(host.toLowerCase(), key -> new HttpHedge(key,
+				getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_HEDGE_PERCENTILE, ApplicationAttributes.DEFAULT_HTTP_HEDGE_PERCENTILE),
+				(long) getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_HEDGE_DELAY, ApplicationAttributes.DEFAULT_HTTP_HEDGE_DELAY),
+				(long) getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_HEDGE_MIN_SAMPLES, ApplicationAttributes.DEFAULT_HTTP_HEDGE_MIN_SAMPLES),
+				(long) getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_HEDGE_WINDOW, ApplicationAttributes.DEFAULT_HTTP_HEDGE_WINDOW),
+				getString(appProperties, key, ApplicationAttributes.PROP_HTTP_HEDGE_ALTERNATE),
+				appProperties.getInt(ApplicationAttributes.PROP_HTTP_HEDGE_BUDGET, ApplicationAttributes.DEFAULT_HTTP_HEDGE_BUDGET)));
+	}
+
+
+	/**
+	 * Get a setting of a host, the general one if not overridden
+	 * @param appProperties Application properties
+	 * @param host Host
+	 * @param property General property
+	 * @return Value or null if not set
+	 */
+	private static String getString(PropertiesManager appProperties, String host, String property) {
+		// Setting of the host, then the general one
+		String name = property.substring(ApplicationAttributes.PROP_HTTP_HEDGE_PREFIX.length());
+		String value = appProperties.get(ApplicationAttributes.PROP_HTTP_HOST_PREFIX + host + "." + name);
+		return (null == value) ? appProperties.get(property) : value;
+	}
+
+
+	/**
+	 * Get a numeric setting of a host, the general one if not overridden
+	 * @param appProperties Application properties
+	 * @param host Host
+	 * @param property General property
+	 * @param defaultValue Default value
+	 * @return Value
+	 */
+	private static double getDouble(PropertiesManager appProperties, String host, String property, double defaultValue) {
+		// Setting of the host, then the general one
+		String value = getString(appProperties, host, property);
+
+		// Parse value
+		try {
+			return (null == value) ? defaultValue : Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Invalid value of " + property + " for host " + host + ": " + value);
+			return defaultValue;
+		}
+	}
+
+
+	/**
+	 * Execute a call, hedged with a second request if it is slow
+	 * @param uri URI to be called
+	 * @param call Call of a URI, completed never exceptionally; the second argument is completed
+	 * when the result is known and the request can be abandoned. RejectedExecutionException if the
+	 * hedged request cannot be sent, it is counted as skipped
+	 * @return Future completed with the first response, or the last error
+	 */
+	CompletableFuture<HttpResult> execute(String uri, BiFunction<String, CompletableFuture<HttpResult>, CompletableFuture<HttpResult>> call) {
+		// Race of the requests
+		Race race = new Race();
+
+		// Budget of the hedged requests
+		calls.incrementAndGet();
+		budget.accumulateAndGet(budgetPercent, (saved, added) -> Math.min(BUDGET_MAX * BUDGET_UNIT, saved + added));
+
+		// First request, its latency is recorded also when it loses
+		long start = System.nanoTime();
+		call.apply(uri, race.result).thenAccept(result -> {
+			if(2 != result.getRc()) {
+				record(System.nanoTime() - start);
+			}
+			race.finish(result);
+		});
+
+		// Second request after the delay, if still needed
+		CompletableFuture.delayedExecutor(getDelayMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+			// Already completed
+			if(!race.join()) {
+				return;
+			}
+
+			// Budget exhausted
+			if(!withdraw()) {
+				skipped.incrementAndGet();
+				race.leave();
+				return;
+			}
+
+			// Send the second request
+			String target = getHedgeUri(uri);
+			CompletableFuture<HttpResult> second;
+			try {
+				second = call.apply(target, race.result);
+			} catch (RejectedExecutionException e) {
+				// Not sent, the budget is given back
+				budget.accumulateAndGet(BUDGET_UNIT, (saved, added) -> Math.min(BUDGET_MAX * BUDGET_UNIT, saved + added));
+				skipped.incrementAndGet();
+				logger.warn("Hedged request to " + host + " not sent, threads busy");
+				race.leave();
+				return;
+			}
+			hedged.incrementAndGet();
+			logger.trace("Hedged request URI(" + target + ")");
+			second.thenAccept(result -> {
+				if(race.finish(result)) {
+					won.incrementAndGet();
+				}
+			});
+		});
+
+		// Return result
+		return race.result;
+	}
+
+
+	/**
+	 * Execute a synchronous call, hedged with a second request if it is slow
+	 * @param uri URI to be called
+	 * @param call Blocking call of a URI, never throwing; the second argument is completed
+	 * when the result is known and the request can be abandoned
+	 * @return First response, or the last error
+	 */
+	HttpResult executeSync(String uri, BiFunction<String, CompletableFuture<HttpResult>, HttpResult> call) {
+		// Thread waiting for the result
+		Thread caller = Thread.currentThread();
+
+		// Requests on the threads of the hedging
+		return execute(uri, (target, done) -> {
+			try {
+				return CompletableFuture.supplyAsync(() -> call.apply(target, done), getExecutor());
+			} catch (RejectedExecutionException e) {
+				// Threads busy, the first request runs on the calling thread
+				if(Thread.currentThread() == caller) {
+					return CompletableFuture.completedFuture(call.apply(target, done));
+				}
+
+				// Threads busy, the hedged request is not sent
+				throw e;
+			}
+		}).join();
+	}
+
+
+	/**
+	 * Get the threads of the requests of the synchronous calls
+	 * @return Executor
+	 */
+	private static ExecutorService getExecutor() {
+		// Already created
+		ExecutorService result = executor;
+		if(null != result) {
+			return result;
+		}
+
+		synchronized(HttpHedge.class) {
+			if(null == executor) {
+				// Maximum number of threads
+				int threads = Math.max(1, PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE)
+						.getInt(ApplicationAttributes.PROP_HTTP_HEDGE_THREADS, ApplicationAttributes.DEFAULT_HTTP_HEDGE_THREADS));
+
+				// Threads created on demand, released when idle, rejected beyond the maximum
+				executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+					Thread t = new Thread(r, "HttpHedge");
+					t.setDaemon(true);
+					return t;
+				});
+			}
+			return executor;
+		}
+	}
+
+
+	/**
+	 * Take a hedged request from the budget
+	 * @return True if taken, false if the budget is exhausted
+	 */
+	private static boolean withdraw() {
+		while(true) {
+			long saved = budget.get();
+			if(saved < BUDGET_UNIT) {
+				return false;
+			}
+			if(budget.compareAndSet(saved, saved - BUDGET_UNIT)) {
+				return true;
+			}
+		}
+	}
+
+
+	/**
+	 * Record the latency of a request
+	 * @param nanos Latency in nanoseconds
+	 */
+	private void record(long nanos) {
+		// Record latency
+		HttpLatencyHistogram histogram = current;
+		histogram.record(nanos);
+
+		// Start a new window
+		if(histogram.getCount() >= window) {
+			synchronized(this) {
+				if(histogram == current) {
+					previous = histogram;
+					current = new HttpLatencyHistogram();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Get the URI of the hedged request
+	 * @param uri URI of the first request
+	 * @return URI on the alternate base URI, the same URI if not set
+	 */
+	String getHedgeUri(String uri) {
+		// No alternate
+		if(null == alternate) {
+			return uri;
+		}
+
+		// Path and query on the alternate base URI
+		URI parsed = URI.create(uri);
+		return alternate + ((null == parsed.getRawPath()) ? "" : parsed.getRawPath())
+				+ ((null == parsed.getRawQuery()) ? "" : ("?" + parsed.getRawQuery()));
+	}
+
+
+	/**
+	 * Get the delay of the hedged request
+	 * @return Percentile of the latencies of the last complete window or the current one, in milliseconds
+	 */
+	public long getDelayMillis() {
+		// Latencies of the last complete window, or the current one
+		HttpLatencyHistogram histogram = previous;
+		if(null == histogram) {
+			histogram = current;
+		}
+
+		// Not enough latencies
+		if(histogram.getCount() < minSamples) {
+			return delayMillis;
+		}
+
+		// Percentile
+		return (long) Math.ceil(histogram.getPercentileMillis(percentile));
+	}
+
+
+	/**
+	 * Get host
+	 * @return Host
+	 */
+	public String getHost() {
+		return host;
+	}
+
+
+	/**
+	 * Get number of calls
+	 * @return Calls
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+
+	/**
+	 * Get number of hedged requests sent
+	 * @return Hedged requests
+	 */
+	public long getHedged() {
+		return hedged.get();
+	}
+
+
+	/**
+	 * Get number of hedged requests winning
+	 * @return Hedged requests winning
+	 */
+	public long getWon() {
+		return won.get();
+	}
+
+
+	/**
+	 * Get number of hedged requests not sent because the budget was exhausted
+	 * @return Hedged requests skipped
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+
+	/**
+	 * Requests of a call
+	 */
+	private static final class Race {
+
+		// Result of the call
+		private final CompletableFuture<HttpResult> result = new CompletableFuture<>();
+
+		// Requests running
+		private final AtomicInteger running = new AtomicInteger(1);
+
+		// Last error
+		private final AtomicReference<HttpResult> last = new AtomicReference<>();
+
+
+		/**
+		 * Add the second request
+		 * @return True if added, false if the result is already known
+		 */
+		boolean join() {
+			running.incrementAndGet();
+			if(result.isDone()) {
+				leave();
+				return false;
+			}
+			return true;
+		}
+
+
+		/**
+		 * Remove the second request before sending it
+		 */
+		void leave() {
+			if(0 == running.decrementAndGet()) {
+				result.complete(last.get());
+			}
+		}
+
+
+		/**
+		 * Complete a request, generic errors win only if no other request is running
+		 * @param requestResult Result of the request
+		 * @return True if it is the result of the call
+		 */
+		boolean finish(HttpResult requestResult) {
+			last.set(requestResult);
+			int left = running.decrementAndGet();
+			if((2 != requestResult.getRc()) || (0 == left)) {
+				return result.complete(requestResult);
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,474 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.ClientProperties;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.client.Invocation;
+
+/**
+ * Protection of the calls to a host: timeouts, retries, circuit breaker and bulkhead.
+ *
+ * Idempotent calls failed with a generic error or a retryable status (408, 429, 502, 503, 504)
+ * are retried with jittered exponential backoff. After failureThreshold consecutive failures
+ * (generic errors and 5xx statuses) the circuit opens and calls fail immediately for openMillis,
+ * then a single call probes the host and closes the circuit if successful.
+ * At most maxConcurrent calls to the host are in flight, the others are rejected immediately.
+ *
+ * Settings are read from http.policy.* and can be overridden for a host with http.host.[host].*
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpHostPolicy {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpHostPolicy.class);
+
+	// Concurrent HashMap of the policy instances by host
+	private static final ConcurrentHashMap<String, HttpHostPolicy> instances = new ConcurrentHashMap<>();
+
+	// Enabled in the application properties, resolved on first use to keep the lookup out of every call
+	private static volatile Boolean enabled;
+
+	// Host
+	private final String host;
+
+	// Connect timeout in milliseconds
+	private final int connectTimeout;
+
+	// Read timeout in milliseconds
+	private final int readTimeout;
+
+	// Maximum number of attempts, first included
+	private final int maxAttempts;
+
+	// Delay of the first retry in milliseconds
+	private final long baseDelayMillis;
+
+	// Maximum delay of a retry in milliseconds
+	private final long maxDelayMillis;
+
+	// Consecutive failures opening the circuit
+	private final int failureThreshold;
+
+	// Time in milliseconds the circuit stays open
+	private final long openMillis;
+
+	// Maximum number of calls in flight
+	private final int maxConcurrent;
+
+	// Slots of the calls in flight
+	private final Semaphore bulkhead;
+
+	// Circuit state
+	private HttpCircuitState state = HttpCircuitState.CLOSED;
+
+	// Consecutive failures
+	private int failures;
+
+	// Time the circuit was opened in milliseconds
+	private long openedAt;
+
+	// Probe call in progress while half open
+	private boolean probing;
+
+	// Number of calls
+	private final AtomicLong calls = new AtomicLong();
+
+	// Number of retries
+	private final AtomicLong retries = new AtomicLong();
+
+	// Number of calls rejected by the bulkhead
+	private final AtomicLong rejected = new AtomicLong();
+
+	// Number of calls rejected by the open circuit
+	private final AtomicLong shortCircuited = new AtomicLong();
+
+
+	/**
+	 * Constructor
+	 * @param host Host
+	 * @param connectTimeout Connect timeout in milliseconds
+	 * @param readTimeout Read timeout in milliseconds
+	 * @param maxAttempts Maximum number of attempts, first included
+	 * @param baseDelayMillis Delay of the first retry in milliseconds
+	 * @param maxDelayMillis Maximum delay of a retry in milliseconds
+	 * @param failureThreshold Consecutive failures opening the circuit
+	 * @param openMillis Time in milliseconds the circuit stays open
+	 * @param maxConcurrent Maximum number of calls in flight
+	 */
+	public HttpHostPolicy(String host, int connectTimeout, int readTimeout, int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+			int failureThreshold, long openMillis, int maxConcurrent) {
+		this.host = host;
+		this.connectTimeout = Math.max(0, connectTimeout);
+		this.readTimeout = Math.max(0, readTimeout);
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(1, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = Math.max(0, openMillis);
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.bulkhead = new Semaphore(this.maxConcurrent);
+	}
+
+
+	/**
+	 * Get the policy configured in the application properties for the host of a URI
+	 * @param uri URI
+	 * @return Policy or null if policies are not enabled or the URI has no host
+	 */
+	public static HttpHostPolicy getDefault(String uri) {
+		// Resolve enablement once
+		if(null == enabled) {
+			enabled = "y".equalsIgnoreCase(PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE).get(ApplicationAttributes.PROP_HTTP_POLICY_ENABLE));
+		}
+
+		// Policies not enabled
+		if(!enabled) {
+			return null;
+		}
+
+		// Host of the URI
+		String host;
+		try {
+			host = URI.create(uri).getHost();
+		} catch (IllegalArgumentException e) {
+			host = null;
+		}
+		if(null == host) {
+			return null;
+		}
+
+		// Already created
+		HttpHostPolicy policy = instances.get(host.toLowerCase());
+		if(null != policy) {
+			return policy;
+		}
+
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Get or create the policy of the host
+		return instances.computeIfAbsent(host.toLowerCase(), key -> new HttpHostPolicy(key,
+				getInt(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_CONNECT_TIMEOUT, ApplicationAttributes.DEFAULT_HTTP_POLICY_CONNECT_TIMEOUT),
+				getInt(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_READ_TIMEOUT, ApplicationAttributes.DEFAULT_HTTP_POLICY_READ_TIMEOUT),
+				getInt(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_MAX_ATTEMPTS, ApplicationAttributes.DEFAULT_HTTP_POLICY_MAX_ATTEMPTS),
+				getLong(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_BASE_DELAY, ApplicationAttributes.DEFAULT_HTTP_POLICY_BASE_DELAY),
+				getLong(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_MAX_DELAY, ApplicationAttributes.DEFAULT_HTTP_POLICY_MAX_DELAY),
+				getInt(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_FAILURE_THRESHOLD, ApplicationAttributes.DEFAULT_HTTP_POLICY_FAILURE_THRESHOLD),
+				getLong(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_OPEN_TIME, ApplicationAttributes.DEFAULT_HTTP_POLICY_OPEN_TIME),
+				getInt(appProperties, key, ApplicationAttributes.PROP_HTTP_POLICY_MAX_CONCURRENT, ApplicationAttributes.DEFAULT_HTTP_POLICY_MAX_CONCURRENT)));
+	}
+
+
+	/**
+	 * Get a setting of a host, the general one if not overridden
+	 * @param appProperties Application properties
+	 * @param host Host
+	 * @param property General property
+	 * @param defaultValue Default value
+	 * @return Value
+	 */
+	private static int getInt(PropertiesManager appProperties, String host, String property, int defaultValue) {
+		String name = property.substring(ApplicationAttributes.PROP_HTTP_POLICY_PREFIX.length());
+		return appProperties.getInt(ApplicationAttributes.PROP_HTTP_HOST_PREFIX + host + "." + name, appProperties.getInt(property, defaultValue));
+	}
+
+
+	/**
+	 * Get a setting of a host, the general one if not overridden
+	 * @param appProperties Application properties
+	 * @param host Host
+	 * @param property General property
+	 * @param defaultValue Default value
+	 * @return Value
+	 */
+	private static long getLong(PropertiesManager appProperties, String host, String property, long defaultValue) {
+		String name = property.substring(ApplicationAttributes.PROP_HTTP_POLICY_PREFIX.length());
+		return appProperties.getLong(ApplicationAttributes.PROP_HTTP_HOST_PREFIX + host + "." + name, appProperties.getLong(property, defaultValue));
+	}
+
+
+	/**
+	 * Set the timeouts of a request
+	 * @param request Request
+	 */
+	void apply(Invocation.Builder request) {
+		request.property(ClientProperties.CONNECT_TIMEOUT, connectTimeout);
+		request.property(ClientProperties.READ_TIMEOUT, readTimeout);
+	}
+
+
+	/**
+	 * Acquire a slot for a call, without waiting
+	 * @return True if acquired, false if the circuit is open or the bulkhead is full
+	 */
+	boolean acquire() {
+		// Circuit open
+		if(!allow()) {
+			shortCircuited.incrementAndGet();
+			logger.warn("Call to " + host + " rejected, circuit open");
+			return false;
+		}
+
+		// Bulkhead full
+		if(!bulkhead.tryAcquire()) {
+			synchronized(this) {
+				probing = false;
+			}
+			rejected.incrementAndGet();
+			logger.warn("Call to " + host + " rejected, " + maxConcurrent + " call(s) in flight");
+			return false;
+		}
+
+		// Slot acquired
+		calls.incrementAndGet();
+		return true;
+	}
+
+
+	/**
+	 * Release the slot of a call and record its outcome
+	 * @param status HTTP status code, 0 for generic errors
+	 */
+	void release(int status) {
+		// Free the slot
+		bulkhead.release();
+
+		// Record outcome, client errors mean the host is healthy
+		if((0 == status) || (500 <= status)) {
+			failure();
+		} else {
+			success();
+		}
+	}
+
+
+	/**
+	 * Check if the circuit allows a call, moving to half open after the open time
+	 * @return True if allowed
+	 */
+	private synchronized boolean allow() {
+		// Half open after the open time
+		if((HttpCircuitState.OPEN == state) && ((System.currentTimeMillis() - openedAt) >= openMillis)) {
+			state = HttpCircuitState.HALF_OPEN;
+			logger.info("Circuit of " + host + " half open");
+		}
+
+		// Closed
+		if(HttpCircuitState.CLOSED == state) {
+			return true;
+		}
+
+		// Half open, a single probe call
+		if((HttpCircuitState.HALF_OPEN == state) && !probing) {
+			probing = true;
+			return true;
+		}
+
+		// Open or probe in progress
+		return false;
+	}
+
+
+	/**
+	 * Record a successful call
+	 */
+	private synchronized void success() {
+		failures = 0;
+		probing = false;
+		if(HttpCircuitState.CLOSED != state) {
+			state = HttpCircuitState.CLOSED;
+			logger.info("Circuit of " + host + " closed");
+		}
+	}
+
+
+	/**
+	 * Record a failed call
+	 */
+	private synchronized void failure() {
+		failures++;
+		probing = false;
+		if((HttpCircuitState.HALF_OPEN == state) || ((HttpCircuitState.CLOSED == state) && (failures >= failureThreshold))) {
+			state = HttpCircuitState.OPEN;
+			openedAt = System.currentTimeMillis();
+			logger.warn("Circuit of " + host + " open after " + failures + " consecutive failure(s)");
+		}
+	}
+
+
+	/**
+	 * Check if a call can be retried
+	 * @param method HTTP method
+	 * @param status HTTP status code, 0 for generic errors
+	 * @return True for idempotent methods failed with a generic error or a retryable status
+	 */
+	boolean isRetryable(String method, int status) {
+		// Only idempotent methods, the body of the others may have been processed
+		if(!(HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.PUT.equals(method)
+				|| HttpMethod.DELETE.equals(method) || HttpMethod.OPTIONS.equals(method))) {
+			return false;
+		}
+
+		// Generic error, timeout, throttling and gateway errors
+		return (0 == status) || (408 == status) || (429 == status) || (502 == status) || (503 == status) || (504 == status);
+	}
+
+
+	/**
+	 * Get the wait before a new attempt
+	 * @param attempt Number of the failed attempt, starting from 1
+	 * @return Delay in milliseconds, -1 if attempts are exhausted
+	 */
+	long getRetryDelay(int attempt) {
+		// Attempts exhausted
+		if(attempt >= maxAttempts) {
+			logger.warn("Retry attempts to " + host + " exhausted after " + attempt + " attempt(s)");
+			return -1;
+		}
+
+		// Exponential delay with full jitter
+		long delay = Math.min(maxDelayMillis, baseDelayMillis << Math.min(30, attempt - 1));
+		delay = ThreadLocalRandom.current().nextLong(delay + 1);
+
+		// Log retry
+		logger.warn("Retry " + attempt + " of " + (maxAttempts - 1) + " to " + host + " in " + delay + "ms");
+
+		// Update statistics
+		retries.incrementAndGet();
+
+		// Return delay
+		return delay;
+	}
+
+
+	/**
+	 * Wait before a new attempt
+	 * @param attempt Number of the failed attempt, starting from 1
+	 * @return True if the call must be retried, false if attempts are exhausted
+	 */
+	boolean awaitRetry(int attempt) {
+		// Delay of the attempt
+		long delay = getRetryDelay(attempt);
+		if(delay < 0) {
+			return false;
+		}
+
+		// Backoff
+		return await(delay);
+	}
+
+
+	/**
+	 * Wait the backoff of a new attempt
+	 * @param delay Delay in milliseconds, see getRetryDelay
+	 * @return True if the call must be retried, false if interrupted
+	 */
+	static boolean await(long delay) {
+		try {
+			// Backoff
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		// Retry
+		return true;
+	}
+
+
+	/**
+	 * Get host
+	 * @return Host
+	 */
+	public String getHost() {
+		return host;
+	}
+
+
+	/**
+	 * Get circuit state
+	 * @return Circuit state
+	 */
+	public synchronized HttpCircuitState getState() {
+		return state;
+	}
+
+
+	/**
+	 * Get number of calls in flight
+	 * @return Calls in flight
+	 */
+	public int getInFlight() {
+		return maxConcurrent - bulkhead.availablePermits();
+	}
+
+
+	/**
+	 * Get number of calls
+	 * @return Number of calls, retries included
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+
+	/**
+	 * Get number of retries
+	 * @return Number of retries
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+
+	/**
+	 * Get number of calls rejected by the bulkhead
+	 * @return Number of calls
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+
+	/**
+	 * Get number of calls rejected by the open circuit
+	 * @return Number of calls
+	 */
+	public long getShortCircuited() {
+		return shortCircuited.get();
+	}
+
+}
@@ -0,0 +1,232 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+
+import jakarta.ws.rs.ProcessingException;
+
+/**
+ * Jersey connector based on java.net.http, selected with http.engine=http2.
+ *
+ * Concurrent requests to the same host are multiplexed over a single HTTP/2 connection,
+ * negotiated with ALPN for https and with an upgrade for http, servers supporting only
+ * HTTP/1.1 are called as before. Filters and interceptors of the client, basic authentication
+ * included, run as with the default connector. The request body is buffered before sending.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpJdkConnector implements Connector {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpJdkConnector.class);
+
+	// Headers set by java.net.http, not allowed in the requests
+	private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	static {
+		RESTRICTED_HEADERS.addAll(List.of("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+	}
+
+	// Client, one connection to every HTTP/2 host
+	private final HttpClient httpClient;
+
+
+	/**
+	 * Constructor
+	 * @param sslContext SSL context of the trust mode
+	 * @param connectTimeout Connect timeout in milliseconds, 0 for no timeout
+	 */
+	public HttpJdkConnector(SSLContext sslContext, int connectTimeout) {
+		// Create client
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.sslContext(sslContext);
+
+		// Connect timeout of the client, java.net.http does not set it by request
+		if(0 < connectTimeout) {
+			builder.connectTimeout(Duration.ofMillis(connectTimeout));
+		}
+
+		this.httpClient = builder.build();
+	}
+
+
+	/**
+	 * Execute a request
+	 * @param request Request
+	 * @return Response
+	 */
+	@Override
+	public ClientResponse apply(ClientRequest request) {
+		try {
+			// Send request and wait the headers of the response
+			return toResponse(request, httpClient.send(toRequest(request), HttpResponse.BodyHandlers.ofInputStream()));
+		} catch (IOException e) {
+			throw new ProcessingException(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProcessingException(e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * Execute a request asynchronously
+	 * @param request Request
+	 * @param callback Callback of the response or the failure
+	 * @return Future
+	 */
+	@Override
+	public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+		// Prepare request, the body is written in the calling thread
+		HttpRequest httpRequest;
+		try {
+			httpRequest = toRequest(request);
+		} catch (IOException | ProcessingException e) {
+			callback.failure(e);
+			return CompletableFuture.failedFuture(e);
+		}
+
+		// Send request
+		return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofInputStream())
+				.whenComplete((response, error) -> {
+					if(null != error) {
+						callback.failure((error instanceof CompletionException) && (null != error.getCause()) ? error.getCause() : error);
+					} else {
+						callback.response(toResponse(request, response));
+					}
+				});
+	}
+
+
+	/**
+	 * Create the java.net.http request
+	 * @param request Jersey request
+	 * @return Request
+	 * @throws IOException Error writing the body
+	 */
+	private static HttpRequest toRequest(ClientRequest request) throws IOException {
+		// Body, written by the interceptors of the client
+		HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.noBody();
+		if(request.hasEntity()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			request.setStreamProvider(contentLength -> body);
+			request.writeEntity();
+			publisher = HttpRequest.BodyPublishers.ofByteArray(body.toByteArray());
+		}
+
+		// Method and URI
+		HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri()).method(request.getMethod(), publisher);
+
+		// Headers, final after the body is written
+		for(Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+			if(RESTRICTED_HEADERS.contains(header.getKey())) {
+				continue;
+			}
+			for(String value : header.getValue()) {
+				builder.header(header.getKey(), value);
+			}
+		}
+
+		// Time to receive the response headers, the connections are shared by the requests
+		int readTimeout = request.resolveProperty(ClientProperties.READ_TIMEOUT, 0);
+		if(0 < readTimeout) {
+			builder.timeout(Duration.ofMillis(readTimeout));
+		}
+
+		// Return request
+		return builder.build();
+	}
+
+
+	/**
+	 * Create the Jersey response
+	 * @param request Jersey request
+	 * @param response java.net.http response
+	 * @return Response
+	 */
+	private static ClientResponse toResponse(ClientRequest request, HttpResponse<InputStream> response) {
+		// Log protocol
+		logger.trace(response.version() + " " + response.statusCode() + " URI(" + response.uri() + ")");
+
+		// Status and final URI after redirects
+		ClientResponse clientResponse = new ClientResponse(Statuses.from(response.statusCode()), request, response.uri());
+
+		// Headers, without the HTTP/2 pseudo headers
+		for(Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+			if(!header.getKey().startsWith(":")) {
+				clientResponse.getHeaders().addAll(header.getKey(), header.getValue());
+			}
+		}
+
+		// Body
+		clientResponse.setEntityStream(response.body());
+
+		// Return response
+		return clientResponse;
+	}
+
+
+	/**
+	 * Get connector name
+	 * @return Name
+	 */
+	@Override
+	public String getName() {
+		return "java.net.http " + httpClient.version();
+	}
+
+
+	/**
+	 * Close the connector, java.net.http closes the connections of an unused client
+	 */
+	@Override
+	public void close() {
+		// Log closure
+		logger.debug("HTTP/2 connector closed");
+	}
+
+}
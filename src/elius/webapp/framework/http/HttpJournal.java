@@ -0,0 +1,381 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append only journal of records in memory mapped segment files, see HttpOutboundQueue.
+ *
+ * Every record is written as length, CRC32 and data, a zero length ends the segment. A record
+ * torn by a crash fails the check and ends the replay of its segment. Segments are deleted from
+ * the oldest one when none of their records are retained, so later records referring to them
+ * are still found at restart. Writes reach the file system with the page cache, survive a crash
+ * of the process and are forced to the device only if sync is set. A segment is unmapped as soon as
+ * it is no longer written, so the disk space of the deleted segments is reclaimed without waiting a GC.
+ *
+ * @author Elia Milioni
+ *
+ */
+final class HttpJournal {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpJournal.class);
+
+	// Length and CRC of a record
+	private static final int HEADER_SIZE = 8;
+
+	// Prefix of the segment files
+	private static final String SEGMENT_PREFIX = "journal-";
+
+	// Suffix of the segment files
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	// Unsafe instance and its invokeCleaner method unmapping a buffer, null if not available
+	private static final Object unsafe;
+	private static final Method invokeCleaner;
+
+	static {
+		Object instance = null;
+		Method method = null;
+		try {
+			// Unmapping of the JDK, the buffers are otherwise unmapped by the garbage collector
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			instance = field.get(null);
+			method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception | LinkageError e) {
+			logger.warn("Journal segments unmapped by the garbage collector: " + e.getMessage());
+			instance = null;
+			method = null;
+		}
+		unsafe = instance;
+		invokeCleaner = method;
+	}
+
+	// Directory of the segments
+	private final Path directory;
+
+	// Size of a segment in bytes
+	private final int segmentSize;
+
+	// Force every append to the device
+	private final boolean sync;
+
+	// Records retained by segment number, all segments on disk included
+	private final TreeMap<Long, Integer> retained = new TreeMap<>();
+
+	// Current segment number
+	private long segment;
+
+	// Current segment
+	private MappedByteBuffer buffer;
+
+	// Closed
+	private boolean closed;
+
+
+	/**
+	 * Constructor, the segments found in the directory must be replayed before appending
+	 * @param directory Directory of the segments, created if not found
+	 * @param segmentSize Size of a segment in bytes
+	 * @param sync True to force every append to the device
+	 * @throws IOException Error opening the directory
+	 */
+	HttpJournal(Path directory, int segmentSize, boolean sync) throws IOException {
+		this.directory = directory;
+		this.segmentSize = Math.max(4096, segmentSize);
+		this.sync = sync;
+
+		// Create directory
+		Files.createDirectories(directory);
+
+		// Segments on disk
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for(Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					retained.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), 0);
+				} catch (NumberFormatException e) {
+					logger.warn("Journal file ignored " + file);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Read all records in order and open the last segment to append
+	 * @param consumer Consumer of the segment number and the data of every record, valid only during the call
+	 * @throws IOException Error reading the segments
+	 */
+	synchronized void replay(BiConsumer<Long, ByteBuffer> consumer) throws IOException {
+		// Read segments
+		for(long number : new ArrayList<>(retained.keySet())) {
+			MappedByteBuffer mapped = map(number);
+			while(true) {
+				// End of segment
+				if(mapped.remaining() < HEADER_SIZE) {
+					break;
+				}
+				int start = mapped.position();
+				int length = mapped.getInt();
+				int crc = mapped.getInt();
+				if((length <= 0) || (length > mapped.remaining())) {
+					mapped.position(start);
+					break;
+				}
+
+				// Torn record
+				ByteBuffer data = mapped.slice();
+				data.limit(length);
+				if(crc != checksum(data)) {
+					logger.warn("Journal segment " + number + " truncated at " + start);
+					mapped.position(start);
+					break;
+				}
+
+				// Consume record
+				mapped.position(mapped.position() + length);
+				consumer.accept(number, data.asReadOnlyBuffer());
+			}
+
+			// Last segment, append after its records, the previous one is only read
+			if(null != buffer) {
+				unmap(buffer);
+			}
+			segment = number;
+			buffer = mapped;
+		}
+
+		// First segment
+		if(null == buffer) {
+			roll();
+		}
+
+		// Log replay
+		logger.debug("Journal replayed " + retained.size() + " segment(s) from " + directory);
+	}
+
+
+	/**
+	 * Append a record
+	 * @param data Data
+	 * @param retain True to retain the record, see retain
+	 * @return Segment number of the record
+	 * @throws IOException Error writing or record larger than a segment
+	 */
+	synchronized long append(byte[] data, boolean retain) throws IOException {
+		// Closed
+		if(closed) {
+			throw new IOException("Journal closed");
+		}
+
+		// Too large
+		if(data.length + 2 * HEADER_SIZE > segmentSize) {
+			throw new IOException("Journal record of " + data.length + " bytes larger than a segment");
+		}
+
+		// New segment, a zero length is left at the end
+		if(buffer.remaining() < data.length + 2 * HEADER_SIZE) {
+			roll();
+		}
+
+		// Write data, then the header to publish it
+		int start = buffer.position();
+		buffer.position(start + HEADER_SIZE);
+		buffer.put(data);
+		buffer.putInt(start, data.length);
+		buffer.putInt(start + 4, checksum(ByteBuffer.wrap(data)));
+
+		// Force to the device
+		if(sync) {
+			buffer.force();
+		}
+
+		// Retain before another append can roll the segment
+		if(retain) {
+			retain(segment);
+		}
+
+		// Return segment
+		return segment;
+	}
+
+
+	/**
+	 * Retain a record of a segment, the segment is not deleted while records are retained
+	 * @param number Segment number
+	 */
+	synchronized void retain(long number) {
+		retained.merge(number, 1, Integer::sum);
+	}
+
+
+	/**
+	 * Release a record of a segment and delete the oldest segments without retained records
+	 * @param number Segment number
+	 */
+	synchronized void release(long number) {
+		retained.computeIfPresent(number, (key, count) -> count - 1);
+		compact();
+	}
+
+
+	/**
+	 * Delete the oldest segments without retained records, the current one excluded
+	 */
+	synchronized void compact() {
+		List<Long> deleted = new ArrayList<>();
+		for(Map.Entry<Long, Integer> entry : retained.entrySet()) {
+			if((entry.getKey() == segment) || (0 < entry.getValue())) {
+				break;
+			}
+			try {
+				Files.deleteIfExists(getFile(entry.getKey()));
+				deleted.add(entry.getKey());
+			} catch (IOException e) {
+				logger.error("Journal segment not deleted " + getFile(entry.getKey()) + ": " + e.getMessage());
+				break;
+			}
+		}
+		for(long number : deleted) {
+			retained.remove(number);
+			logger.trace("Journal segment " + number + " deleted");
+		}
+	}
+
+
+	/**
+	 * Force the current segment to the device and stop appending
+	 */
+	synchronized void close() {
+		if(!closed && (null != buffer)) {
+			buffer.force();
+			unmap(buffer);
+			buffer = null;
+		}
+		closed = true;
+	}
+
+
+	/**
+	 * Start a new segment
+	 * @throws IOException Error creating the segment
+	 */
+	private void roll() throws IOException {
+		// Force the previous segment
+		MappedByteBuffer previous = buffer;
+		if(null != previous) {
+			previous.force();
+		}
+
+		// Next segment
+		long next = retained.isEmpty() ? 1 : (retained.lastKey() + 1);
+		buffer = map(next);
+		segment = next;
+		retained.put(segment, 0);
+
+		// Unmap the previous segment, no longer written
+		if(null != previous) {
+			unmap(previous);
+		}
+
+		// Delete the previous segment if not retained
+		compact();
+	}
+
+
+	/**
+	 * Map a segment, created with the segment size if not found
+	 * @param number Segment number
+	 * @return Buffer positioned at the start
+	 * @throws IOException Error mapping the segment
+	 */
+	private MappedByteBuffer map(long number) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(getFile(number).toFile(), "rw")) {
+			if(file.length() < segmentSize) {
+				file.setLength(segmentSize);
+			}
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+		}
+	}
+
+
+	/**
+	 * Unmap a segment, it must not be used afterwards
+	 * @param mapped Buffer of the segment
+	 */
+	private static void unmap(MappedByteBuffer mapped) {
+		// Unmapped by the garbage collector
+		if(null == invokeCleaner) {
+			return;
+		}
+
+		try {
+			// Unmap now
+			invokeCleaner.invoke(unsafe, mapped);
+		} catch (Exception e) {
+			logger.warn("Journal segment not unmapped: " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Get the file of a segment
+	 * @param number Segment number
+	 * @return File
+	 */
+	private Path getFile(long number) {
+		return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+
+	/**
+	 * Compute the checksum of data
+	 * @param data Data, position and limit are not changed
+	 * @return CRC32
+	 */
+	private static int checksum(ByteBuffer data) {
+		CRC32 crc = new CRC32();
+		crc.update(data.duplicate());
+		return (int) crc.getValue();
+	}
+
+}
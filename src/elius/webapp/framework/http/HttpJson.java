@@ -0,0 +1,90 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Shared JSON mapper of the typed HTTP calls.
+ *
+ * The mapper is thread safe once configured, unknown properties are ignored so that new fields
+ * of the services do not break the callers. Readers are created once for every target type
+ * and recreated when the mapper is configured.
+ *
+ * @author Elia Milioni
+ *
+ */
+public final class HttpJson {
+
+	// Shared mapper
+	private static final ObjectMapper mapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	// Concurrent HashMap of the readers by target type
+	private static final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Not instantiable
+	 */
+	private HttpJson() {
+	}
+
+
+	/**
+	 * Configure the shared mapper, i.e. register modules, at application startup before the calls
+	 * @param configurator Configuration of the mapper
+	 */
+	public static synchronized void configure(Consumer<ObjectMapper> configurator) {
+		// Configure mapper
+		configurator.accept(mapper);
+
+		// Readers created with the previous configuration
+		readers.clear();
+	}
+
+
+	/**
+	 * Get the reader of a class
+	 * @param type Target class
+	 * @return Reader
+	 */
+	static ObjectReader getReader(Class<?> type) {
+		return readers.computeIfAbsent(type, key -> mapper.readerFor(type));
+	}
+
+
+	/**
+	 * Get the reader of a generic type, i.e. new TypeReference&lt;List&lt;Bean&gt;&gt;() {}
+	 * @param type Target type
+	 * @return Reader
+	 */
+	static ObjectReader getReader(TypeReference<?> type) {
+		return readers.computeIfAbsent(type.getType(), key -> mapper.readerFor(type));
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with power of two buckets in microseconds.
+ *
+ * Bucket i counts the samples below 2^i microseconds, percentiles are the upper bound
+ * of their bucket, so they are overestimated by at most a factor of two.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpLatencyHistogram {
+
+	// Number of buckets, the last one counts samples of 2^30 microseconds and more
+	private static final int BUCKETS = 32;
+
+	// Samples by bucket
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+	// Number of samples
+	private final LongAdder count = new LongAdder();
+
+	// Sum of the samples in nanoseconds
+	private final LongAdder sum = new LongAdder();
+
+
+	/**
+	 * Constructor
+	 */
+	public HttpLatencyHistogram() {
+		for(int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+
+	/**
+	 * Record a sample
+	 * @param nanos Latency in nanoseconds
+	 */
+	void record(long nanos) {
+		// Bucket of the sample
+		long micros = Math.max(0, nanos) / 1000;
+		int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+		// Update counters
+		buckets[bucket].increment();
+		count.increment();
+		sum.add(Math.max(0, nanos));
+	}
+
+
+	/**
+	 * Get number of samples
+	 * @return Number of samples
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+
+	/**
+	 * Get mean latency
+	 * @return Mean in milliseconds, 0 without samples
+	 */
+	public double getMeanMillis() {
+		long samples = count.sum();
+		return (0 == samples) ? 0 : (sum.sum() / 1000000.0) / samples;
+	}
+
+
+	/**
+	 * Get a percentile
+	 * @param percentile Percentile, i.e. 0.99
+	 * @return Upper bound of the bucket of the percentile in milliseconds, 0 without samples
+	 */
+	public double getPercentileMillis(double percentile) {
+		// Rank of the percentile
+		long samples = count.sum();
+		if(0 == samples) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * samples);
+
+		// Find bucket
+		long cumulative = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			cumulative += buckets[i].sum();
+			if(cumulative >= rank) {
+				return (1L << i) / 1000.0;
+			}
+		}
+
+		// Concurrent updates, last bucket
+		return (1L << (BUCKETS - 1)) / 1000.0;
+	}
+
+
+	/**
+	 * Remove all samples
+	 */
+	void reset() {
+		for(LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		sum.reset();
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("n(%d) mean(%.2fms) p50(%.2fms) p99(%.2fms)", getCount(), getMeanMillis(), getPercentileMillis(0.5), getPercentileMillis(0.99));
+	}
+
+}
@@ -0,0 +1,509 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Metrics of the outbound HTTP calls of an endpoint, a host and a templated path.
+ *
+ * Numeric, UUID and long hexadecimal path segments are replaced by {id}, beyond http.metrics.maxEndpoints
+ * the paths of a host are aggregated in {other}. Latencies are split in connection acquisition from the pool,
+ * TLS handshake of new connections and time to first byte, from the request sent to the response headers.
+ * Bytes are the request and response bodies. Metrics are collected when http.metrics.enable=y.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpMetrics {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpMetrics.class);
+
+	// Concurrent HashMap of the metrics instances by endpoint
+	private static final ConcurrentHashMap<String, HttpMetrics> instances = new ConcurrentHashMap<>();
+
+	// Sample of the call executed by the current thread
+	private static final ThreadLocal<Sample> current = new ThreadLocal<>();
+
+	// Template of the identifiers in the paths
+	private static final String ID = "{id}";
+
+	// Template of the paths beyond the maximum number of endpoints
+	private static final String OTHER = "/{other}";
+
+	// Host
+	private final String host;
+
+	// Templated path
+	private final String path;
+
+	// Number of requests
+	private final LongAdder requests = new LongAdder();
+
+	// Responses by status class, 1xx to 5xx
+	private final LongAdder[] statusClasses = new LongAdder[6];
+
+	// Requests failed without a response
+	private final LongAdder errors = new LongAdder();
+
+	// Latency from the request to the response headers
+	private final HttpLatencyHistogram latency = new HttpLatencyHistogram();
+
+	// Connection acquisition from the pool
+	private final HttpLatencyHistogram acquisition = new HttpLatencyHistogram();
+
+	// TLS handshake of new connections
+	private final HttpLatencyHistogram handshake = new HttpLatencyHistogram();
+
+	// Time to first byte
+	private final HttpLatencyHistogram firstByte = new HttpLatencyHistogram();
+
+	// Request body bytes
+	private final LongAdder bytesOut = new LongAdder();
+
+	// Response body bytes
+	private final LongAdder bytesIn = new LongAdder();
+
+	// Requests on a reused connection
+	private final LongAdder reused = new LongAdder();
+
+	// Requests on a new connection
+	private final LongAdder connected = new LongAdder();
+
+
+	/**
+	 * Measures of a call, filled by the connector hooks of the executing thread
+	 */
+	static final class Sample {
+
+		// Metrics of the endpoint
+		private final HttpMetrics metrics;
+
+		// Start time in nanoseconds
+		private final long start = System.nanoTime();
+
+		// Connection acquisition in nanoseconds
+		private long acquisition;
+
+		// TLS handshake in nanoseconds, 0 if none
+		private long handshake;
+
+		// Time to first byte in nanoseconds
+		private long firstByte;
+
+		// Sample already recorded
+		private boolean completed;
+
+
+		/**
+		 * Constructor
+		 * @param metrics Metrics of the endpoint
+		 */
+		Sample(HttpMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+
+		/**
+		 * Get metrics of the endpoint
+		 * @return Metrics
+		 */
+		HttpMetrics getMetrics() {
+			return metrics;
+		}
+
+
+		/**
+		 * Add connection acquisition time
+		 * @param nanos Time in nanoseconds
+		 */
+		void addAcquisition(long nanos) {
+			acquisition += nanos;
+		}
+
+
+		/**
+		 * Add TLS handshake time
+		 * @param nanos Time in nanoseconds
+		 */
+		void addHandshake(long nanos) {
+			handshake += nanos;
+		}
+
+
+		/**
+		 * Set time to first byte and connection reuse
+		 * @param nanos Time in nanoseconds
+		 * @param reusedConnection True if the connection was already used
+		 */
+		void setFirstByte(long nanos, boolean reusedConnection) {
+			firstByte = nanos;
+			if(reusedConnection) {
+				metrics.reused.increment();
+			} else {
+				metrics.connected.increment();
+			}
+		}
+
+
+		/**
+		 * Record the response
+		 * @param status HTTP status code
+		 */
+		void complete(int status) {
+			if(completed) {
+				return;
+			}
+			metrics.statusClasses[Math.min(5, Math.max(0, status / 100))].increment();
+			record();
+		}
+
+
+		/**
+		 * Record the failure without a response, i.e. connection errors and timeouts
+		 */
+		void fail() {
+			if(completed) {
+				return;
+			}
+			metrics.errors.increment();
+			record();
+		}
+
+
+		/**
+		 * Record the latencies
+		 */
+		private void record() {
+			completed = true;
+			metrics.latency.record(System.nanoTime() - start);
+			metrics.acquisition.record(acquisition);
+			if(0 < handshake) {
+				metrics.handshake.record(handshake);
+			}
+			if(0 < firstByte) {
+				metrics.firstByte.record(firstByte);
+			}
+		}
+	}
+
+
+	/**
+	 * Constructor
+	 * @param host Host
+	 * @param path Templated path
+	 */
+	private HttpMetrics(String host, String path) {
+		this.host = host;
+		this.path = path;
+		for(int i = 0; i < statusClasses.length; i++) {
+			statusClasses[i] = new LongAdder();
+		}
+	}
+
+
+	/**
+	 * Check if metrics are enabled in the application properties
+	 * @return True if enabled
+	 */
+	static boolean isEnabled() {
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Metrics enabled (y/n)
+		return "y".equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_HTTP_METRICS_ENABLE));
+	}
+
+
+	/**
+	 * Start the sample of a call on the current thread
+	 * @param uri URI called
+	 * @return Sample
+	 */
+	static Sample start(URI uri) {
+		Sample sample = new Sample(getInstance(uri));
+		sample.metrics.requests.increment();
+		current.set(sample);
+		return sample;
+	}
+
+
+	/**
+	 * Get the sample of the call executed by the current thread
+	 * @return Sample or null
+	 */
+	static Sample current() {
+		return current.get();
+	}
+
+
+	/**
+	 * Remove the sample of the current thread
+	 */
+	static void clear() {
+		current.remove();
+	}
+
+
+	/**
+	 * Get or create the metrics of the endpoint of a URI
+	 * @param uri URI
+	 * @return Metrics
+	 */
+	private static HttpMetrics getInstance(URI uri) {
+		// Endpoint
+		String host = String.valueOf(uri.getHost()).toLowerCase();
+		String path = getTemplate(uri.getPath());
+
+		// Already created
+		HttpMetrics metrics = instances.get(host + path);
+		if(null != metrics) {
+			return metrics;
+		}
+
+		// Too many endpoints, aggregate the paths of the host
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+		if(instances.size() >= appProperties.getInt(ApplicationAttributes.PROP_HTTP_METRICS_MAX_ENDPOINTS, ApplicationAttributes.DEFAULT_HTTP_METRICS_MAX_ENDPOINTS)) {
+			path = OTHER;
+		}
+
+		// Create metrics
+		String endpointPath = path;
+		return instances.computeIfAbsent(host + path, key -> new HttpMetrics(host, endpointPath));
+	}
+
+
+	/**
+	 * Replace the identifiers of a path
+	 * @param path Path
+	 * @return Templated path
+	 */
+	static String getTemplate(String path) {
+		// Templated path
+		StringBuilder template = new StringBuilder();
+
+		// Replace identifier segments
+		if(null != path) {
+			for(String segment : path.split("/")) {
+				if(!segment.isEmpty()) {
+					template.append('/').append(isIdentifier(segment) ? ID : segment);
+				}
+			}
+		}
+
+		// Return template
+		return (0 == template.length()) ? "/" : template.toString();
+	}
+
+
+	/**
+	 * Check if a path segment is an identifier: number, UUID or hexadecimal of at least 16 digits
+	 * @param segment Path segment
+	 * @return True if identifier
+	 */
+	private static boolean isIdentifier(String segment) {
+		boolean digits = true;
+		boolean hex = true;
+		for(int i = 0; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+			digits &= Character.isDigit(c);
+			hex &= (Character.digit(c, 16) >= 0) || (c == '-');
+		}
+		return digits || (hex && (segment.length() >= 16));
+	}
+
+
+	/**
+	 * Get the metrics of all endpoints
+	 * @return Metrics
+	 */
+	public static List<HttpMetrics> getInstances() {
+		return new ArrayList<>(instances.values());
+	}
+
+
+	/**
+	 * Remove the metrics of all endpoints
+	 */
+	public static void reset() {
+		instances.clear();
+	}
+
+
+	/**
+	 * Log the metrics of all endpoints
+	 */
+	public static void logSummary() {
+		for(HttpMetrics metrics : getInstances()) {
+			logger.info(metrics);
+		}
+	}
+
+
+	/**
+	 * Add request body bytes
+	 * @param bytes Bytes
+	 */
+	void addBytesOut(long bytes) {
+		bytesOut.add(bytes);
+	}
+
+
+	/**
+	 * Add response body bytes
+	 * @param bytes Bytes
+	 */
+	void addBytesIn(long bytes) {
+		bytesIn.add(bytes);
+	}
+
+
+	/**
+	 * Get host
+	 * @return Host
+	 */
+	public String getHost() {
+		return host;
+	}
+
+
+	/**
+	 * Get templated path
+	 * @return Templated path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+
+	/**
+	 * Get number of requests
+	 * @return Number of requests, retries included
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+
+	/**
+	 * Get number of responses of a status class
+	 * @param statusClass Status class, 1 to 5
+	 * @return Number of responses
+	 */
+	public long getResponses(int statusClass) {
+		return ((statusClass < 1) || (5 < statusClass)) ? 0 : statusClasses[statusClass].sum();
+	}
+
+
+	/**
+	 * Get number of requests failed without a response, i.e. connection errors and timeouts
+	 * @return Number of requests
+	 */
+	public long getErrors() {
+		return errors.sum();
+	}
+
+
+	/**
+	 * Get latency from the request to the response headers
+	 * @return Histogram
+	 */
+	public HttpLatencyHistogram getLatency() {
+		return latency;
+	}
+
+
+	/**
+	 * Get connection acquisition from the pool
+	 * @return Histogram
+	 */
+	public HttpLatencyHistogram getAcquisition() {
+		return acquisition;
+	}
+
+
+	/**
+	 * Get TLS handshake of new connections
+	 * @return Histogram
+	 */
+	public HttpLatencyHistogram getHandshake() {
+		return handshake;
+	}
+
+
+	/**
+	 * Get time to first byte, from the request sent to the response headers
+	 * @return Histogram
+	 */
+	public HttpLatencyHistogram getFirstByte() {
+		return firstByte;
+	}
+
+
+	/**
+	 * Get request body bytes
+	 * @return Bytes
+	 */
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+
+	/**
+	 * Get response body bytes
+	 * @return Bytes
+	 */
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+
+	/**
+	 * Get ratio of the requests on a reused connection
+	 * @return Ratio from 0 to 1
+	 */
+	public double getReuseRatio() {
+		long reusedCount = reused.sum();
+		long total = reusedCount + connected.sum();
+		return (0 == total) ? 0 : (double) reusedCount / total;
+	}
+
+
+	@Override
+	public String toString() {
+		return "Endpoint(" + host + path + ") requests(" + getRequests() + ") 2xx(" + getResponses(2) + ") 3xx(" + getResponses(3)
+				+ ") 4xx(" + getResponses(4) + ") 5xx(" + getResponses(5) + ") errors(" + getErrors() + ") latency[" + latency
+				+ "] acquisition[" + acquisition + "] handshake[" + handshake + "] firstByte[" + firstByte + "] bytesOut(" + getBytesOut()
+				+ ") bytesIn(" + getBytesIn() + ") reuse(" + String.format("%.2f", getReuseRatio()) + ")";
+	}
+
+}
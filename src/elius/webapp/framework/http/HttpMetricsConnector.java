@@ -0,0 +1,124 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.util.concurrent.Future;
+
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+
+/**
+ * Connector completing the metrics sample of the requests failed without a response,
+ * and clearing the sample of the executing thread after every request.
+ *
+ * @author Elia Milioni
+ *
+ */
+final class HttpMetricsConnector implements Connector {
+
+	// Connector executing the requests
+	private final Connector connector;
+
+
+	/**
+	 * Constructor
+	 * @param connector Connector executing the requests
+	 */
+	HttpMetricsConnector(Connector connector) {
+		this.connector = connector;
+	}
+
+
+	/**
+	 * Execute a request
+	 * @param request Request
+	 * @return Response
+	 */
+	@Override
+	public ClientResponse apply(ClientRequest request) {
+		try {
+			// Execute request
+			return connector.apply(request);
+		} catch (RuntimeException | Error e) {
+			// Request failed without a response
+			fail(request);
+			throw e;
+		} finally {
+			// Remove sample of the executing thread
+			HttpMetrics.clear();
+		}
+	}
+
+
+	/**
+	 * Execute a request asynchronously
+	 * @param request Request
+	 * @param callback Callback of the response or the failure
+	 * @return Future
+	 */
+	@Override
+	public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+		try {
+			// Execute request, failure recorded before the callback
+			return connector.apply(request, new AsyncConnectorCallback() {
+				@Override
+				public void response(ClientResponse response) {
+					callback.response(response);
+				}
+
+				@Override
+				public void failure(Throwable failure) {
+					fail(request);
+					callback.failure(failure);
+				}
+			});
+		} finally {
+			// Remove sample of the executing thread
+			HttpMetrics.clear();
+		}
+	}
+
+
+	/**
+	 * Record the failure of a request
+	 * @param request Request
+	 */
+	private static void fail(ClientRequest request) {
+		HttpMetrics.Sample sample = (HttpMetrics.Sample) request.getProperty(HttpMetricsFilter.SAMPLE);
+		if(null != sample) {
+			sample.fail();
+		}
+	}
+
+
+	@Override
+	public String getName() {
+		return connector.getName();
+	}
+
+
+	@Override
+	public void close() {
+		connector.close();
+	}
+
+}
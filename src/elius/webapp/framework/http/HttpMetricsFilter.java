@@ -0,0 +1,119 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Client filter starting and completing the metrics sample of every request, and counting the body bytes.
+ * Requests failed without a response are completed by HttpMetricsConnector.
+ *
+ * @author Elia Milioni
+ *
+ */
+class HttpMetricsFilter implements ClientRequestFilter, ClientResponseFilter, WriterInterceptor {
+
+	// Request property of the sample
+	static final String SAMPLE = HttpMetricsFilter.class.getName() + ".sample";
+
+
+	@Override
+	public void filter(ClientRequestContext requestContext) {
+		// Start sample on the thread executing the request
+		requestContext.setProperty(SAMPLE, HttpMetrics.start(requestContext.getUri()));
+	}
+
+
+	@Override
+	public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+		// Sample of the request
+		HttpMetrics.Sample sample = (HttpMetrics.Sample) requestContext.getProperty(SAMPLE);
+		if(null == sample) {
+			return;
+		}
+
+		// Record response
+		sample.complete(responseContext.getStatus());
+
+		// Count body bytes while read
+		if(responseContext.hasEntity()) {
+			HttpMetrics metrics = sample.getMetrics();
+			responseContext.setEntityStream(new FilterInputStream(responseContext.getEntityStream()) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if(b >= 0) {
+						metrics.addBytesIn(1);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int n = super.read(b, off, len);
+					if(n > 0) {
+						metrics.addBytesIn(n);
+					}
+					return n;
+				}
+			});
+		}
+	}
+
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+		// Sample of the request
+		HttpMetrics.Sample sample = (HttpMetrics.Sample) context.getProperty(SAMPLE);
+		if(null != sample) {
+			// Count body bytes while written
+			HttpMetrics metrics = sample.getMetrics();
+			OutputStream out = context.getOutputStream();
+			context.setOutputStream(new FilterOutputStream(out) {
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					metrics.addBytesOut(1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					metrics.addBytesOut(len);
+				}
+			});
+		}
+
+		// Write body
+		context.proceed();
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Hooks of the Apache connector measuring the phases of the call executed by the current thread.
+ *
+ * @author Elia Milioni
+ *
+ */
+final class HttpMetricsHooks {
+
+	/**
+	 * Not instantiable
+	 */
+	private HttpMetricsHooks() {
+	}
+
+
+	/**
+	 * Connection pool measuring the connection acquisition
+	 * @param registry Socket factories
+	 * @return Connection manager
+	 */
+	static PoolingHttpClientConnectionManager connectionManager(Registry<ConnectionSocketFactory> registry) {
+		return new PoolingHttpClientConnectionManager(registry) {
+			@Override
+			public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+				ConnectionRequest request = super.requestConnection(route, state);
+				return new ConnectionRequest() {
+					@Override
+					public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+						// Wait for a pooled connection
+						long start = System.nanoTime();
+						try {
+							return request.get(timeout, timeUnit);
+						} finally {
+							HttpMetrics.Sample sample = HttpMetrics.current();
+							if(null != sample) {
+								sample.addAcquisition(System.nanoTime() - start);
+							}
+						}
+					}
+
+					@Override
+					public boolean cancel() {
+						return request.cancel();
+					}
+				};
+			}
+		};
+	}
+
+
+	/**
+	 * TLS socket factory measuring the handshake
+	 * @param sslContext SSL context
+	 * @return Socket factory
+	 */
+	static SSLConnectionSocketFactory sslSocketFactory(SSLContext sslContext) {
+		return new SSLConnectionSocketFactory(sslContext) {
+			@Override
+			public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+				// TLS handshake on the connected socket
+				long start = System.nanoTime();
+				try {
+					return super.createLayeredSocket(socket, target, port, context);
+				} finally {
+					HttpMetrics.Sample sample = HttpMetrics.current();
+					if(null != sample) {
+						sample.addHandshake(System.nanoTime() - start);
+					}
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * Request executor measuring the time to first byte and the connection reuse
+	 * @return Request executor
+	 */
+	static HttpRequestExecutor requestExecutor() {
+		return new HttpRequestExecutor() {
+			@Override
+			protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+				// Wait for the response headers, the request is already sent
+				long start = System.nanoTime();
+				HttpResponse response = super.doReceiveResponse(request, conn, context);
+				HttpMetrics.Sample sample = HttpMetrics.current();
+				if(null != sample) {
+					// Connection already used if other requests were sent, this one included
+					sample.setFirstByte(System.nanoTime() - start, conn.getMetrics().getRequestCount() > 1);
+				}
+				return response;
+			}
+		};
+	}
+
+}
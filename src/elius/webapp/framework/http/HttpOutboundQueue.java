@@ -0,0 +1,676 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+import elius.webapp.framework.security.secret.SecretCredentials;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Durable queue of fire and forget POST calls, i.e. notifications and webhooks.
+ *
+ * A message is written to a memory mapped journal (see HttpJournal) and the caller returns
+ * immediately, background workers send the messages of every host in order. A failed message
+ * is retried with exponential backoff while the following messages of its host wait; generic
+ * errors, 408, 429 and 5xx are retried up to http.outbound.maxAttempts, other HTTP errors are
+ * discarded. Up to http.outbound.batchSize sent messages are acknowledged with one journal record.
+ * Messages not acknowledged are sent again at restart, so a message can be received twice.
+ *
+ * Credentials are never written to the journal: they are registered by host with setCredentials,
+ * also after a restart, and read when a message is sent.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpOutboundQueue {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpOutboundQueue.class);
+
+	// Record of a message
+	private static final byte RECORD_MESSAGE = 1;
+
+	// Record of the acknowledged messages
+	private static final byte RECORD_ACK = 2;
+
+	// Queue configured in the application properties
+	private static HttpOutboundQueue defaultQueue;
+
+	// Concurrent HashMap of the credentials by host
+	private static final ConcurrentHashMap<String, SecretCredentials> credentialsByHost = new ConcurrentHashMap<>();
+
+	// Journal
+	private final HttpJournal journal;
+
+	// Workers
+	private final ScheduledThreadPoolExecutor executor;
+
+	// Connection sending the messages
+	private final HttpConnection httpConnection = new HttpConnection();
+
+	// Maximum number of messages acknowledged together
+	private final int batchSize;
+
+	// Maximum number of attempts of a message, first included
+	private final int maxAttempts;
+
+	// Delay of the first retry in milliseconds
+	private final long baseDelayMillis;
+
+	// Maximum delay of a retry in milliseconds
+	private final long maxDelayMillis;
+
+	// Maximum number of messages waiting
+	private final int maxPending;
+
+	// Messages by host
+	private final ConcurrentHashMap<String, Destination> destinations = new ConcurrentHashMap<>();
+
+	// Identifier of the next message
+	private final AtomicLong nextId = new AtomicLong(1);
+
+	// Number of messages waiting
+	private final AtomicInteger pending = new AtomicInteger();
+
+	// Number of messages sent
+	private final AtomicLong sent = new AtomicLong();
+
+	// Number of retries
+	private final AtomicLong retried = new AtomicLong();
+
+	// Number of messages discarded
+	private final AtomicLong discarded = new AtomicLong();
+
+	// Closed
+	private volatile boolean closed;
+
+
+	/**
+	 * Message waiting
+	 */
+	private static final class Message {
+
+		// Identifier
+		private final long id;
+
+		// URI to be called
+		private final String uri;
+
+		// Host
+		private final String host;
+
+		// True to trust all certificates
+		private final boolean trustAllCertificates;
+
+		// Content type
+		private final String content;
+
+		// Accept type
+		private final String accept;
+
+		// Body
+		private final byte[] body;
+
+		// Journal segment
+		private long segment;
+
+		// Failed attempts
+		private int attempts;
+
+
+		/**
+		 * Constructor
+		 * @param id Identifier
+		 * @param uri URI to be called
+		 * @param host Host
+		 * @param trustAllCertificates True to trust all certificates
+		 * @param content Content type
+		 * @param accept Accept type
+		 * @param body Body
+		 */
+		Message(long id, String uri, String host, boolean trustAllCertificates, String content, String accept, byte[] body) {
+			this.id = id;
+			this.uri = uri;
+			this.host = host;
+			this.trustAllCertificates = trustAllCertificates;
+			this.content = content;
+			this.accept = accept;
+			this.body = body;
+		}
+	}
+
+
+	/**
+	 * Messages of a host, sent in order
+	 */
+	private static final class Destination {
+
+		// Messages waiting, the first one is being sent
+		private final ArrayDeque<Message> messages = new ArrayDeque<>();
+
+		// A worker is sending or a retry is scheduled
+		private boolean active;
+	}
+
+
+	/**
+	 * Constructor, the messages found in the journal are sent again
+	 * @param directory Directory of the journal
+	 * @param segmentSize Size of a journal segment in bytes
+	 * @param sync True to force every message to the device
+	 * @param threads Number of workers
+	 * @param batchSize Maximum number of messages acknowledged together
+	 * @param maxAttempts Maximum number of attempts of a message, first included
+	 * @param baseDelayMillis Delay of the first retry in milliseconds
+	 * @param maxDelayMillis Maximum delay of a retry in milliseconds
+	 * @param maxPending Maximum number of messages waiting
+	 * @throws IOException Error reading the journal
+	 */
+	public HttpOutboundQueue(Path directory, int segmentSize, boolean sync, int threads, int batchSize, int maxAttempts, long baseDelayMillis, long maxDelayMillis, int maxPending) throws IOException {
+		this.batchSize = Math.max(1, batchSize);
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(1, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+		this.maxPending = Math.max(1, maxPending);
+
+		// Workers
+		AtomicInteger counter = new AtomicInteger();
+		this.executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, "http-outbound-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Open journal and recover the messages not acknowledged
+		this.journal = new HttpJournal(directory, segmentSize, sync);
+		recover();
+	}
+
+
+	/**
+	 * Get the queue configured in the application properties
+	 * @return Queue or null if the queue is not enabled or the journal cannot be opened
+	 */
+	public static synchronized HttpOutboundQueue getDefault() {
+		// Already created
+		if(null != defaultQueue) {
+			return defaultQueue;
+		}
+
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Queue not enabled
+		if(!"y".equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_HTTP_OUTBOUND_ENABLE))) {
+			return null;
+		}
+
+		// Directory of the journal
+		String directory = appProperties.get(ApplicationAttributes.PROP_HTTP_OUTBOUND_PATH,
+				System.getProperty(ApplicationAttributes.APP_PATH) + "/" + ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_PATH);
+
+		try {
+			// Create queue
+			defaultQueue = new HttpOutboundQueue(Paths.get(directory),
+					appProperties.getInt(ApplicationAttributes.PROP_HTTP_OUTBOUND_SEGMENT_SIZE, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_SEGMENT_SIZE),
+					"y".equalsIgnoreCase(appProperties.get(ApplicationAttributes.PROP_HTTP_OUTBOUND_SYNC)),
+					appProperties.getInt(ApplicationAttributes.PROP_HTTP_OUTBOUND_THREADS, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_THREADS),
+					appProperties.getInt(ApplicationAttributes.PROP_HTTP_OUTBOUND_BATCH_SIZE, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_BATCH_SIZE),
+					appProperties.getInt(ApplicationAttributes.PROP_HTTP_OUTBOUND_MAX_ATTEMPTS, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_MAX_ATTEMPTS),
+					appProperties.getLong(ApplicationAttributes.PROP_HTTP_OUTBOUND_BASE_DELAY, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_BASE_DELAY),
+					appProperties.getLong(ApplicationAttributes.PROP_HTTP_OUTBOUND_MAX_DELAY, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_MAX_DELAY),
+					appProperties.getInt(ApplicationAttributes.PROP_HTTP_OUTBOUND_MAX_PENDING, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_MAX_PENDING));
+		} catch (IOException e) {
+			// Log error
+			logger.error("Outbound queue not opened in " + directory);
+			// Log message
+			logger.error(e.getMessage());
+		}
+
+		// Return queue
+		return defaultQueue;
+	}
+
+
+	/**
+	 * Close the default queue if created, i.e. at application shutdown, see HttpClientFactory.close
+	 */
+	public static void closeDefault() {
+		// Default queue
+		HttpOutboundQueue queue;
+		synchronized(HttpOutboundQueue.class) {
+			queue = defaultQueue;
+		}
+
+		// Not created
+		if(null == queue) {
+			return;
+		}
+
+		// Close queue
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+		queue.close(appProperties.getLong(ApplicationAttributes.PROP_HTTP_OUTBOUND_CLOSE_TIMEOUT, ApplicationAttributes.DEFAULT_HTTP_OUTBOUND_CLOSE_TIMEOUT));
+	}
+
+
+	/**
+	 * Set the credentials of the messages to a host, they are kept only in memory
+	 * @param host Host
+	 * @param credentials Credentials or null for unauthenticated connection
+	 */
+	public static void setCredentials(String host, SecretCredentials credentials) {
+		if(null == credentials) {
+			credentialsByHost.remove(host.toLowerCase());
+		} else {
+			credentialsByHost.put(host.toLowerCase(), credentials);
+		}
+	}
+
+
+	/**
+	 * Queue a POST call
+	 * @param uri URI to be called
+	 * @param trustAllCertificates True to trust all certificates
+	 * @param body Body
+	 * @param content Set content type
+	 * @param accept Set accept type
+	 * @return True if queued, false if the queue is closed or full or the journal cannot be written
+	 */
+	public boolean post(String uri, boolean trustAllCertificates, String body, MediaType content, MediaType accept) {
+		// Log post
+		logger.debug("POST queued URI(" + uri + ") TrustAll(" + trustAllCertificates + ")");
+
+		// Closed
+		if(closed) {
+			logger.error("Outbound queue closed, message to " + uri + " rejected");
+			return false;
+		}
+
+		// Host of the URI
+		String host;
+		try {
+			host = URI.create(uri).getHost();
+		} catch (IllegalArgumentException e) {
+			host = null;
+		}
+		if(null == host) {
+			logger.error("Invalid URI " + uri + ", message rejected");
+			return false;
+		}
+
+		// Full
+		if(pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			logger.error("Outbound queue full, message to " + uri + " rejected");
+			return false;
+		}
+
+		// Queue message
+		Destination destination = destinations.computeIfAbsent(host.toLowerCase(), key -> new Destination());
+		boolean start;
+		synchronized(destination) {
+			// Write message, in the order of the host
+			Message message = new Message(nextId.getAndIncrement(), uri, host.toLowerCase(), trustAllCertificates,
+					content.toString(), accept.toString(), body.getBytes(StandardCharsets.UTF_8));
+			try {
+				message.segment = journal.append(encode(message), true);
+			} catch (IOException e) {
+				pending.decrementAndGet();
+				logger.error("Outbound message to " + uri + " not written: " + e.getMessage());
+				return false;
+			}
+
+			// Add message
+			destination.messages.add(message);
+			start = !destination.active;
+			destination.active = true;
+		}
+
+		// Start a worker
+		if(start) {
+			executor.execute(() -> drain(destination));
+		}
+
+		// Queued
+		return true;
+	}
+
+
+	/**
+	 * Send a batch of messages of a host and acknowledge them
+	 * @param destination Messages of the host
+	 */
+	private void drain(Destination destination) {
+		// Closed, the messages are sent at restart
+		if(closed) {
+			return;
+		}
+
+		// First messages, removed when acknowledged
+		List<Message> batch = new ArrayList<>(batchSize);
+		synchronized(destination) {
+			Iterator<Message> iterator = destination.messages.iterator();
+			while(iterator.hasNext() && (batch.size() < batchSize)) {
+				batch.add(iterator.next());
+			}
+			if(batch.isEmpty()) {
+				destination.active = false;
+				return;
+			}
+		}
+
+		// Send in order, stop at the first message to be retried
+		List<Message> done = new ArrayList<>(batch.size());
+		long delay = -1;
+		for(Message message : batch) {
+			if(closed) {
+				break;
+			}
+
+			// Send message
+			HttpResult result = send(message);
+			if(0 == result.getRc()) {
+				sent.incrementAndGet();
+				done.add(message);
+				continue;
+			}
+
+			// Discard message
+			message.attempts++;
+			if(!isRetryable(result.getStatus()) || (message.attempts >= maxAttempts)) {
+				discarded.incrementAndGet();
+				logger.error("Outbound message discarded URI(" + message.uri + ") Status(" + result.getStatus() + ") after " + message.attempts + " attempt(s)");
+				done.add(message);
+				continue;
+			}
+
+			// Retry with exponential delay and full jitter
+			delay = Math.min(maxDelayMillis, baseDelayMillis << Math.min(30, message.attempts - 1));
+			delay = ThreadLocalRandom.current().nextLong(delay + 1);
+			retried.incrementAndGet();
+			logger.warn("Outbound message to " + message.host + " retried in " + delay + "ms, attempt " + message.attempts + " of " + (maxAttempts - 1));
+			break;
+		}
+
+		// Acknowledge
+		acknowledge(destination, done);
+
+		// Next batch, after the other hosts, or retry
+		if(!closed) {
+			if(delay < 0) {
+				executor.execute(() -> drain(destination));
+			} else {
+				executor.schedule(() -> drain(destination), delay, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+
+	/**
+	 * Send a message
+	 * @param message Message
+	 * @return Result
+	 */
+	private HttpResult send(Message message) {
+		MediaType content = MediaType.valueOf(message.content);
+		return httpConnection.invokeAsync(HttpMethod.POST, message.uri, credentialsByHost.get(message.host), message.trustAllCertificates,
+				Entity.entity(message.body, content), content, MediaType.valueOf(message.accept)).join();
+	}
+
+
+	/**
+	 * Check if a failed message can be retried
+	 * @param status HTTP status code, 0 for generic errors
+	 * @return True for generic errors, timeouts, throttling and server errors
+	 */
+	private static boolean isRetryable(int status) {
+		return (0 == status) || (408 == status) || (429 == status) || (500 <= status);
+	}
+
+
+	/**
+	 * Acknowledge the first messages of a host with one journal record
+	 * @param destination Messages of the host
+	 * @param done Messages sent or discarded, in order
+	 */
+	private void acknowledge(Destination destination, List<Message> done) {
+		// Nothing to acknowledge
+		if(done.isEmpty()) {
+			return;
+		}
+
+		// Write acknowledgement, without it the messages are sent again at restart
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + 8 * done.size());
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_ACK);
+			out.writeInt(done.size());
+			for(Message message : done) {
+				out.writeLong(message.id);
+			}
+			journal.append(bytes.toByteArray(), false);
+		} catch (IOException e) {
+			logger.error("Outbound acknowledgement not written, " + done.size() + " message(s) will be sent again: " + e.getMessage());
+		}
+
+		// Remove messages
+		synchronized(destination) {
+			for(int i = 0; i < done.size(); i++) {
+				destination.messages.pollFirst();
+			}
+		}
+
+		// Release their journal records
+		for(Message message : done) {
+			journal.release(message.segment);
+		}
+		pending.addAndGet(-done.size());
+	}
+
+
+	/**
+	 * Recover the messages not acknowledged, in the order of the journal
+	 * @throws IOException Error reading the journal
+	 */
+	private void recover() throws IOException {
+		// Messages by identifier
+		LinkedHashMap<Long, Message> messages = new LinkedHashMap<>();
+		AtomicLong lastId = new AtomicLong();
+
+		// Replay journal
+		journal.replay((segment, data) -> {
+			try {
+				byte[] bytes = new byte[data.remaining()];
+				data.get(bytes);
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+				byte type = in.readByte();
+				if(RECORD_MESSAGE == type) {
+					Message message = decode(in);
+					message.segment = segment;
+					messages.put(message.id, message);
+					lastId.accumulateAndGet(message.id, Math::max);
+				} else if(RECORD_ACK == type) {
+					for(int i = in.readInt(); i > 0; i--) {
+						messages.remove(in.readLong());
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Outbound journal record ignored: " + e.getMessage());
+			}
+		});
+
+		// Queue messages
+		nextId.set(lastId.get() + 1);
+		for(Message message : messages.values()) {
+			journal.retain(message.segment);
+			destinations.computeIfAbsent(message.host, key -> new Destination()).messages.add(message);
+		}
+		pending.set(messages.size());
+
+		// Delete the segments fully acknowledged
+		journal.compact();
+
+		// Start workers
+		for(Destination destination : destinations.values()) {
+			destination.active = true;
+			executor.execute(() -> drain(destination));
+		}
+
+		// Log recovery
+		if(!messages.isEmpty()) {
+			logger.info("Outbound queue recovered " + messages.size() + " message(s)");
+		}
+	}
+
+
+	/**
+	 * Encode a message record
+	 * @param message Message
+	 * @return Record
+	 * @throws IOException Error encoding
+	 */
+	private static byte[] encode(Message message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + message.uri.length() + message.body.length);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_MESSAGE);
+		out.writeLong(message.id);
+		out.writeBoolean(message.trustAllCertificates);
+		out.writeUTF(message.uri);
+		out.writeUTF(message.host);
+		out.writeUTF(message.content);
+		out.writeUTF(message.accept);
+		out.writeInt(message.body.length);
+		out.write(message.body);
+		return bytes.toByteArray();
+	}
+
+
+	/**
+	 * Decode a message record
+	 * @param in Record after the type
+	 * @return Message
+	 * @throws IOException Error decoding
+	 */
+	private static Message decode(DataInputStream in) throws IOException {
+		long id = in.readLong();
+		boolean trustAllCertificates = in.readBoolean();
+		String uri = in.readUTF();
+		String host = in.readUTF();
+		String content = in.readUTF();
+		String accept = in.readUTF();
+		byte[] body = new byte[in.readInt()];
+		in.readFully(body);
+		return new Message(id, uri, host, trustAllCertificates, content, accept, body);
+	}
+
+
+	/**
+	 * Stop the workers and close the journal, the messages waiting are sent at restart
+	 * @param timeoutMillis Time to wait the messages being sent in milliseconds
+	 */
+	public void close(long timeoutMillis) {
+		// Stop workers
+		closed = true;
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// Close journal
+		journal.close();
+
+		// Forget the default queue
+		synchronized(HttpOutboundQueue.class) {
+			if(this == defaultQueue) {
+				defaultQueue = null;
+			}
+		}
+
+		// Log closure
+		logger.debug("Outbound queue closed with " + pending.get() + " message(s) waiting");
+	}
+
+
+	/**
+	 * Get number of messages waiting
+	 * @return Messages waiting
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+
+	/**
+	 * Get number of messages sent
+	 * @return Messages sent
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+
+	/**
+	 * Get number of retries
+	 * @return Retries
+	 */
+	public long getRetried() {
+		return retried.get();
+	}
+
+
+	/**
+	 * Get number of messages discarded after HTTP errors or too many attempts
+	 * @return Messages discarded
+	 */
+	public long getDiscarded() {
+		return discarded.get();
+	}
+
+}
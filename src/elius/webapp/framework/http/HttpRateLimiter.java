@@ -0,0 +1,344 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Lock free token bucket limiting the rate of the calls to a host.
+ *
+ * Implemented as a generic cell rate algorithm: a single theoretical arrival time is moved forward
+ * by compare and set, calls within the burst start immediately, the others wait up to maxWaitMillis
+ * or are rejected. A Retry-After of a 429 or 503 response moves the arrival time after the requested
+ * delay, so the following calls wait for it and then restart at the configured rate.
+ *
+ * Settings are read from http.rateLimit.* and can be overridden for a host with http.host.[host].*
+ *
+ * @author Elia Milioni
+ *
+ */
+public class HttpRateLimiter {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(HttpRateLimiter.class);
+
+	// Concurrent HashMap of the limiter instances by host
+	private static final ConcurrentHashMap<String, HttpRateLimiter> instances = new ConcurrentHashMap<>();
+
+	// Enabled in the application properties, resolved on first use to keep the lookup out of every call
+	private static volatile Boolean enabled;
+
+	// Host
+	private final String host;
+
+	// Interval between calls in nanoseconds
+	private final long interval;
+
+	// Time the burst takes in nanoseconds
+	private final long burstTime;
+
+	// Maximum wait in nanoseconds
+	private final long maxWaitNanos;
+
+	// Theoretical arrival time of the last reserved call in nanoseconds
+	private final AtomicLong arrival;
+
+	// Number of calls started immediately
+	private final AtomicLong immediate = new AtomicLong();
+
+	// Number of calls delayed
+	private final AtomicLong delayed = new AtomicLong();
+
+	// Number of calls rejected
+	private final AtomicLong rejected = new AtomicLong();
+
+	// Number of throttled responses with Retry-After
+	private final AtomicLong throttled = new AtomicLong();
+
+
+	/**
+	 * Constructor
+	 * @param host Host
+	 * @param rate Calls per second
+	 * @param burst Calls started at once after an idle time
+	 * @param maxWaitMillis Maximum wait in milliseconds, 0 to reject immediately
+	 */
+	public HttpRateLimiter(String host, double rate, int burst, long maxWaitMillis) {
+		this.host = host;
+		this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(0.001, rate)));
+		this.burstTime = this.interval * Math.max(1, burst);
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+		this.arrival = new AtomicLong(System.nanoTime());
+	}
+
+
+	/**
+	 * Get the limiter configured in the application properties for the host of a URI
+	 * @param uri URI
+	 * @return Limiter or null if limiters are not enabled or the URI has no host
+	 */
+	public static HttpRateLimiter getDefault(String uri) {
+		// Resolve enablement once
+		if(null == enabled) {
+			enabled = "y".equalsIgnoreCase(PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE).get(ApplicationAttributes.PROP_HTTP_RATE_LIMIT_ENABLE));
+		}
+
+		// Limiters not enabled
+		if(!enabled) {
+			return null;
+		}
+
+		// Host of the URI
+		String host;
+		try {
+			host = URI.create(uri).getHost();
+		} catch (IllegalArgumentException e) {
+			host = null;
+		}
+		if(null == host) {
+			return null;
+		}
+
+		// Already created
+		HttpRateLimiter limiter = instances.get(host.toLowerCase());
+		if(null != limiter) {
+			return limiter;
+		}
+
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Get or create the limiter of the host
+		return instances.computeIfAbsent(host.toLowerCase(), key -> new HttpRateLimiter(key,
+				getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_RATE_LIMIT_RATE, ApplicationAttributes.DEFAULT_HTTP_RATE_LIMIT_RATE),
+				(int) getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_RATE_LIMIT_BURST, ApplicationAttributes.DEFAULT_HTTP_RATE_LIMIT_BURST),
+				(long) getDouble(appProperties, key, ApplicationAttributes.PROP_HTTP_RATE_LIMIT_MAX_WAIT, ApplicationAttributes.DEFAULT_HTTP_RATE_LIMIT_MAX_WAIT)));
+	}
+
+
+	/**
+	 * Get a setting of a host, the general one if not overridden
+	 * @param appProperties Application properties
+	 * @param host Host
+	 * @param property General property
+	 * @param defaultValue Default value
+	 * @return Value
+	 */
+	private static double getDouble(PropertiesManager appProperties, String host, String property, double defaultValue) {
+		// Setting of the host, then the general one
+		String name = property.substring(ApplicationAttributes.PROP_HTTP_RATE_LIMIT_PREFIX.length());
+		String value = appProperties.get(ApplicationAttributes.PROP_HTTP_HOST_PREFIX + host + "." + name);
+		if(null == value) {
+			value = appProperties.get(property);
+		}
+
+		// Parse value
+		try {
+			return (null == value) ? defaultValue : Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			logger.error("Invalid value of " + property + " for host " + host + ": " + value);
+			return defaultValue;
+		}
+	}
+
+
+	/**
+	 * Reserve a call without waiting
+	 * @return Wait before the call in nanoseconds, -1 if rejected
+	 */
+	long reserve() {
+		while(true) {
+			// Arrival time of this call
+			long now = System.nanoTime();
+			long current = arrival.get();
+			long next = Math.max(current, now) + interval;
+
+			// Wait beyond the burst
+			long wait = Math.max(0, next - burstTime - now);
+
+			// Too long, reject without reserving
+			if(wait > maxWaitNanos) {
+				rejected.incrementAndGet();
+				logger.warn("Call to " + host + " rejected by the rate limit, wait of " + TimeUnit.NANOSECONDS.toMillis(wait) + "ms");
+				return -1;
+			}
+
+			// Reserve, retry if another call reserved in the meantime
+			if(arrival.compareAndSet(current, next)) {
+				if(0 == wait) {
+					immediate.incrementAndGet();
+				} else {
+					delayed.incrementAndGet();
+				}
+				return wait;
+			}
+		}
+	}
+
+
+	/**
+	 * Check if a call would start within the maximum wait, without reserving
+	 * @return True if the call would not be rejected
+	 */
+	boolean isAvailable() {
+		long now = System.nanoTime();
+		return (Math.max(arrival.get(), now) + interval - burstTime - now) <= maxWaitNanos;
+	}
+
+
+	/**
+	 * Reserve a call and wait for its time
+	 * @return True if the call can start, false if rejected
+	 */
+	boolean acquire() {
+		// Reserve
+		long wait = reserve();
+		if(wait < 0) {
+			return false;
+		}
+
+		try {
+			// Wait for the reserved time
+			if(wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		// Start call
+		return true;
+	}
+
+
+	/**
+	 * Give back the reservation of a call not sent, i.e. rejected by the policy of the host
+	 */
+	void cancel() {
+		arrival.addAndGet(-interval);
+	}
+
+
+	/**
+	 * Honor the Retry-After of a throttled response
+	 * @param status HTTP status code
+	 * @param retryAfter Retry-After header, seconds or HTTP date, or null
+	 */
+	void update(int status, String retryAfter) {
+		// Only throttling responses with a delay
+		if(((429 != status) && (503 != status)) || (null == retryAfter)) {
+			return;
+		}
+
+		// Requested delay
+		long delayMillis = parseRetryAfter(retryAfter.trim());
+		if(delayMillis <= 0) {
+			return;
+		}
+
+		// First call allowed after the delay, the following at the configured rate
+		throttled.incrementAndGet();
+		long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		arrival.accumulateAndGet(until + burstTime - interval, Math::max);
+
+		// Log throttling
+		logger.warn("Calls to " + host + " throttled for " + delayMillis + "ms");
+	}
+
+
+	/**
+	 * Parse a Retry-After header
+	 * @param retryAfter Seconds or HTTP date
+	 * @return Delay in milliseconds, 0 if not valid
+	 */
+	private static long parseRetryAfter(String retryAfter) {
+		try {
+			// Delay in seconds
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+		} catch (NumberFormatException e) {
+			try {
+				// HTTP date
+				return Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME)).toMillis();
+			} catch (Exception ex) {
+				return 0;
+			}
+		}
+	}
+
+
+	/**
+	 * Get host
+	 * @return Host
+	 */
+	public String getHost() {
+		return host;
+	}
+
+
+	/**
+	 * Get number of calls started immediately
+	 * @return Number of calls
+	 */
+	public long getImmediate() {
+		return immediate.get();
+	}
+
+
+	/**
+	 * Get number of calls delayed
+	 * @return Number of calls
+	 */
+	public long getDelayed() {
+		return delayed.get();
+	}
+
+
+	/**
+	 * Get number of calls rejected
+	 * @return Number of calls
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+
+	/**
+	 * Get number of throttled responses with Retry-After
+	 * @return Number of responses
+	 */
+	public long getThrottled() {
+		return throttled.get();
+	}
+
+}
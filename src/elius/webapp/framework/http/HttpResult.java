@@ -0,0 +1,171 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.http;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Immutable result of an HTTP call: return code, status, headers and body.
+ *
+ * The return code follows HttpConnection: 0 Successful, 1 HTTP Error, 2 Generic Error.
+ * For generic errors the status is 0 and the error message is set.
+ *
+ * @author Elia Milioni
+ *
+ */
+public final class HttpResult {
+
+	// Return code
+	private final int rc;
+
+	// HTTP status code, 0 if no response
+	private final int status;
+
+	// Headers by case insensitive name
+	private final Map<String, List<String>> headers;
+
+	// Body
+	private final String body;
+
+	// Error message of a generic error
+	private final String error;
+
+
+	/**
+	 * Constructor
+	 * @param rc Return code
+	 * @param status HTTP status code
+	 * @param headers Headers
+	 * @param body Body
+	 * @param error Error message
+	 */
+	HttpResult(int rc, int status, Map<String, List<String>> headers, String body, String error) {
+		this.rc = rc;
+		this.status = status;
+		this.headers = headers;
+		this.body = body;
+		this.error = error;
+	}
+
+
+	/**
+	 * Create the result of a response, the body is read and the response closed
+	 * @param response Response
+	 * @return Result
+	 */
+	static HttpResult of(Response response) {
+		try (Response r = response) {
+			// Read body
+			String body = r.readEntity(String.class);
+
+			// Copy headers
+			Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			for(Map.Entry<String, List<String>> entry : r.getStringHeaders().entrySet()) {
+				headers.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+			}
+
+			// Check HTTP status code
+			int status = r.getStatus();
+			int rc = ((status < 200) || (208 < status)) ? 1 : 0;
+
+			// Return result
+			return new HttpResult(rc, status, Collections.unmodifiableMap(headers), body, null);
+		}
+	}
+
+
+	/**
+	 * Create the result of a generic error
+	 * @param error Error
+	 * @return Result
+	 */
+	static HttpResult failed(Throwable error) {
+		// Cause of the wrapping exceptions
+		Throwable cause = error;
+		while((null != cause.getCause()) && (cause != cause.getCause())) {
+			cause = cause.getCause();
+		}
+
+		// Return result
+		return new HttpResult(2, 0, Collections.emptyMap(), "", String.valueOf(cause.getMessage()));
+	}
+
+
+	/**
+	 * Get return code
+	 * @return 0 Successful, 1 HTTP Error, 2 Generic Error
+	 */
+	public int getRc() {
+		return rc;
+	}
+
+
+	/**
+	 * Get HTTP status code
+	 * @return Status code, 0 if no response was received
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+
+	/**
+	 * Get all headers
+	 * @return Unmodifiable headers by case insensitive name
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return headers;
+	}
+
+
+	/**
+	 * Get the first value of a header
+	 * @param name Header name, case insensitive
+	 * @return Value or null if not found
+	 */
+	public String getHeader(String name) {
+		List<String> values = headers.get(name);
+		return ((null == values) || values.isEmpty()) ? null : values.get(0);
+	}
+
+
+	/**
+	 * Get body
+	 * @return Body, empty for generic errors
+	 */
+	public String getBody() {
+		return body;
+	}
+
+
+	/**
+	 * Get error message
+	 * @return Error message of a generic error, null otherwise
+	 */
+	public String getError() {
+		return error;
+	}
+
+}
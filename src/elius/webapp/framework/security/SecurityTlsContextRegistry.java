@@ -0,0 +1,269 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+package elius.webapp.framework.security;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import elius.webapp.framework.application.ApplicationAttributes;
+import elius.webapp.framework.properties.PropertiesManager;
+import elius.webapp.framework.properties.PropertiesManagerFactory;
+
+/**
+ * Shared SSL contexts of the HTTP and LDAP clients, built once for every trust mode.
+ *
+ * Reusing the context keeps its client session cache, so new connections to the same server
+ * resume the TLS session instead of a full handshake. The JVM defaults (SSLContext.getDefault,
+ * HttpsURLConnection) are never changed. The default trust mode uses security.tls.trustStore
+ * when set, the JVM trust store otherwise.
+ * HTTP contexts use security.tls.protocol (TLS) and send the client certificate of javax.net.ssl.keyStore
+ * as the JVM default context does, LDAP contexts use ldap.tls.protocol (TLSv1.2) without client certificate.
+ *
+ * @author Elia Milioni
+ *
+ */
+public class SecurityTlsContextRegistry {
+
+	// Get logger
+	private static Logger logger = LogManager.getLogger(SecurityTlsContextRegistry.class);
+
+	// Key of the trust all context
+	private static final String KEY_TRUST_ALL = "trustAll";
+
+	// Key of the default context
+	private static final String KEY_DEFAULT = "default";
+
+	// Prefix of the key of a trust store context
+	private static final String KEY_TRUST_STORE = "trustStore:";
+
+	// Prefix of the key of a LDAP context
+	private static final String KEY_LDAP = "ldap:";
+
+	// Concurrent HashMap of the context instances by trust mode
+	private static final ConcurrentHashMap<String, SSLContext> instances = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Get the HTTP context of a trust mode
+	 * @param trustAllCertificates True to trust all certificates, false for the default trust store
+	 * @return SSL context
+	 */
+	public static SSLContext getInstance(boolean trustAllCertificates) {
+		return instances.computeIfAbsent(trustAllCertificates ? KEY_TRUST_ALL : KEY_DEFAULT, key -> {
+			// Load application properties
+			PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+			// HTTP protocol
+			String protocol = appProperties.get(ApplicationAttributes.PROP_SECURITY_TLS_PROTOCOL, ApplicationAttributes.DEFAULT_SECURITY_TLS_PROTOCOL);
+
+			// Trust all certificates
+			if(trustAllCertificates) {
+				return create(protocol, null, new TrustManager[] {new SecurityTrustAllCertificates()});
+			}
+
+			// Default trust mode, client certificate of the JVM
+			return create(protocol, loadJvmKeyManagers(), getDefaultTrustManagers(appProperties));
+		});
+	}
+
+
+	/**
+	 * Get the LDAP context of a trust mode
+	 * @param trustAllCertificates True to trust all certificates, false for the default trust store
+	 * @return SSL context
+	 */
+	public static SSLContext getLdapInstance(boolean trustAllCertificates) {
+		return instances.computeIfAbsent(KEY_LDAP + (trustAllCertificates ? KEY_TRUST_ALL : KEY_DEFAULT), key -> {
+			// Load application properties
+			PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+			// LDAP protocol
+			String protocol = appProperties.get(ApplicationAttributes.PROP_LDAP_TLS_PROTOCOL, ApplicationAttributes.DEFAULT_LDAP_TLS_PROTOCOL);
+
+			// Trust all certificates or default trust mode
+			return create(protocol, null, trustAllCertificates ? new TrustManager[] {new SecurityTrustAllCertificates()} : getDefaultTrustManagers(appProperties));
+		});
+	}
+
+
+	/**
+	 * Get the context of a trust store
+	 * @param trustStore Trust store file
+	 * @param type Trust store type, i.e. PKCS12 or JKS
+	 * @param password Trust store password
+	 * @return SSL context
+	 */
+	public static SSLContext getInstance(String trustStore, String type, String password) {
+		return instances.computeIfAbsent(KEY_TRUST_STORE + type + ":" + Paths.get(trustStore).toAbsolutePath().normalize(),
+				key -> create(PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE).get(ApplicationAttributes.PROP_SECURITY_TLS_PROTOCOL, ApplicationAttributes.DEFAULT_SECURITY_TLS_PROTOCOL),
+						loadJvmKeyManagers(), loadTrustManagers(trustStore, type, password)));
+	}
+
+
+	/**
+	 * Remove all contexts, i.e. after the trust store was replaced
+	 */
+	public static void clear() {
+		instances.clear();
+	}
+
+
+	/**
+	 * Get the trust managers of the default trust mode
+	 * @param appProperties Application properties
+	 * @return Trust managers of security.tls.trustStore or null for the JVM trust store
+	 */
+	private static TrustManager[] getDefaultTrustManagers(PropertiesManager appProperties) {
+		// Configured trust store, JVM trust store if not set
+		String trustStore = appProperties.get(ApplicationAttributes.PROP_SECURITY_TLS_TRUSTSTORE);
+		if((null == trustStore) || trustStore.isBlank()) {
+			return null;
+		}
+		return loadTrustManagers(trustStore,
+				appProperties.get(ApplicationAttributes.PROP_SECURITY_TLS_TRUSTSTORE_TYPE, ApplicationAttributes.DEFAULT_SECURITY_TLS_TRUSTSTORE_TYPE),
+				appProperties.get(ApplicationAttributes.PROP_SECURITY_TLS_TRUSTSTORE_PASSWORD, ""));
+	}
+
+
+	/**
+	 * Create a context
+	 * @param protocol TLS protocol
+	 * @param keyManagers Key managers or null to send no client certificate
+	 * @param trustManagers Trust managers or null for the JVM trust store
+	 * @return SSL context
+	 */
+	private static SSLContext create(String protocol, KeyManager[] keyManagers, TrustManager[] trustManagers) {
+		// Load application properties
+		PropertiesManager appProperties = PropertiesManagerFactory.getInstance(ApplicationAttributes.APP_PROPERTIES_FILE);
+
+		// Settings
+		int sessionCacheSize = appProperties.getInt(ApplicationAttributes.PROP_SECURITY_TLS_SESSION_CACHE_SIZE, ApplicationAttributes.DEFAULT_SECURITY_TLS_SESSION_CACHE_SIZE);
+		int sessionTimeout = appProperties.getInt(ApplicationAttributes.PROP_SECURITY_TLS_SESSION_TIMEOUT, ApplicationAttributes.DEFAULT_SECURITY_TLS_SESSION_TIMEOUT);
+
+		try {
+			// Get context instance
+			SSLContext sslContext = SSLContext.getInstance(protocol);
+			// Set key and trust managers, default secure random
+			sslContext.init(keyManagers, trustManagers, null);
+
+			// Sessions kept for resumption
+			SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+			sessionContext.setSessionCacheSize(sessionCacheSize);
+			sessionContext.setSessionTimeout(sessionTimeout);
+
+			// Log creation
+			logger.debug("SSL context created protocol(" + protocol + ") sessionCacheSize(" + sessionCacheSize + ") sessionTimeout(" + sessionTimeout + ")");
+
+			// Return context
+			return sslContext;
+		} catch (Exception e) {
+			// Protocol not available
+			throw new IllegalStateException("SSL context not available", e);
+		}
+	}
+
+
+	/**
+	 * Load the key managers of the JVM key store as the default context does
+	 * (javax.net.ssl.keyStore, keyStoreType, keyStorePassword, keyStoreProvider)
+	 * @return Key managers or null if the key store is not set
+	 */
+	private static KeyManager[] loadJvmKeyManagers() {
+		// Key store not set
+		String file = System.getProperty("javax.net.ssl.keyStore", "");
+		if(file.isEmpty()) {
+			return null;
+		}
+
+		// Key store settings
+		String type = System.getProperty("javax.net.ssl.keyStoreType", KeyStore.getDefaultType());
+		String provider = System.getProperty("javax.net.ssl.keyStoreProvider", "");
+		String password = System.getProperty("javax.net.ssl.keyStorePassword");
+		char[] passwordChars = (null != password) ? password.toCharArray() : null;
+
+		try {
+			// Load key store, NONE for key stores not backed by a file (i.e. PKCS11)
+			KeyStore keyStore = provider.isEmpty() ? KeyStore.getInstance(type) : KeyStore.getInstance(type, provider);
+			if("NONE".equals(file)) {
+				keyStore.load(null, passwordChars);
+			} else {
+				try (InputStream in = Files.newInputStream(Paths.get(file))) {
+					keyStore.load(in, passwordChars);
+				}
+			}
+
+			// Create key managers
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore, passwordChars);
+
+			// Log key store
+			logger.debug("Key store loaded file(" + file + ") type(" + type + ") entries(" + keyStore.size() + ")");
+
+			// Return key managers
+			return keyManagerFactory.getKeyManagers();
+		} catch (Exception e) {
+			// Key store not readable
+			throw new IllegalStateException("Key store " + file + " not available", e);
+		}
+	}
+
+
+	/**
+	 * Load the trust managers of a trust store
+	 * @param trustStore Trust store file
+	 * @param type Trust store type
+	 * @param password Trust store password
+	 * @return Trust managers
+	 */
+	private static TrustManager[] loadTrustManagers(String trustStore, String type, String password) {
+		try (InputStream in = Files.newInputStream(Paths.get(trustStore))) {
+			// Load trust store
+			KeyStore keyStore = KeyStore.getInstance(type);
+			keyStore.load(in, password.toCharArray());
+
+			// Create trust managers
+			TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			trustManagerFactory.init(keyStore);
+
+			// Log trust store
+			logger.debug("Trust store loaded file(" + trustStore + ") type(" + type + ") entries(" + keyStore.size() + ")");
+
+			// Return trust managers
+			return trustManagerFactory.getTrustManagers();
+		} catch (Exception e) {
+			// Trust store not readable
+			throw new IllegalStateException("Trust store " + trustStore + " not available", e);
+		}
+	}
+
+}
@@ -21,9 +21,6 @@ package elius.webapp.framework.security.authentication;
 
 import java.util.List;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -38,7 +35,7 @@ import elius.webapp.framework.application.ApplicationAttributes;
 import elius.webapp.framework.application.ApplicationUserRole;
 import elius.webapp.framework.properties.PropertiesManager;
 import elius.webapp.framework.properties.PropertiesManagerFactory;
-import elius.webapp.framework.security.SecurityTrustAllCertificates;
+import elius.webapp.framework.security.SecurityTlsContextRegistry;
 import elius.webapp.framework.security.secret.SecretCredentials;
 
 public class AuthenticationLdap {
@@ -133,27 +130,12 @@ public class AuthenticationLdap {
 		
 		// LDAP connection
 		connection = null;
-		
-		// SSL Context for secure connections
-		SSLContext sslContext = null;
 			
 		try {
 			// Enable secure LDAP (LDAPs)
 			if(useSecure) {
-				// Get context for TLS 1.2
-				sslContext = SSLContext.getInstance("TLSv1.2");
-				// Initialize context
-				sslContext.init(null, null, null);
-				
-				// Trust all certificates
-				if(trustAllCertificates) {
-					// Create Trust Manager
-					TrustManager[] trustAll = new TrustManager[] {new SecurityTrustAllCertificates()};
-					// Set trust manager in the context
-					sslContext.init(null, trustAll, new java.security.SecureRandom());
-				}
-				// Start connection / authentication
-				connection = new LDAPConnection(sslContext.getSocketFactory(), server, port);
+				// Start connection / authentication with the shared context of the trust mode
+				connection = new LDAPConnection(SecurityTlsContextRegistry.getLdapInstance(trustAllCertificates).getSocketFactory(), server, port);
 			} else {
 				// Start connection / authentication
 				connection = new LDAPConnection(server, port);